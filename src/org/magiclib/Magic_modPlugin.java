@@ -114,7 +114,7 @@ public class Magic_modPlugin extends BaseModPlugin {
         SectorAPI sector = Global.getSector();
         if (sector != null) {
             sector.addTransientListener(new MagicIndustryItemWrangler());
-            sector.addTransientScript(new MagicCampaignTrailPlugin());
+            MagicCampaignTrailPlugin.register(sector);
         }
 
         MagicVariables.checkBountySystems();
@@ -17,6 +17,7 @@ import org.lazywizard.lazylib.MathUtils;
 import org.lazywizard.lazylib.VectorUtils;
 import org.lwjgl.util.vector.Vector2f;
 import org.magiclib.util.MagicSettings;
+import org.magiclib.util.MagicTrailAtlas;
 import org.magiclib.util.MagicVariables;
 
 import java.awt.*;
@@ -33,8 +34,8 @@ public class MagicAutoTrails extends BaseEveryFrameCombatPlugin {
     private static final Map<String, List<trailData>> PROJ_TRAILS = new HashMap<>();
 
     //A map for known projectiles and their IDs: should be cleared in init
-    private Map<DamagingProjectileAPI, List<Float>> slowProjTrailIDs = new WeakHashMap<>();
-    private Map<DamagingProjectileAPI, List<Float>> fastProjTrailIDs = new WeakHashMap<>();
+    private Map<DamagingProjectileAPI, long[]> slowProjTrailIDs = new WeakHashMap<>();
+    private Map<DamagingProjectileAPI, long[]> fastProjTrailIDs = new WeakHashMap<>();
     //A map to check the minimal length of everyframe projectiles and avoid issues with time warps
     private Map<DamagingProjectileAPI, Vector2f> fastProjLoc = new WeakHashMap<>();
 
@@ -110,8 +111,13 @@ public class MagicAutoTrails extends BaseEveryFrameCombatPlugin {
 
             //apparently this projectile doesn't have a trail, let's fix that!
 
+            //add all the necessary trails to that proj
+            long[] specs = new long[trailDataList.size()];
+            for (int i = 0; i < specs.length; i++) {
+                specs[i] = MagicTrailPlugin.getUniqueTrailID();
+            }
+
             //check if it is a fast or slow proj
-            List<Float> specs = new ArrayList<>();
             if (trailDataList.get(0).minLength < 0) {
                 //SLOW MODE
                 slowProjTrailIDs.put(proj, specs);
@@ -122,11 +128,6 @@ public class MagicAutoTrails extends BaseEveryFrameCombatPlugin {
                 fastProjLoc.put(proj, new Vector2f(proj.getLocation()));
             }
 
-            //add all the necessary trails to that proj
-            for (int i = 0; i < trailDataList.size(); i++) {
-                specs.add(MagicTrailPlugin.getUniqueID());
-            }
-
             //Fix for some first-frame error shenanigans
             if (projVel.length() < 0.1f && proj.getSource() != null) {
                 projVel = new Vector2f(proj.getSource().getVelocity());
@@ -137,11 +138,11 @@ public class MagicAutoTrails extends BaseEveryFrameCombatPlugin {
         }
     }
 
-    private static void createTrailSegment(DamagingProjectileAPI proj, String specID, List<Float> trailIDs, Vector2f projVel) {
+    private static void createTrailSegment(DamagingProjectileAPI proj, String specID, long[] trailIDs, Vector2f projVel) {
 
         List<trailData> trailDataList = PROJ_TRAILS.get(specID);
 
-        for (int i = 0; i < trailIDs.size(); i++) {
+        for (int i = 0; i < trailIDs.length; i++) {
             trailData trailData = trailDataList.get(i);
 
             SpriteAPI spriteToUse = Global.getSettings().getSprite("fx", trailData.sprite);
@@ -199,7 +200,7 @@ public class MagicAutoTrails extends BaseEveryFrameCombatPlugin {
             //Then, actually spawn a trail
             MagicTrailPlugin.addTrailMemberAdvanced(
                     proj,
-                    trailIDs.get(i),
+                    trailIDs[i],
                     spriteToUse,
                     spawnPosition,
                     velIn,
@@ -264,6 +265,11 @@ public class MagicAutoTrails extends BaseEveryFrameCombatPlugin {
                     //get the concerned projectile
                     String thisProj = row.getString("projectile");
 
+                    //pack the trail's sprite with the others, if trail atlases are used
+                    if (MagicTrailAtlas.isEnabled()) {
+                        MagicTrailAtlas.registerSprite("fx", row.getString("sprite"));
+                    }
+
                     //setup layer override
                     CombatEngineLayers layer = CombatEngineLayers.BELOW_INDICATORS_LAYER;
                     try {
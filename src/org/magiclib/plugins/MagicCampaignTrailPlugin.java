@@ -8,20 +8,24 @@ import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CampaignEngineLayers;
 import com.fs.starfarer.api.campaign.CustomCampaignEntityAPI;
 import com.fs.starfarer.api.campaign.LocationAPI;
+import com.fs.starfarer.api.campaign.SectorAPI;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
 import com.fs.starfarer.api.combat.ViewportAPI;
 import com.fs.starfarer.api.graphics.SpriteAPI;
 import com.fs.starfarer.api.impl.campaign.ids.Factions;
-import org.lazywizard.lazylib.FastTrig;
-import org.lazywizard.lazylib.MathUtils;
+import com.fs.starfarer.api.util.IntervalUtil;
 import org.lwjgl.util.vector.Vector2f;
-import org.magiclib.util.MagicTrailObject;
+import org.magiclib.util.MagicTrailBatch;
+import org.magiclib.util.MagicTrailBatchList;
+import org.magiclib.util.MagicTrailIdMap;
+import org.magiclib.util.MagicTrailTracker;
+import org.magiclib.util.MagicTrailViewport;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
+import java.util.*;
 import java.util.List;
-import java.util.Map;
+import java.util.Map.Entry;
 
 import static org.lwjgl.opengl.GL11.*;
 
@@ -29,93 +33,224 @@ public class MagicCampaignTrailPlugin implements EveryFrameScript {
     //Tracker for unique ID getting. Only use for this script, though: it's dangerous to use for other ID purposes, since it is so simple
     //NOTE: IDs should be bigger than 0; lower than 0 IDs are used by the script for "cut" trails
     private static float usedIDs = 0f;
-    private static float usedCutterIDs = -1f;
+    private static long usedCutterIDs = 0L;
 
-    //Map which handles all the trails: takes in an integer (the texture) and a map of NicToyCustomTrailTrackers, identified by a unique ID which must be tracked for each source independently
-    private Map<Integer, Map<Float, MagicCampaignTrailTracker>> mainMap = new HashMap<>();
+    //Float IDs are mapped onto their raw bits with this flag set, the same way the combat trail plugin does it, so they
+    //never collide with the negative IDs of cut trails
+    private static final long FLOAT_ID_FLAG = 1L << 62;
 
-    //Map similar to mainMap, but for animated trails
-    private Map<Float, MagicCampaignTrailTracker> animMap = new HashMap<>();
+    private static final int ANIM_KEY = -1;
 
-    //Map for "cutting" trails: if a trail belongs to an entity (it hasn't already been cut) its ID is here
-    private Map<Integer, Map<SectorEntityToken, List<Float>>> cuttingMap = new HashMap<>();
-    private Map<SectorEntityToken, List<Float>> cuttingMapAnimated = new HashMap<>();
+    //Expired trackers are reset and kept here to be reused for new trails, instead of being left to the garbage collector
+    private static final int MAX_POOLED_TRACKERS = 128;
+
+    //Map which handles all the trails, split by the location they are in: only the player's location is ticked and
+    //rendered every frame. Within a location, trails are split by layer and texture like in combat; see LocationTrails
+    private final Map<LocationAPI, LocationTrails> locationTrails = new HashMap<>();
+
+    //Trails outside the player's location are only aged, once per this many seconds
+    private static final float OFF_LOCATION_TICK_INTERVAL = 1f;
+
+    //The location the player was in last frame, so trails culled by location can be dropped as soon as it is left
+    private LocationAPI lastLocation = null;
+
+    //Index for "cutting" trails: for every entity, the trails that still belong to it
+    private final Map<SectorEntityToken, EntityTrails> entityTrails = new HashMap<>();
+
+    private final List<MagicCampaignTrailTracker> trackerPool = new ArrayList<>();
+
+    //Batches and viewport copy used when rendering; kept between frames so nothing has to be reallocated
+    private final MagicTrailBatchList batches = new MagicTrailBatchList();
+    private final MagicTrailViewport viewSnapshot = new MagicTrailViewport();
+
+    //clean the main map and cutting index per second
+    private final IntervalUtil cleanTimer = new IntervalUtil(1f, 1f);
 
     //A unique CustomCampaignEntity, which allows us to properly call render calls
     private CustomCampaignEntityAPI associatedEntity = null;
 
-    //Ticks all maps, and ensures only the currently-loaded locationAPI has its maps properly loaded
+    //Registry: the plugin of the currently loaded sector, and that sector. Replaced on every game load, so spawning a
+    //trail never has to search the sector's transient scripts. Only weakly held, so that a sector left for the main
+    //menu can be garbage collected along with its trails, even if no other game is loaded after it
+    private static WeakReference<MagicCampaignTrailPlugin> currentPlugin = new WeakReference<>(null);
+    private static WeakReference<SectorAPI> currentSector = new WeakReference<>(null);
+
+    /**
+     * Creates the trail plugin for a sector that was just loaded, and adds it as a transient script. Replaces the
+     * plugin of any previously loaded sector; MagicLib calls this on every game load.
+     *
+     * @return The new plugin
+     */
+    public static MagicCampaignTrailPlugin register(SectorAPI sector) {
+        MagicCampaignTrailPlugin plugin = new MagicCampaignTrailPlugin();
+        sector.addTransientScript(plugin);
+        currentPlugin = new WeakReference<>(plugin);
+        currentSector = new WeakReference<>(sector);
+        return plugin;
+    }
+
+    /**
+     * @return The trail plugin of the current sector, or null if there is no sector loaded. The plugin can be kept as
+     * a handle and spawned on directly, with {@link #addTrailPieceSimple} and the like, until the next game load.
+     */
+    public static MagicCampaignTrailPlugin getPlugin() {
+        SectorAPI sector = Global.getSector();
+        if (sector == null || sector != currentSector.get()) {
+            return null;
+        }
+        return currentPlugin.get();
+    }
+
+    //Ticks the player's location every frame, and every other location now and then
     @Override
     public void advance(float amount) {
         //Returns if we detect a seemingly impossible situation (no player fleet, for example)
         if (Global.getSector() == null || Global.getSector().getPlayerFleet() == null || Global.getSector().getPlayerFleet().getContainingLocation() == null) {
             return;
         }
+        LocationAPI currentLocation = Global.getSector().getPlayerFleet().getContainingLocation();
 
         //If we don't have an associated entity, or it is in the wrong locationAPI, kill any old one and generate a new one at our new locationAPI
-        if (associatedEntity == null || associatedEntity.getContainingLocation() != Global.getSector().getPlayerFleet().getContainingLocation()) {
+        if (associatedEntity == null || associatedEntity.getContainingLocation() != currentLocation) {
             if (associatedEntity != null) {
                 associatedEntity.getContainingLocation().removeEntity(associatedEntity);
             }
-            associatedEntity = Global.getSector().getPlayerFleet().getContainingLocation().addCustomEntity("magiclib_campaign_trail_tracker_object", "YOU SHOULD NOT SEE THIS",
+            associatedEntity = currentLocation.addCustomEntity("magiclib_campaign_trail_tracker_object", "YOU SHOULD NOT SEE THIS",
                     "magiclib_campaign_trail_custom_entity", Factions.INDEPENDENT, this);
             associatedEntity.setFixedLocation(-100000, -100000);
             associatedEntity.setRadius(0);
         }
 
-        //Ticks the main map
-        for (Integer texID : mainMap.keySet()) {
-            for (Float ID : new ArrayList<>(mainMap.get(texID).keySet())) {
-                //If the tracker we just found is in the wrong LocationAPI, we either delete it or don't tick it, depending on its setting
-                if (mainMap.get(texID).get(ID).locationAPI != Global.getSector().getPlayerFleet().getContainingLocation()) {
-                    if (mainMap.get(texID).get(ID).locationAPICulling) {
-                        mainMap.get(texID).remove(ID);
-                    }
-                } else {
-                    mainMap.get(texID).get(ID).tickTimersInTrail(amount);
-                    mainMap.get(texID).get(ID).clearAllDeadObjects();
+        cleanTimer.advance(amount);
+        //Check if it's the clean time
+        boolean shouldClean = cleanTimer.intervalElapsed();
+
+        //Trails that are culled by location are dropped as soon as the player leaves their location
+        if (currentLocation != lastLocation) {
+            LocationTrails leftTrails = locationTrails.get(lastLocation);
+            if (leftTrails != null) {
+                tickLocation(leftTrails, 0f, true, false);
+            }
+            lastLocation = currentLocation;
+        }
+
+        //Ticks every location's trails: the player's location fully each frame, catching up on anything it missed while
+        //the player was elsewhere, and the others only aged every so often
+        Iterator<Entry<LocationAPI, LocationTrails>> locationIterator = locationTrails.entrySet().iterator();
+        while (locationIterator.hasNext()) {
+            Entry<LocationAPI, LocationTrails> entry = locationIterator.next();
+            LocationTrails trails = entry.getValue();
+            boolean offLocation = entry.getKey() != currentLocation;
+            float tickAmount = amount + trails.pendingAge;
+            if (offLocation && tickAmount < OFF_LOCATION_TICK_INTERVAL) {
+                trails.pendingAge = tickAmount;
+                continue;
+            }
+            trails.pendingAge = 0f;
+
+            //Off-location trails are cleaned on every coarse tick, since those are rare enough already
+            boolean clean = shouldClean || offLocation;
+            int remaining = tickLocation(trails, tickAmount, offLocation, clean);
+            if (clean && remaining == 0) {
+                locationIterator.remove();
+            }
+        }
+
+        //Clean the cutting index: if the entity is gone, just delete it
+        if (shouldClean) {
+            Iterator<Entry<SectorEntityToken, EntityTrails>> entryIterator = entityTrails.entrySet().iterator();
+            while (entryIterator.hasNext()) {
+                if (entryIterator.next().getKey().isExpired()) {
+                    entryIterator.remove();
                 }
             }
         }
+    }
 
-        //Ticks the animated map
-        for (Float ID : animMap.keySet()) {
-            //If the tracker we just found is in the wrong LocationAPI, we either delete it or don't tick it, depending on its setting
-            if (animMap.get(ID).locationAPI != Global.getSector().getPlayerFleet().getContainingLocation()) {
-                if (animMap.get(ID).locationAPICulling) {
-                    animMap.remove(ID);
+    //Ticks the trails of one location, dropping the expired ones if asked to. Off-location trails are only aged, and
+    //dropped if they are culled by location. Returns how many trails are left
+    private int tickLocation(LocationTrails trails, float amount, boolean offLocation, boolean clean) {
+        int remaining = 0;
+        for (MagicTrailIdMap<MagicTrailIdMap<MagicCampaignTrailTracker>> layerMap : trails.layers.values()) {
+            for (int texSlot = 0; texSlot < layerMap.getSlotCount(); texSlot++) {
+                MagicTrailIdMap<MagicCampaignTrailTracker> trailTrackerMap = layerMap.getValueAt(texSlot);
+                if (trailTrackerMap == null) {
+                    continue;
+                }
+                for (int slot = 0; slot < trailTrackerMap.getSlotCount(); slot++) {
+                    MagicCampaignTrailTracker tracker = trailTrackerMap.getValueAt(slot);
+                    if (tracker == null) {
+                        continue;
+                    }
+                    if ((offLocation && tracker.locationAPICulling) || (clean && tracker.isExpired())) {
+                        trailTrackerMap.removeAt(slot);
+                        if (trackerPool.size() < MAX_POOLED_TRACKERS) {
+                            tracker.reset();
+                            trackerPool.add(tracker);
+                        }
+                        continue;
+                    }
+                    //Off-location trails can't be seen, so they are treated like off-screen ones
+                    if (offLocation) {
+                        tracker.setCulled(true);
+                    }
+                    tracker.tickTimersInTrail(amount);
+                    remaining++;
                 }
-            } else {
-                animMap.get(ID).tickTimersInTrail(amount);
-                animMap.get(ID).clearAllDeadObjects();
             }
         }
+        return remaining;
     }
 
-    //Renders things; this is called by our designated CustomCampaignEntity
+    //Renders things; this is called by our designated CustomCampaignEntity. Every trail sharing a texture and blend mode
+    //is collected into one batch, and each batch is drawn once
     public void render(CampaignEngineLayers currentRenderLayer, ViewportAPI viewPort) {
         //Returns if we detect a seemingly impossible situation (no player fleet, for example)
         if (Global.getSector() == null || Global.getSector().getPlayerFleet() == null || Global.getSector().getPlayerFleet().getContainingLocation() == null) {
             return;
         }
+        LocationAPI currentLocation = Global.getSector().getPlayerFleet().getContainingLocation();
 
-        //Iterates through all normal trails, and render them one at a time
-        for (Integer texID : mainMap.keySet()) {
-            for (Float ID : new ArrayList<>(mainMap.get(texID).keySet())) {
-                //Only render if the tracker is in our current render layer and in our current render location
-                if (mainMap.get(texID).get(ID).renderLayer == currentRenderLayer && mainMap.get(texID).get(ID).locationAPI == Global.getSector().getPlayerFleet().getContainingLocation()) {
-                    mainMap.get(texID).get(ID).renderTrail(texID);
-                }
-            }
+        viewSnapshot.set(viewPort, 0f);
+        //The LOD threshold is shared with combat trails; the view mult converts it into world units at the current zoom
+        float minQuadLength = MagicTrailPlugin.getLodPixelThreshold() * viewPort.getViewMult();
+
+        //Only the trails in our current render location and layer are looked at
+        LocationTrails trails = locationTrails.get(currentLocation);
+        if (trails == null) {
+            return;
+        }
+        MagicTrailIdMap<MagicTrailIdMap<MagicCampaignTrailTracker>> layerMap = trails.layers.get(currentRenderLayer);
+        if (layerMap == null) {
+            return;
         }
 
-        //If we have any animated trails, render those too
-        for (Float ID : animMap.keySet()) {
-            //Only render if the tracker is in our current render layer and in our current render location
-            if (animMap.get(ID).renderLayer == currentRenderLayer && animMap.get(ID).locationAPI == Global.getSector().getPlayerFleet().getContainingLocation()) {
-                animMap.get(ID).renderTrail(0);
+        for (int texSlot = 0; texSlot < layerMap.getSlotCount(); texSlot++) {
+            MagicTrailIdMap<MagicCampaignTrailTracker> trailTrackerMap = layerMap.getValueAt(texSlot);
+            if (trailTrackerMap == null) {
+                continue;
             }
+            int texID = (int) layerMap.getKeyAt(texSlot);
+            for (int slot = 0; slot < trailTrackerMap.getSlotCount(); slot++) {
+                MagicCampaignTrailTracker tracker = trailTrackerMap.getValueAt(slot);
+                if (tracker == null) {
+                    continue;
+                }
+                //Trails that are off-screen are flagged, so that they only get aged rather than fully ticked
+                boolean visible = tracker.isNearViewport(viewSnapshot);
+                tracker.setCulled(!visible);
+                if (!visible) {
+                    continue;
+                }
+                // texID may be -1 which means the anime key; the tracker knows its real texture in that case
+                MagicTrailBatch batch = batches.getBatch(tracker.getRenderTexture(texID), tracker.getBlendModeSRC(), tracker.getBlendModeDEST());
+                tracker.buildTrailGeometry(batch, viewSnapshot, minQuadLength);
+            }
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            batches.get(i).draw();
         }
+        batches.clear();
     }
 
     @Override
@@ -160,36 +295,28 @@ public class MagicCampaignTrailPlugin implements EveryFrameScript {
      */
     public static void addTrailMemberSimple(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float speed, float angle, float startSize, float endSize, Color color,
                                             float opacity, float duration, boolean additive, Vector2f offsetVelocity) {
-        //Runs the same function, but only on the specific script instead of the static interface
-        for (EveryFrameScript everyFrameScript : Global.getSector().getTransientScripts()) {
-            if (everyFrameScript instanceof MagicCampaignTrailPlugin) {
-                ((MagicCampaignTrailPlugin) everyFrameScript).addTrailMemberSimpleInternal(linkedEntity, ID, sprite, position, speed, angle,
-                        startSize, endSize, color, opacity, duration, additive, offsetVelocity);
-            }
+        //Runs the same function, but only on the current sector's plugin instead of the static interface
+        MagicCampaignTrailPlugin plugin = getPlugin();
+        if (plugin != null) {
+            plugin.addTrailPieceSimple(linkedEntity, ID, sprite, position, speed, angle,
+                    startSize, endSize, color, opacity, duration, additive, offsetVelocity);
         }
     }
 
-    private void addTrailMemberSimpleInternal(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float speed, float angle, float startSize, float endSize, Color color,
-                                              float opacity, float duration, boolean additive, Vector2f offsetVelocity) {
-        //Finds the correct maps, and ensures they are actually instantiated [and adds our ID to the cutting map]
-        int texID = sprite.getTextureId();
-        if (mainMap.get(texID) == null) {
-            mainMap.put(texID, new HashMap<Float, MagicCampaignTrailTracker>());
-        }
-        if (mainMap.get(texID).get(ID) == null) {
-            mainMap.get(texID).put(ID, new MagicCampaignTrailTracker());
-        }
-        if (linkedEntity != null) {
-            if (cuttingMap.get(texID) == null) {
-                cuttingMap.put(texID, new HashMap<SectorEntityToken, List<Float>>());
-            }
-            if (cuttingMap.get(texID).get(linkedEntity) == null) {
-                cuttingMap.get(texID).put(linkedEntity, new ArrayList<Float>());
-            }
-            if (!cuttingMap.get(texID).get(linkedEntity).contains(ID)) {
-                cuttingMap.get(texID).get(linkedEntity).add(ID);
-            }
+    /**
+     * Same as {@link #addTrailMemberSimple}, but on a plugin from {@link #getPlugin()}, which can be kept
+     * until the next game load to skip looking the plugin up on every call.
+     */
+    public void addTrailPieceSimple(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float speed, float angle, float startSize, float endSize, Color color,
+                                   float opacity, float duration, boolean additive, Vector2f offsetVelocity) {
+        //Puts the trail in the player's current location; if there is none, the piece could never be seen anyway
+        if (Global.getSector() == null || Global.getSector().getPlayerFleet() == null || Global.getSector().getPlayerFleet().getContainingLocation() == null) {
+            return;
         }
+        LocationAPI location = Global.getSector().getPlayerFleet().getContainingLocation();
+
+        //Finds the correct tracker, and ensures it is actually instantiated [and adds our ID to the cutting index]
+        MagicCampaignTrailTracker tracker = addOrGetTrailTracker(location, sprite.getTextureId(), ID, linkedEntity);
 
         //Converts our additive/non-additive option to true openGL stuff
         int srcBlend = GL_SRC_ALPHA;
@@ -199,257 +326,132 @@ public class MagicCampaignTrailPlugin implements EveryFrameScript {
             destBlend = GL_ONE;
         }
 
-        //Gives our tracker the correct LocationAPI (we'll have to guess it's the player's current location [and if that doesn't exist? don't change the location])
-        if (Global.getSector() != null && Global.getSector().getPlayerFleet() != null && Global.getSector().getPlayerFleet().getContainingLocation() != null) {
-            mainMap.get(texID).get(ID).locationAPI = Global.getSector().getPlayerFleet().getContainingLocation();
-        }
-
-        //Creates the custom object we want
-        MagicTrailObject objectToAdd = new MagicTrailObject(0f, 0f, duration, startSize, endSize, 0f, 0f,
-                opacity, srcBlend, destBlend, speed, speed, color, color, angle, position, -1f, 0, offsetVelocity,
-                0f, 0f);
-
-        //And finally add it to the correct location in our maps
-        mainMap.get(texID).get(ID).addNewTrailObject(objectToAdd);
+        //And finally add the new segment to the tracker
+        int rgb = color.getRGB();
+        tracker.addNewTrailSegment(0f, 0f, duration, startSize, endSize, 0f, 0f,
+                opacity, srcBlend, destBlend, speed, speed, rgb, rgb, angle, position.x, position.y, -1f, 0f,
+                offsetVelocity.x, offsetVelocity.y, 0f, 0f);
     }
 
-    /**
-     * Spawns a trail piece, which links up with other pieces with the same ID
-     * to form a smooth trail. This function has all available functions; if you
-     * just want to spawn a normal trail without all the extra configuration involved,
-     * use AddTrailMemberSimple instead.
-     *
-     * @param linkedEntity         The campaign entity this trail is attached to, used for cutting trails.
-     *                             Can be Null, but that should really only be done in weird, edge-case scenarios
-     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueID,
-     *                             but it's not required: just expect very weird results if you don't
-     * @param sprite               Which sprite to draw for this trail: do *not* change this halfway through a trail,
-     *                             as that will split it into two trails
-     * @param position             Starting position for this piece of trail
-     * @param startSpeed           The starting speed, in SU, this trail piece is moving at. The trail piece smoothly
-     *                             transitions from its startSpeed to its endSpeed over its duration
-     * @param endSpeed             The ending speed, in SU, this trail piece is moving at. The trail piece smoothly
-     *                             transitions from its startSpeed to its endSpeed over its duration
-     * @param angle                Which angle this piece of trail has in degrees; determines which direction it moves,
-     *                             and which direction its size is measured over
-     * @param startAngularVelocity The angular velocity this trail piece has when spawned. The angular velocity
-     *                             of a trail piece smoothly transitions from startAngularVelocity to
-     *                             endAngularVelocity over its duration
-     * @param endAngularVelocity   The angular velocity this trail piece has just before disappearing.
-     *                             The angular velocity of a trail piece smoothly transitions from
-     *                             startAngularVelocity to endAngularVelocity over its duration
-     * @param startSize            The starting size (or rather width) this piece of trail has. Measured in SU. A trail
-     *                             smoothly transitions from its startSize to its endSize over its duration
-     * @param endSize              The ending size (or rather width) this trail piece has. Measured in SU. A trail smoothly
-     *                             transitions from its startSize to its endSize over its duration
-     * @param startColor           The color this piece of trail has when spawned. Can be changed in the middle of a trail,
-     *                             and will blend smoothly between pieces. Ignores alpha component entirely. Each trail piece
-     *                             smoothly transitions from startColor to endColor over its duration
-     * @param endColor             The color this piece of trail has just before disappearing. Can be changed in the middle of a
-     *                             trail, and will blend smoothly between pieces. Ignores alpha component entirely. Each trail piece
-     *                             smoothly transitions from startColor to endColor over its duration
-     * @param opacity              The starting opacity of this piece of trail. Is a value between 0f and 1f. The opacity
-     *                             gradually approaches 0f over the trail's duration
-     * @param inDuration           How long this trail spends "fading in"; for this many seconds, the opacity of the trail piece
-     *                             steadily increases until reaching "opacity". A trail's total duration is
-     *                             inDuration + mainDuration + outDuration
-     * @param mainDuration         How long a trail uses its maximum opacity. A trail's total duration is
-     *                             inDuration + mainDuration + outDuration
-     * @param outDuration          How long a trail spends "fading out"; over this many seconds at the end of the trail's
-     *                             duration, its opacity goes from "opacity" to 0f. A trail's total duration is
-     *                             inDuration + mainDuration + outDuration
-     * @param blendModeSRC         Which SRD openGL blend mode to use for the trail. If you are unsure of what this means, just
-     *                             put it as GL_SRC_ALPHA
-     * @param blendModeDEST        Which DEST openGL blend mode to use for the trail. If you are unsure of what this means,
-     *                             put it as GL_ONE_MINUS_SRC_ALPHA for normal blending and GL_ONE for additive blending
-     * @param textureLoopLength    How many SU it takes for the texture to loop. Should preferably be non-zero. If the
-     *                             trail is not supposed to loop, put this as -1f
-     * @param textureScrollSpeed   How fast, and in which direction, the texture scrolls over the trail. Defined so that
-     *                             1000 means scrolling the entire texture length once per second, and 2000 means
-     *                             scrolling the entire texture length twice per second
-     * @param offsetVelocity       The offset velocity of the trail; this is an additional velocity that is
-     *                             unaffected by rotation and facing, and will never change over the trail's lifetime
-     * @param locationAPICulling   If true, the trail is removed from memory as soon as the player fleet leaves the
-     *                             location the trail is in. If false, the trail is only "frozen" when the player leaves
-     * @param locationAPI          Which locationAPI this trail is in; should ideally be in the same as the location the
-     *                             linkedEntity is in.
-     */
     public static void addTrailMemberAdvanced(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float startSpeed, float endSpeed, float angle,
                                               float startAngularVelocity, float endAngularVelocity, float startSize, float endSize, Color startColor, Color endColor, float opacity,
                                               float inDuration, float mainDuration, float outDuration, int blendModeSRC, int blendModeDEST, float textureLoopLength, float textureScrollSpeed,
                                               Vector2f offsetVelocity, boolean locationAPICulling, LocationAPI locationAPI) {
-        //Runs the same function, but only on the specific script instead of the static interface
-        for (EveryFrameScript everyFrameScript : Global.getSector().getTransientScripts()) {
-            if (everyFrameScript instanceof MagicCampaignTrailPlugin) {
-                ((MagicCampaignTrailPlugin) everyFrameScript).addTrailMemberAdvancedInternal(linkedEntity, ID, sprite, position, startSpeed, endSpeed, angle,
-                        startAngularVelocity, endAngularVelocity, startSize, endSize, startColor, endColor, opacity,
-                        inDuration, mainDuration, outDuration, blendModeSRC, blendModeDEST, textureLoopLength, textureScrollSpeed,
-                        offsetVelocity, locationAPICulling, locationAPI);
-            }
+        //Runs the same function, but only on the current sector's plugin instead of the static interface
+        MagicCampaignTrailPlugin plugin = getPlugin();
+        if (plugin != null) {
+            plugin.addTrailPieceAdvanced(linkedEntity, ID, sprite, position, startSpeed, endSpeed, angle,
+                    startAngularVelocity, endAngularVelocity, startSize, endSize, startColor, endColor, opacity,
+                    inDuration, mainDuration, outDuration, blendModeSRC, blendModeDEST, textureLoopLength, textureScrollSpeed,
+                    offsetVelocity, locationAPICulling, locationAPI);
         }
     }
 
-    private void addTrailMemberAdvancedInternal(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float startSpeed, float endSpeed, float angle,
-                                                float startAngularVelocity, float endAngularVelocity, float startSize, float endSize, Color startColor, Color endColor, float opacity,
-                                                float inDuration, float mainDuration, float outDuration, int blendModeSRC, int blendModeDEST, float textureLoopLength, float textureScrollSpeed,
-                                                Vector2f offsetVelocity, boolean locationAPICulling, LocationAPI locationAPI) {
-        //Finds the correct maps, and ensures they are actually instantiated
-        int texID = sprite.getTextureId();
-        if (mainMap.get(texID) == null) {
-            mainMap.put(texID, new HashMap<Float, MagicCampaignTrailTracker>());
-        }
-        if (mainMap.get(texID).get(ID) == null) {
-            mainMap.get(texID).put(ID, new MagicCampaignTrailTracker());
-        }
-        if (linkedEntity != null) {
-            if (cuttingMap.get(texID) == null) {
-                cuttingMap.put(texID, new HashMap<SectorEntityToken, List<Float>>());
-            }
-            if (cuttingMap.get(texID).get(linkedEntity) == null) {
-                cuttingMap.get(texID).put(linkedEntity, new ArrayList<Float>());
-            }
-            if (!cuttingMap.get(texID).get(linkedEntity).contains(ID)) {
-                cuttingMap.get(texID).get(linkedEntity).add(ID);
-            }
-        }
-
-        //Adds the correct locationAPI and locationAPICulling values to our tracker
-        mainMap.get(texID).get(ID).locationAPI = locationAPI;
-        mainMap.get(texID).get(ID).locationAPICulling = locationAPICulling;
-
-        //Adjusts scroll speed to our most recent trail's value
-        mainMap.get(texID).get(ID).scrollSpeed = textureScrollSpeed;
-
-        //Creates the custom object we want
-        MagicTrailObject objectToAdd = new MagicTrailObject(inDuration, mainDuration, outDuration, startSize, endSize, startAngularVelocity, endAngularVelocity,
-                opacity, blendModeSRC, blendModeDEST, startSpeed, endSpeed, startColor, endColor, angle, position, textureLoopLength, 0, offsetVelocity,
-                0f, 0f);
-
-        //And finally add it to the correct location in our maps
-        mainMap.get(texID).get(ID).addNewTrailObject(objectToAdd);
-    }
-
     /**
-     * Spawns a trail piece, which links up with other pieces with the same ID
-     * to form a smooth trail. This function is similar to the Advanced function, but
-     * allows the trail to change its texture each time a new member is added. It will
-     * always use the texture of the most recently-added member. If the texture is not
-     * supposed to be animated, do NOT use this function: it runs notably slower.
-     *
-     * @param linkedEntity         The campaign entity this trail is attached to, used for cutting trails.
-     *                             Can be Null, but that should really only be done in weird, edge-case scenarios
-     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueID,
-     *                             but it's not required: just expect very weird results if you don't
-     * @param sprite               Which sprite to draw for this trail: if changed mid-trail, the entire trail uses the
-     *                             new sprite.
-     * @param position             Starting position for this piece of trail
-     * @param startSpeed           The starting speed, in SU, this trail piece is moving at. The trail piece smoothly
-     *                             transitions from its startSpeed to its endSpeed over its duration
-     * @param endSpeed             The ending speed, in SU, this trail piece is moving at. The trail piece smoothly
-     *                             transitions from its startSpeed to its endSpeed over its duration
-     * @param angle                Which angle this piece of trail has in degrees; determines which direction it moves,
-     *                             and which direction its size is measured over
-     * @param startAngularVelocity The angular velocity this trail piece has when spawned. The angular velocity
-     *                             of a trail piece smoothly transitions from startAngularVelocity to
-     *                             endAngularVelocity over its duration
-     * @param endAngularVelocity   The angular velocity this trail piece has just before disappearing.
-     *                             The angular velocity of a trail piece smoothly transitions from
-     *                             startAngularVelocity to endAngularVelocity over its duration
-     * @param startSize            The starting size (or rather width) this piece of trail has. Measured in SU. A trail
-     *                             smoothly transitions from its startSize to its endSize over its duration
-     * @param endSize              The ending size (or rather width) this trail piece has. Measured in SU. A trail smoothly
-     *                             transitions from its startSize to its endSize over its duration
-     * @param startColor           The color this piece of trail has when spawned. Can be changed in the middle of a trail,
-     *                             and will blend smoothly between pieces. Ignores alpha component entirely. Each trail piece
-     *                             smoothly transitions from startColor to endColor over its duration
-     * @param endColor             The color this piece of trail has just before disappearing. Can be changed in the middle of a
-     *                             trail, and will blend smoothly between pieces. Ignores alpha component entirely. Each trail piece
-     *                             smoothly transitions from startColor to endColor over its duration
-     * @param opacity              The starting opacity of this piece of trail. Is a value between 0f and 1f. The opacity
-     *                             gradually approaches 0f over the trail's duration
-     * @param inDuration           How long this trail spends "fading in"; for this many seconds, the opacity of the trail piece
-     *                             steadily increases until reaching "opacity". A trail's total duration is
-     *                             inDuration + mainDuration + outDuration
-     * @param mainDuration         How long a trail uses its maximum opacity. A trail's total duration is
-     *                             inDuration + mainDuration + outDuration
-     * @param outDuration          How long a trail spends "fading out"; over this many seconds at the end of the trail's
-     *                             duration, its opacity goes from "opacity" to 0f. A trail's total duration is
-     *                             inDuration + mainDuration + outDuration
-     * @param blendModeSRC         Which SRD openGL blend mode to use for the trail. If you are unsure of what this means, just
-     *                             put it as GL_SRC_ALPHA
-     * @param blendModeDEST        Which DEST openGL blend mode to use for the trail. If you are unsure of what this means,
-     *                             put it as GL_ONE_MINUS_SRC_ALPHA for normal blending and GL_ONE for additive blending
-     * @param textureLoopLength    How many SU it takes for the texture to loop. Should preferably be non-zero. If the
-     *                             trail is not supposed to loop, put this as -1f
-     * @param textureScrollSpeed   How fast, and in which direction, the texture scrolls over the trail. Defined so that
-     *                             1000 means scrolling the entire texture length once per second, and 2000 means
-     *                             scrolling the entire texture length twice per second
-     * @param offsetVelocity       The offset velocity of the trail; this is an additional velocity that is
-     *                             unaffected by rotation and facing, and will never change over the trail's lifetime
-     * @param locationAPICulling   If true, the trail is removed from memory as soon as the player fleet leaves the
-     *                             location the trail is in. If false, the trail is only "frozen" when the player leaves
-     * @param locationAPI          Which locationAPI this trail is in; should ideally be in the same as the location the
-     *                             linkedEntity is in.
+     * Same as {@link #addTrailMemberAdvanced}, but on a plugin from {@link #getPlugin()}, which can be kept
+     * until the next game load to skip looking the plugin up on every call.
      */
+    public void addTrailPieceAdvanced(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float startSpeed, float endSpeed, float angle,
+                                     float startAngularVelocity, float endAngularVelocity, float startSize, float endSize, Color startColor, Color endColor, float opacity,
+                                     float inDuration, float mainDuration, float outDuration, int blendModeSRC, int blendModeDEST, float textureLoopLength, float textureScrollSpeed,
+                                     Vector2f offsetVelocity, boolean locationAPICulling, LocationAPI locationAPI) {
+        //Finds the correct tracker, and ensures it is actually instantiated [and adds our ID to the cutting index]
+        MagicCampaignTrailTracker tracker = addOrGetTrailTracker(locationAPI, sprite.getTextureId(), ID, linkedEntity);
+
+        //Adds the correct locationAPICulling value to our tracker
+        tracker.locationAPICulling = locationAPICulling;
+
+        //Adjusts scroll speed to our most recent trail's value. Campaign trails have always scrolled the opposite way
+        //from combat trails, hence the sign
+        tracker.scrollSpeed = -textureScrollSpeed;
+
+        //And finally add the new segment to the tracker
+        tracker.addNewTrailSegment(inDuration, mainDuration, outDuration, startSize, endSize, startAngularVelocity, endAngularVelocity,
+                opacity, blendModeSRC, blendModeDEST, startSpeed, endSpeed, startColor.getRGB(), endColor.getRGB(), angle, position.x, position.y,
+                textureLoopLength, 0f, offsetVelocity.x, offsetVelocity.y, 0f, 0f);
+    }
+
     public static void addTrailMemberAnimated(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float startSpeed, float endSpeed, float angle,
                                               float startAngularVelocity, float endAngularVelocity, float startSize, float endSize, Color startColor, Color endColor, float opacity,
                                               float inDuration, float mainDuration, float outDuration, int blendModeSRC, int blendModeDEST, float textureLoopLength, float textureScrollSpeed,
                                               Vector2f offsetVelocity, boolean locationAPICulling, LocationAPI locationAPI) {
-        //Runs the same function, but only on the specific script instead of the static interface
-        for (EveryFrameScript everyFrameScript : Global.getSector().getTransientScripts()) {
-            if (everyFrameScript instanceof MagicCampaignTrailPlugin) {
-                ((MagicCampaignTrailPlugin) everyFrameScript).addTrailMemberAnimatedInternal(linkedEntity, ID, sprite, position, startSpeed, endSpeed, angle,
-                        startAngularVelocity, endAngularVelocity, startSize, endSize, startColor, endColor, opacity,
-                        inDuration, mainDuration, outDuration, blendModeSRC, blendModeDEST, textureLoopLength, textureScrollSpeed,
-                        offsetVelocity, locationAPICulling, locationAPI);
-                break;
-            }
+        //Runs the same function, but only on the current sector's plugin instead of the static interface
+        MagicCampaignTrailPlugin plugin = getPlugin();
+        if (plugin != null) {
+            plugin.addTrailPieceAnimated(linkedEntity, ID, sprite, position, startSpeed, endSpeed, angle,
+                    startAngularVelocity, endAngularVelocity, startSize, endSize, startColor, endColor, opacity,
+                    inDuration, mainDuration, outDuration, blendModeSRC, blendModeDEST, textureLoopLength, textureScrollSpeed,
+                    offsetVelocity, locationAPICulling, locationAPI);
         }
     }
 
-    private void addTrailMemberAnimatedInternal(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float startSpeed, float endSpeed, float angle,
-                                                float startAngularVelocity, float endAngularVelocity, float startSize, float endSize, Color startColor, Color endColor, float opacity,
-                                                float inDuration, float mainDuration, float outDuration, int blendModeSRC, int blendModeDEST, float textureLoopLength, float textureScrollSpeed,
-                                                Vector2f offsetVelocity, boolean locationAPICulling, LocationAPI locationAPI) {
-        //Finds the correct maps, and ensures they are actually instantiated
-        if (animMap.get(ID) == null) {
-            animMap.put(ID, new MagicCampaignTrailTracker());
-        }
-        if (linkedEntity != null) {
-            if (cuttingMapAnimated.get(linkedEntity) == null) {
-                cuttingMapAnimated.put(linkedEntity, new ArrayList<Float>());
-            }
-            if (!cuttingMapAnimated.get(linkedEntity).contains(ID)) {
-                cuttingMapAnimated.get(linkedEntity).add(ID);
-            }
-        }
+    /**
+     * Same as {@link #addTrailMemberAnimated}, but on a plugin from {@link #getPlugin()}, which can be kept
+     * until the next game load to skip looking the plugin up on every call.
+     */
+    public void addTrailPieceAnimated(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float startSpeed, float endSpeed, float angle,
+                                     float startAngularVelocity, float endAngularVelocity, float startSize, float endSize, Color startColor, Color endColor, float opacity,
+                                     float inDuration, float mainDuration, float outDuration, int blendModeSRC, int blendModeDEST, float textureLoopLength, float textureScrollSpeed,
+                                     Vector2f offsetVelocity, boolean locationAPICulling, LocationAPI locationAPI) {
+        //Finds the correct tracker, and ensures it is actually instantiated [and adds our ID to the cutting index]
+        MagicCampaignTrailTracker tracker = addOrGetTrailTracker(locationAPI, ANIM_KEY, ID, linkedEntity);
 
-        //Adds the correct locationAPI and locationAPICulling values to our tracker
-        animMap.get(ID).locationAPI = locationAPI;
-        animMap.get(ID).locationAPICulling = locationAPICulling;
+        //Adds the correct locationAPICulling value to our tracker
+        tracker.locationAPICulling = locationAPICulling;
 
-        //Adjusts scroll speed to our most recent trail's value
-        animMap.get(ID).scrollSpeed = textureScrollSpeed;
+        //Adjusts scroll speed to our most recent trail's value, in the campaign direction
+        tracker.scrollSpeed = -textureScrollSpeed;
 
         //Adjusts the texture in the Trail Tracker to our most recently received texture, and flags it as being an Animated trail
-        int texID = sprite.getTextureId();
-        animMap.get(ID).isAnimated = true;
-        animMap.get(ID).currentAnimRenderTexture = texID;
+        tracker.isAnimated = true;
+        tracker.currentAnimRenderTexture = sprite.getTextureId();
 
-        //Creates the custom object we want
-        MagicTrailObject objectToAdd = new MagicTrailObject(inDuration, mainDuration, outDuration, startSize, endSize, startAngularVelocity, endAngularVelocity,
-                opacity, blendModeSRC, blendModeDEST, startSpeed, endSpeed, startColor, endColor, angle, position, textureLoopLength, 0, offsetVelocity,
-                0f, 0f);
+        //And finally add the new segment to the tracker
+        tracker.addNewTrailSegment(inDuration, mainDuration, outDuration, startSize, endSize, startAngularVelocity, endAngularVelocity,
+                opacity, blendModeSRC, blendModeDEST, startSpeed, endSpeed, startColor.getRGB(), endColor.getRGB(), angle, position.x, position.y,
+                textureLoopLength, 0f, offsetVelocity.x, offsetVelocity.y, 0f, 0f);
+    }
+
+    //Gets the tracker for a location, texture (or ANIM_KEY) and ID, creating it if needed, and registers it with the
+    //linked entity so it can be cut later. A trail that carries on in another location starts a new tracker there
+    private MagicCampaignTrailTracker addOrGetTrailTracker(LocationAPI location, int texKey, float ID, SectorEntityToken linkedEntity) {
+        LocationTrails trails = locationTrails.get(location);
+        if (trails == null) {
+            trails = new LocationTrails();
+            locationTrails.put(location, trails);
+        }
+        MagicTrailIdMap<MagicTrailIdMap<MagicCampaignTrailTracker>> layerMap = trails.layers.get(CampaignEngineLayers.ABOVE);
+        if (layerMap == null) {
+            layerMap = new MagicTrailIdMap<>();
+            trails.layers.put(CampaignEngineLayers.ABOVE, layerMap);
+        }
+        MagicTrailIdMap<MagicCampaignTrailTracker> trailTrackerMap = layerMap.get(texKey);
+        if (trailTrackerMap == null) {
+            trailTrackerMap = new MagicTrailIdMap<>();
+            layerMap.put(texKey, trailTrackerMap);
+        }
+        long key = floatToTrailID(ID);
+        MagicCampaignTrailTracker tracker = trailTrackerMap.get(key);
+        if (tracker == null) {
+            tracker = trackerPool.isEmpty() ? new MagicCampaignTrailTracker() : trackerPool.remove(trackerPool.size() - 1);
+            trailTrackerMap.put(key, tracker);
+        }
+        if (linkedEntity != null) {
+            EntityTrails cutIndex = entityTrails.get(linkedEntity);
+            if (cutIndex == null) {
+                cutIndex = new EntityTrails();
+                entityTrails.put(linkedEntity, cutIndex);
+            }
+            cutIndex.add(trailTrackerMap, key);
+        }
+        return tracker;
+    }
 
-        //And finally add it to the correct location in our maps
-        animMap.get(ID).addNewTrailObject(objectToAdd);
+    private static long floatToTrailID(float ID) {
+        return FLOAT_ID_FLAG | (Float.floatToIntBits(ID) & 0xFFFFFFFFL);
     }
 
 
-    /**
-     * A small function to get a unique ID for the trail member: *must* be saved in the function that generates the
-     * trail, since if it changes it counts as a new trail altogether
-     */
     public static float getUniqueID() {
         //Gets a value 0.1f higher than the previous maximum ID, and marks that as our previous maximum ID
         float toReturn = usedIDs + 0.1f;
@@ -458,60 +460,41 @@ public class MagicCampaignTrailPlugin implements EveryFrameScript {
     }
 
     //Similar to above, but is *explicitly* intended for the cutTrailsOnEntity function, so is private
-    private static float getUniqueCutterID() {
-
-        //Gets a value 0.1f lower than the previous maximum ID, and marks that as our previous maximum ID
-        float toReturn = usedCutterIDs - 0.1f;
-        usedCutterIDs = toReturn;
-        return toReturn;
+    private static long getUniqueCutterID() {
+        usedCutterIDs--;
+        return usedCutterIDs;
     }
 
 
-    /**
-     * "Cuts" all trails on a designated entity, forcing new trail pieces to not link up with old ones. Should
-     * be used before teleporting any entity, since it may have trails attached to it which will otherwise stretch
-     * in unintended ways
-     *
-     * @param entity The entity you want to cut all trails on
-     */
     public static void cutTrailsOnEntity(SectorEntityToken entity) {
-        //Runs the same function, but only on the specific script instead of the static interface
-        for (EveryFrameScript everyFrameScript : Global.getSector().getTransientScripts()) {
-            if (everyFrameScript instanceof MagicCampaignTrailPlugin) {
-                ((MagicCampaignTrailPlugin) everyFrameScript).cutTrailsOnEntityInternal(entity);
-                break;
-            }
+        //Runs the same function, but only on the current sector's plugin instead of the static interface
+        MagicCampaignTrailPlugin plugin = getPlugin();
+        if (plugin != null) {
+            plugin.cutTrails(entity);
         }
     }
 
-    private void cutTrailsOnEntityInternal(SectorEntityToken entity) {
-        //Iterate over all textures in the main map...
-        for (Integer key : cuttingMap.keySet()) {
-            //If our entity has any registered trails, cut them all off by giving them new, unique IDs
-            if (cuttingMap.get(key).get(entity) != null) {
-                for (float thisID : cuttingMap.get(key).get(entity)) {
-                    if (mainMap.get(key).get(thisID) != null) {
-                        mainMap.get(key).put(getUniqueCutterID(), mainMap.get(key).get(thisID));
-                        mainMap.get(key).remove(thisID);
-                    }
-                }
-            }
+    /**
+     * Same as {@link #cutTrailsOnEntity}, but on a plugin from {@link #getPlugin()}, which can be kept
+     * until the next game load to skip looking the plugin up on every call.
+     */
+    public void cutTrails(SectorEntityToken entity) {
+        //If our entity has any registered trails, cut them all off by giving them new, unique IDs
+        EntityTrails trails = entityTrails.get(entity);
+        if (trails == null) {
+            return;
         }
-
-        //Then, do something similar for the animated map
-        if (cuttingMapAnimated.get(entity) != null) {
-            for (float thisID : cuttingMapAnimated.get(entity)) {
-                if (animMap.get(thisID) != null) {
-                    animMap.put(getUniqueCutterID(), animMap.get(thisID));
-                    animMap.remove(thisID);
-                }
+        for (int i = 0; i < trails.count; i++) {
+            MagicTrailIdMap<MagicCampaignTrailTracker> trailTrackerMap = trails.maps[i];
+            MagicCampaignTrailTracker trailTracker = trailTrackerMap.remove(trails.ids[i]);
+            if (trailTracker != null) {
+                trailTrackerMap.put(getUniqueCutterID(), trailTracker);
             }
         }
+        //The cut trails no longer belong to the entity; keeps the index object around for its next trails
+        trails.clear();
     }
 
-    /**
-     * @deprecated Use {@link #addTrailMemberSimple(SectorEntityToken, float, SpriteAPI, Vector2f, float, float, float, float, Color, float, float, boolean, Vector2f)} instead.
-     */
     public static void AddTrailMemberSimple(SectorEntityToken linkedEntity, float ID, SpriteAPI sprite, Vector2f position, float speed, float angle, float startSize, float endSize, Color color,
                                             float opacity, float duration, boolean additive, Vector2f offsetVelocity) {
         addTrailMemberSimple(linkedEntity, ID, sprite, position, speed, angle, startSize, endSize, color, opacity, duration, additive, offsetVelocity);
@@ -543,302 +526,57 @@ public class MagicCampaignTrailPlugin implements EveryFrameScript {
 
     // ---------------------------------------- UTILITY CLASS DECLARATIONS --------------------------------------------
 
-    /*-- Trail tracker class; close to how the in-combat implementation works, with the twist of keeping track of auto-culling, render layers and other minor adjustments --*/
-    private class MagicCampaignTrailTracker {
-        //For scrolling textures - NOTE: we always use the most recent scroll speed for the trail, if it for some reason changes mid-trail
-        private float scrollingTextureOffset = 0f;
-        private float scrollSpeed = 0f;
-
-        //For animated textures: the trail counts as animated only if isAnimated = true
-        private boolean isAnimated = false;
-        private int currentAnimRenderTexture = 0;
-
+    /*-- Trail tracker class; the same one used in combat, with the twist of keeping track of auto-culling --*/
+    private static class MagicCampaignTrailTracker extends MagicTrailTracker {
         //For keeping track of LocationAPI culling; this should ideally *never* change, but if it somehow does it uses the most recent values
-        private LocationAPI locationAPI = null;
         private boolean locationAPICulling = true;
 
-        //For tracking the render layer
-        private CampaignEngineLayers renderLayer = CampaignEngineLayers.ABOVE;
-
-        private List<MagicTrailObject> allTrailParts = new ArrayList<>();
-        private MagicTrailObject latestTrailObject;
-
-
-        //Adds a new object to the trail, at the end (start visually) of our existing ones
-        private void addNewTrailObject(MagicTrailObject objectToAdd) {
-            allTrailParts.add(objectToAdd);
+        @Override
+        public void reset() {
+            super.reset();
+            locationAPICulling = true;
         }
 
-        //The heavy, main function: render the entire trail
-        private void renderTrail(int textureID) {
-            //First, clear all dead objects, as they can be a pain to calculate around
-            clearAllDeadObjects();
-
-            //Then, if we have too few segments to render properly, cancel the function
-            int size = allTrailParts.size();
-            if (size <= 1) {
-                return;
-            }
-
-            //If we are animated, we use our "currentAnimRenderTexture" rather than the textureID we just got supplied
-            int trueTextureID = textureID;
-            if (isAnimated) {
-                trueTextureID = currentAnimRenderTexture;
-            }
-
-            //Otherwise, we actually render the thing
-            //This part instantiates OpenGL
-            glPushMatrix();
-            glEnable(GL_BLEND);
-            glEnable(GL_TEXTURE_2D);
-            glBlendFunc(allTrailParts.get(allTrailParts.size() - 1).blendModeSRC, allTrailParts.get(allTrailParts.size() - 1).blendModeDEST); //NOTE: uses the most recent blend mode added to the trail
-            glBindTexture(GL_TEXTURE_2D, trueTextureID);
-            glBegin(GL_QUADS);
-
-
-            //Iterate through all trail parts except the oldest one: the idea is that each part renders in relation to the *previous* part
-            //Note that this behaviour is inverted compared to forward-propagating render (the old method)
-            float texDistTracker = 0f;
-            float texLocator = 0f;
-            for (int i = size - 1; i > 0; i--) {
-                //First, get a handle for our parts so we can make the code shorter
-                MagicTrailObject part1 = allTrailParts.get(i);    //Current part
-                MagicTrailObject part2 = allTrailParts.get(i - 1);    //Next part
-
-                //Then, determine the corner points of both this and the next trail part
-                float partRadius = part1.currentSize * 0.5f;
-                Vector2f point1Left = MathUtils.getPointOnCircumference(part1.currentLocation, partRadius, part1.angle - 90f);
-                Vector2f point1Right = MathUtils.getPointOnCircumference(part1.currentLocation, partRadius, part1.angle + 90f);
-                partRadius = part2.currentSize * 0.5f;
-                Vector2f point2Left = MathUtils.getPointOnCircumference(part2.currentLocation, partRadius, part2.angle - 90f);
-                Vector2f point2Right = MathUtils.getPointOnCircumference(part2.currentLocation, partRadius, part2.angle + 90f);
-
-                //Saves an easy value for the distance between the current two parts
-                float partDistance = MathUtils.getDistance(part1.currentLocation, part2.currentLocation);
-
-                //-------------------------------------------------------------------Actual rendering shenanigans------------------------------------------------------------------------------------------
-                //If we are outside the viewport, don't render at all! Just tick along our texture tracker, and do nothing else
-                if (!Global.getSector().getViewport().isNearViewport(part1.currentLocation, partDistance * 3f)) {
-                    //Change our texture distance tracker depending on looping mode
-                    //  -If we have -1 as loop length, we ensure that the entire texture is used over the entire trail
-                    //  -Otherwise, we adjust the texture distance upward to account for how much distance there is between our two points
-                    if (part1.textureLoopLength <= 0f) {
-                        texDistTracker = (float) (i - 1) / (float) size;
-                    } else {
-                        texDistTracker += partDistance / part1.textureLoopLength;
-                    }
-
-                    continue;
-                }
-
-                //Changes opacity slightly at beginning and end: the last and first 2 segments have lower opacity
-                float opacityMult = 1f;
-                if (i < 2) {
-                    opacityMult *= ((float) i / 2f);
-                } else if (i > size - 3) {
-                    opacityMult *= ((float) size - 1f - (float) i) / 2f;
-                }
-
-                //Sets the current render color
-                glColor4ub((byte) part1.currentColor.getRed(), (byte) part1.currentColor.getGreen(), (byte) part1.currentColor.getBlue(), (byte) (part1.currentOpacity * opacityMult * 255));
-
-                texLocator = texDistTracker + scrollingTextureOffset;
-
-                //Sets corner 1, or the first left corner
-                glTexCoord2f(0f, texLocator);
-                glVertex2f(point1Left.getX(), point1Left.getY());
-
-                //Sets corner 2, or the first right corner
-                glTexCoord2f(1f, texLocator);
-                glVertex2f(point1Right.getX(), point1Right.getY());
-
-                //Change our texture distance tracker depending on looping mode
-                //  -If we have -1 as loop length, we ensure that the entire texture is used over the entire trail
-                //  -Otherwise, we adjust the texture distance upward to account for how much distance there is between our two points
-                if (part1.textureLoopLength <= 0f) {
-                    texDistTracker = (float) (i - 1) / (float) size;
-                } else {
-                    texDistTracker += partDistance / part1.textureLoopLength;
-                }
-
-                //Changes opacity slightly at beginning and end: the last and first 2 segments have lower opacity
-                opacityMult = 1f;
-                if ((i - 1) < 2) {
-                    opacityMult *= ((float) (i - 1) / 2f);
-                } else if ((i - 1) > size - 3) {
-                    opacityMult *= ((float) size - 1f - ((float) i - 1f)) / 2f;
-                }
-
-                //Changes render color to our next segment's opacity
-                glColor4ub((byte) part2.currentColor.getRed(),
-                        (byte) part2.currentColor.getGreen(),
-                        (byte) part2.currentColor.getBlue(),
-                        (byte) (part2.currentOpacity * opacityMult * 255));
-
-                texLocator = texDistTracker + scrollingTextureOffset;
-
-                //Sets corner 3, or the second right corner
-                glTexCoord2f(1f, texLocator);
-                glVertex2f(point2Right.getX(), point2Right.getY());
-
-                //Sets corner 4, or the second left corner
-                glTexCoord2f(0f, texLocator);
-                glVertex2f(point2Left.getX(), point2Left.getY());
-            }
-
-            //And finally stops OpenGL
-            glEnd();
-            glPopMatrix();
-        }
-
-        //Quickhand function to tick down all trail objects at once, by an equal amount of time. Also ticks texture scrolling, if we have it
-        private void tickTimersInTrail(float amount) {
-            for (MagicTrailObject part : allTrailParts) {
-                part.tick(amount);
-            }
-
-            //Defines the scroll speed in 1/1000th of a full texture per second
-            scrollingTextureOffset += (amount * scrollSpeed) / 1000f;
-        }
-
-        //Quickhand function to remove all trail objects which has timed out
-        private void clearAllDeadObjects() {
-            List<MagicTrailObject> toRemove = new ArrayList<>();
-            for (MagicTrailObject part : allTrailParts) {
-                if (part.getSpentLifetime() >= part.getTotalLifetime()) {
-                    toRemove.add(part);
-                }
-            }
-
-            //If there is a new trail object, the texture will scroll back to make sure they keep in the same place
-            if (allTrailParts.size() > 0) {
-                MagicTrailObject currentLatestTrailObject = allTrailParts.get(allTrailParts.size() - 1);
-                if (latestTrailObject == null) {
-                    latestTrailObject = currentLatestTrailObject;
-                } else if (latestTrailObject != currentLatestTrailObject) {
-                    float partDistance = MathUtils.getDistance(latestTrailObject.currentLocation, currentLatestTrailObject.currentLocation);
-                    //scroll back
-                    scrollingTextureOffset -= partDistance / latestTrailObject.textureLoopLength;
-                    latestTrailObject = currentLatestTrailObject;
-                }
-            }
-
-            for (MagicTrailObject partToRemove : toRemove) {
-                allTrailParts.remove(partToRemove);
-            }
+        //Campaign trails aren't drawn by the combat trail renderers, which are the only ones drawing shader-aged trails
+        @Override
+        protected boolean allowsShaderAging() {
+            return false;
         }
     }
 
 
-    /*-- Trail object class; very close in nature to the combat-engine version, though with some minor variations and fixes --*/
-    private class NicToyCustomCampaignTrailObject {
-        //Private, non-varying values
-        private float inDuration = 0f;
-        private float mainDuration = 0f;
-        private float outDuration = 0f;
-        private float startSize = 0f;
-        private float endSize = 0f;
-        private float startAngleVelocity = 0f;
-        private float endAngleVelocity = 0f;
-        private float mainOpacity = 0f;
-        private float startSpeed = 0f;
-        private float endSpeed = 0f;
-        private Color startColor = new Color(255, 255, 255);
-        private Color endColor = new Color(255, 255, 255);
-
-        //Public, non-varying values
-        public int blendModeSRC = 0;
-        public int blendModeDEST = 0;
-        public float textureLoopLength = 0;
-        public Vector2f offsetVelocity = new Vector2f(0f, 0f);
-
-        //Public, varying values
-        public Color currentColor = new Color(255, 255, 255);
-        public float currentSize = 0f;
-        public float spentLifetime = 0f;
-        public float currentAngularVelocity = 0f;
-        public float angle = 0f;
-        public float currentSpeed = 0f;
-        public Vector2f currentLocation = new Vector2f(0f, 0f);
-        public float currentOpacity = 0f;
-
-        //Main instantiator: generates a full CustomCampaignTrailObject with all necessary values
-        public NicToyCustomCampaignTrailObject(float inDuration, float mainDuration, float outDuration, float startSize, float endSize, float startAngleVelocity,
-                                               float endAngleVelocity, float mainOpacity, int blendModeSRC, int blendModeDEST, float startSpeed, float endSpeed,
-                                               Color startColor, Color endColor, float angle, Vector2f spawnLocation, float textureLoopLength, Vector2f offsetVelocity) {
-            this.inDuration = inDuration;
-            this.mainDuration = mainDuration;
-            this.outDuration = outDuration;
-            this.startSize = startSize;
-            this.endSize = endSize;
-            this.startAngleVelocity = startAngleVelocity;
-            this.endAngleVelocity = endAngleVelocity;
-            this.mainOpacity = mainOpacity;
-            this.blendModeSRC = blendModeSRC;
-            this.blendModeDEST = blendModeDEST;
-            this.startSpeed = startSpeed;
-            this.endSpeed = endSpeed;
-            this.startColor = startColor;
-            this.endColor = endColor;
-            this.angle = angle;
-            this.currentLocation.x = spawnLocation.x;
-            this.currentLocation.y = spawnLocation.y;
-            this.textureLoopLength = textureLoopLength;
-
-            this.currentColor = startColor;
-            this.currentSize = startSize;
-            this.spentLifetime = 0f;
-            this.currentAngularVelocity = startAngleVelocity;
-            this.currentSpeed = startSpeed;
-            if (inDuration > 0) {
-                this.currentOpacity = 0f;
-            } else {
-                this.currentOpacity = mainOpacity;
-            }
+    /*-- The trails in one location: layer, then texture (or ANIM_KEY), then ID; and how long since they were last ticked --*/
+    private static class LocationTrails {
+        private final EnumMap<CampaignEngineLayers, MagicTrailIdMap<MagicTrailIdMap<MagicCampaignTrailTracker>>> layers = new EnumMap<>(CampaignEngineLayers.class);
+        private float pendingAge = 0f;
+    }
 
-            this.offsetVelocity.x = offsetVelocity.x;
-            this.offsetVelocity.y = offsetVelocity.y;
-        }
 
-        //Modifies lifetime, position and all other things time-related
-        public void tick(float amount) {
-            //Increases lifetime
-            spentLifetime += amount;
+    /*-- The trails belonging to one entity, for cutting: parallel arrays of the map each trail is in and its ID there --*/
+    private static class EntityTrails {
+        @SuppressWarnings("unchecked")
+        private MagicTrailIdMap<MagicCampaignTrailTracker>[] maps = new MagicTrailIdMap[4];
+        private long[] ids = new long[4];
+        private int count = 0;
 
-            //If our spent lifetime is higher than our total lifetime, set it to our total lifetime
-            if (spentLifetime > getTotalLifetime()) {
-                spentLifetime = getTotalLifetime();
+        private void add(MagicTrailIdMap<MagicCampaignTrailTracker> map, long ID) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == ID && maps[i] == map) {
+                    return;
+                }
             }
-
-            //Slides all values along depending on lifetime
-            currentSize = startSize * (1 - (spentLifetime / getTotalLifetime())) + endSize * (spentLifetime / getTotalLifetime());
-            currentSpeed = startSpeed * (1 - (spentLifetime / getTotalLifetime())) + endSpeed * (spentLifetime / getTotalLifetime());
-            currentAngularVelocity = startAngleVelocity * (1 - (spentLifetime / getTotalLifetime())) + endAngleVelocity * (spentLifetime / getTotalLifetime());
-            int red = ((int) (startColor.getRed() * (1 - (spentLifetime / getTotalLifetime())) + endColor.getRed() * (spentLifetime / getTotalLifetime())));
-            int green = ((int) (startColor.getGreen() * (1 - (spentLifetime / getTotalLifetime())) + endColor.getGreen() * (spentLifetime / getTotalLifetime())));
-            int blue = ((int) (startColor.getBlue() * (1 - (spentLifetime / getTotalLifetime())) + endColor.getBlue() * (spentLifetime / getTotalLifetime())));
-            currentColor = new Color(red, green, blue);
-
-            //Adjusts opacity: slightly differently handled than the otherwise pure linear value sliding
-            currentOpacity = mainOpacity;
-            if (spentLifetime < inDuration) {
-                currentOpacity = mainOpacity * spentLifetime / inDuration;
-            } else if (spentLifetime > (inDuration + mainDuration)) {
-                currentOpacity = mainOpacity * (1f - ((spentLifetime - (inDuration + mainDuration)) / outDuration));
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                maps = Arrays.copyOf(maps, count * 2);
             }
-
-            //Calculates new position and angle from respective velocities
-            angle += currentAngularVelocity * amount;
-            currentLocation.x += (FastTrig.cos(Math.toRadians(angle)) * currentSpeed + offsetVelocity.x) * amount;
-            currentLocation.y += (FastTrig.sin(Math.toRadians(angle)) * currentSpeed + offsetVelocity.y) * amount;
-        }
-
-        public float getSpentLifetime() {
-            return spentLifetime;
+            maps[count] = map;
+            ids[count] = ID;
+            count++;
         }
 
-        public float getTotalLifetime() {
-            return inDuration + mainDuration + outDuration;
+        private void clear() {
+            Arrays.fill(maps, 0, count, null);
+            count = 0;
         }
     }
-}
\ No newline at end of file
+}
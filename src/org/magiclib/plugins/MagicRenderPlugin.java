@@ -9,31 +9,79 @@ import com.fs.starfarer.api.graphics.SpriteAPI;
 import com.fs.starfarer.api.input.InputEventAPI;
 import com.fs.starfarer.api.util.IntervalUtil;
 import org.lazywizard.lazylib.MathUtils;
-import org.lazywizard.lazylib.VectorUtils;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
 import org.magiclib.util.MagicRender;
+import org.magiclib.util.MagicSettings;
+import org.magiclib.util.MagicTrailBatch;
+import org.magiclib.util.MagicTrailBatchList;
+import org.magiclib.util.MagicTrailViewport;
 import org.magiclib.util.MagicUIInternal;
+import org.magiclib.util.MagicVariables;
 
+import org.apache.log4j.Logger;
+
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.EnumSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class MagicRenderPlugin extends BaseEveryFrameCombatPlugin {
-
-    private static List<renderData> SINGLEFRAME = new ArrayList<>();
-    private static List<battlespaceData> BATTLESPACE = new ArrayList<>();
-    private static List<objectspaceData> OBJECTSPACE = new ArrayList<>();
-    private static List<screenspaceData> SCREENSPACE = new ArrayList<>();
+    private static final Logger LOG = Global.getLogger(MagicRenderPlugin.class);
+
+    //Sprites are queued by layer, so each layer's render call only goes through its own sprites
+    private static final Map<CombatEngineLayers, layerQueues> QUEUES = new EnumMap<>(CombatEngineLayers.class);
+    private static final CombatEngineLayers[] LAYERS = CombatEngineLayers.values();
+
+    //Records of sprites that are done, reused for the next ones so queuing a sprite doesn't allocate once warmed up
+    private static final List<renderData> SINGLEFRAME_POOL = new ArrayList<>();
+    private static final List<battlespaceData> BATTLESPACE_POOL = new ArrayList<>();
+    private static final List<objectspaceData> OBJECTSPACE_POOL = new ArrayList<>();
+    private static final List<screenspaceData> SCREENSPACE_POOL = new ArrayList<>();
+
+    //Sprites queued from other threads than the game's, handed over to the layer queues at the start of the next frame.
+    //These queues are lock-free, so mods can queue effects straight from their own worker threads
+    private static final Queue<renderData> PENDING_SINGLEFRAME = new ConcurrentLinkedQueue<>();
+    private static final Queue<battlespaceData> PENDING_BATTLESPACE = new ConcurrentLinkedQueue<>();
+    private static final Queue<objectspaceData> PENDING_OBJECTSPACE = new ConcurrentLinkedQueue<>();
+    private static final Queue<screenspaceData> PENDING_SCREENSPACE = new ConcurrentLinkedQueue<>();
+    private static volatile Thread gameThread = null;
+
+    private static boolean batchedRendering = MagicSettings.getBoolean(MagicVariables.MAGICLIB_ID, "magicRender_batchedRendering");
+
+    //Sprites drawn on the current layer, grouped by texture and blend mode. Reused from one layer to the next
+    private final MagicTrailBatchList batches = new MagicTrailBatchList();
+
+    //Visible area of the layer being drawn; sprites entirely outside of it are skipped
+    private final MagicTrailViewport viewBounds = new MagicTrailViewport();
+
+    //Allocation stats: bytes the game thread allocates advancing and drawing sprites, logged periodically if enabled.
+    //Reading the counter may allocate a little itself, which is measured once and taken off every reading
+    private static boolean debugStats = MagicSettings.getBoolean(MagicVariables.MAGICLIB_ID, "magicRender_debugStats");
+    private final IntervalUtil statsLogTimer = new IntervalUtil(5f, 5f);
+    private com.sun.management.ThreadMXBean allocationCounter = null;
+    private long allocationOverhead = 0L;
+    private long statsAllocatedBytes = 0L;
+    private long statsSprites = 0L;
+    private int statsFrames = 0;
 
     @Override
     public void init(CombatEngineAPI engine) {
         //reinitialize the lists
-        SINGLEFRAME.clear();
-        BATTLESPACE.clear();
-        OBJECTSPACE.clear();
-        SCREENSPACE.clear();
+        QUEUES.clear();
+        PENDING_SINGLEFRAME.clear();
+        PENDING_BATTLESPACE.clear();
+        PENDING_OBJECTSPACE.clear();
+        PENDING_SCREENSPACE.clear();
+        gameThread = Thread.currentThread();
+        if (debugStats) {
+            initAllocationCounter();
+        }
 
         //Creates our layered rendering script
         CombatLayeredRenderingPlugin layerRenderer = new MagicRenderer(this);
@@ -43,573 +91,1000 @@ public class MagicRenderPlugin extends BaseEveryFrameCombatPlugin {
     @Override
     public void advance(float amount, List<InputEventAPI> events) {
         MagicUIInternal.callRenderMethods$MagicLib();
+
+        CombatEngineAPI engine = Global.getCombatEngine();
+        if (engine == null) {
+            return;
+        }
+        long allocationStart = getAllocatedBytes();
+
+        //single frame sprites may be queued again every frame, so the drawn ones are dropped even while paused
+        dropDrawnSprites();
+        if (!engine.isPaused()) {
+            advanceSprites(engine, amount);
+        }
+
+        if (allocationCounter != null) {
+            statsAllocatedBytes += getAllocatedBytes() - allocationStart - allocationOverhead;
+            logStats(amount);
+        }
+    }
+
+    //Gets the queues of a layer, creating them the first time a sprite uses it
+    private static layerQueues getQueues(CombatEngineLayers layer) {
+        layerQueues queues = QUEUES.get(layer);
+        if (queues == null) {
+            queues = new layerQueues();
+            QUEUES.put(layer, queues);
+        }
+        return queues;
+    }
+
+    //Whether the caller runs on another thread than the game's, and so has to hand what it queues over
+    private static boolean isOffThread() {
+        Thread thread = gameThread;
+        return thread != null && thread != Thread.currentThread();
+    }
+
+    //Records come from the pools on the game thread. Other threads get new ones, and hand them over once filled in
+
+    private static renderData obtainSingleframe() {
+        return isOffThread() || SINGLEFRAME_POOL.isEmpty() ? new renderData() : SINGLEFRAME_POOL.remove(SINGLEFRAME_POOL.size() - 1);
+    }
+
+    private static battlespaceData obtainBattlespace() {
+        return isOffThread() || BATTLESPACE_POOL.isEmpty() ? new battlespaceData() : BATTLESPACE_POOL.remove(BATTLESPACE_POOL.size() - 1);
+    }
+
+    private static objectspaceData obtainObjectspace() {
+        return isOffThread() || OBJECTSPACE_POOL.isEmpty() ? new objectspaceData() : OBJECTSPACE_POOL.remove(OBJECTSPACE_POOL.size() - 1);
+    }
+
+    private static screenspaceData obtainScreenspace() {
+        return isOffThread() || SCREENSPACE_POOL.isEmpty() ? new screenspaceData() : SCREENSPACE_POOL.remove(SCREENSPACE_POOL.size() - 1);
+    }
+
+    private static void queue(renderData data) {
+        if (isOffThread()) {
+            PENDING_SINGLEFRAME.offer(data);
+        } else {
+            getQueues(data.LAYER).SINGLEFRAME.add(data);
+        }
+    }
+
+    private static void queue(battlespaceData data) {
+        if (isOffThread()) {
+            PENDING_BATTLESPACE.offer(data);
+        } else {
+            getQueues(data.LAYER).BATTLESPACE.add(data);
+        }
+    }
+
+    private static void queue(objectspaceData data) {
+        if (isOffThread()) {
+            PENDING_OBJECTSPACE.offer(data);
+        } else {
+            getQueues(data.LAYER).OBJECTSPACE.add(data);
+        }
+    }
+
+    private static void queue(screenspaceData data) {
+        if (isOffThread()) {
+            PENDING_SCREENSPACE.offer(data);
+        } else {
+            getQueues(data.LAYER).SCREENSPACE.add(data);
+        }
     }
 
     public static void addSingleframe(SpriteAPI sprite, Vector2f loc, CombatEngineLayers layer) {
-        SINGLEFRAME.add(new renderData(sprite, loc, layer));
+        //sprites without a layer are never rendered
+        if (layer == null) {
+            return;
+        }
+        renderData data = obtainSingleframe();
+        data.set(sprite, loc, layer);
+        queue(data);
+    }
+
+    /**
+     * Queues a single frame sprite with its own size, angle, color and blending, rather than the ones the sprite has
+     * when queued. Meant for sprites shared by many effects, see {@link org.magiclib.util.MagicSpriteCache}: the
+     * sprite itself is left untouched until it is drawn.
+     */
+    public static void addSingleframe(SpriteAPI sprite, Vector2f loc, float width, float height, float angle, Color color,
+                                      int blendSrc, int blendDest, CombatEngineLayers layer) {
+        if (layer == null) {
+            return;
+        }
+        renderData data = obtainSingleframe();
+        data.set(sprite, loc, layer);
+        data.setLook(width, height, angle, color, blendSrc, blendDest);
+        queue(data);
     }
 
     public static void addBattlespace(SpriteAPI sprite, Vector2f loc, Vector2f vel, Vector2f growth, float spin,
                                       float jitterRange, float jitterTilt, Vector3f jitter, float flickerRange, float flickerMedian, IntervalUtil delay,
                                       float fadein, float full, float fadeout, CombatEngineLayers layer) {
-
-        BATTLESPACE.add(new battlespaceData(sprite, loc, vel, growth, spin,
+        if (layer == null) {
+            return;
+        }
+        battlespaceData data = obtainBattlespace();
+        data.set(sprite, loc, vel, growth, spin,
                 jitterRange, jitterTilt, jitter, flickerRange, flickerMedian, delay,
-                fadein, full, fadeout, 0, layer));
+                fadein, full, fadeout, 0, layer);
+        queue(data);
+    }
+
+    /**
+     * Queues a battlespace sprite with its own size, angle, color and blending, rather than the ones the sprite has
+     * when queued. Meant for sprites shared by many effects, see {@link org.magiclib.util.MagicSpriteCache}: the
+     * sprite itself is left untouched until it is drawn.
+     */
+    public static void addBattlespace(SpriteAPI sprite, float width, float height, float angle, Color color, int blendSrc, int blendDest,
+                                      Vector2f loc, Vector2f vel, Vector2f growth, float spin,
+                                      float fadein, float full, float fadeout, CombatEngineLayers layer) {
+        if (layer == null) {
+            return;
+        }
+        battlespaceData data = obtainBattlespace();
+        data.set(sprite, loc, vel, growth, spin,
+                0, 0, null, 0, 0, null,
+                fadein, full, fadeout, 0, layer);
+        data.setLook(width, height, angle, color, blendSrc, blendDest);
+        queue(data);
     }
 
     public static void addObjectspace(SpriteAPI sprite, CombatEntityAPI anchor, Vector2f loc, Vector2f offset, Vector2f vel, Vector2f growth, float angle, float spin, boolean parent,
                                       float jitterRange, float jitterTilt, Vector3f jitter, float flickerRange, float flickerMedian, IntervalUtil delay,
                                       float fadein, float full, float fadeout, boolean fadeOnDeath, CombatEngineLayers layer) {
-
-        OBJECTSPACE.add(new objectspaceData(sprite, anchor, loc, offset, vel, growth, angle, spin, parent,
+        if (layer == null) {
+            return;
+        }
+        objectspaceData data = obtainObjectspace();
+        data.set(sprite, anchor, loc, offset, vel, growth, angle, spin, parent,
                 jitterRange, jitterTilt, jitter, flickerRange, flickerMedian, delay,
-                fadein, full, fadeout, fadeOnDeath, 0, layer));
+                fadein, full, fadeout, fadeOnDeath, 0, layer);
+        queue(data);
+    }
+
+    /**
+     * Queues an objectspace sprite with its own size, facing, color and blending, rather than the ones the sprite has
+     * when queued. Meant for sprites shared by many effects, see {@link org.magiclib.util.MagicSpriteCache}: the
+     * sprite itself is left untouched until it is drawn.
+     */
+    public static void addObjectspace(SpriteAPI sprite, float width, float height, float facing, Color color, int blendSrc, int blendDest,
+                                      CombatEntityAPI anchor, Vector2f loc, Vector2f offset, Vector2f vel, Vector2f growth, float angle, float spin,
+                                      boolean parent, float fadein, float full, float fadeout, boolean fadeOnDeath, CombatEngineLayers layer) {
+        if (layer == null) {
+            return;
+        }
+        objectspaceData data = obtainObjectspace();
+        data.set(sprite, anchor, loc, offset, vel, growth, angle, spin, parent,
+                0, 0, null, 0, 0, null,
+                fadein, full, fadeout, fadeOnDeath, 0, layer);
+        data.setLook(width, height, facing, color, blendSrc, blendDest);
+        queue(data);
     }
 
     public static void addScreenspace(SpriteAPI sprite, MagicRender.positioning pos, Vector2f loc, Vector2f vel, Vector2f ratio, Vector2f growth, float spin,
                                       float jitterRange, float jitterTilt, Vector3f jitter, float flickerRange, float flickerMedian, IntervalUtil delay,
                                       float fadein, float full, float fadeout, CombatEngineLayers layer) {
-
-        SCREENSPACE.add(new screenspaceData(sprite, pos, loc, vel, ratio, growth, spin,
+        if (layer == null) {
+            return;
+        }
+        screenspaceData data = obtainScreenspace();
+        data.set(sprite, pos, loc, vel, ratio, growth, spin,
                 jitterRange, jitterTilt, jitter, flickerRange, flickerMedian, delay,
-                fadein, full, fadeout, 0, layer));
+                fadein, full, fadeout, 0, layer);
+        queue(data);
     }
 
     public static void addBattlespace(SpriteAPI sprite, Vector2f loc, Vector2f vel, Vector2f growth, float spin,
                                       float fadein, float full, float fadeout, CombatEngineLayers layer) {
-        BATTLESPACE.add(new battlespaceData(sprite, loc, vel, growth, spin,
+        addBattlespace(sprite, loc, vel, growth, spin,
                 0, 0, null, 0, 0, null,
-                fadein, full, fadeout, 0, layer));
+                fadein, full, fadeout, layer);
     }
 
     public static void addObjectspace(SpriteAPI sprite, CombatEntityAPI anchor, Vector2f loc, Vector2f offset, Vector2f vel, Vector2f growth, float angle, float spin,
                                       boolean parent, float fadein, float full, float fadeout, boolean fadeOnDeath, CombatEngineLayers layer) {
-        OBJECTSPACE.add(new objectspaceData(sprite, anchor, loc, offset, vel, growth, angle, spin, parent,
+        addObjectspace(sprite, anchor, loc, offset, vel, growth, angle, spin, parent,
                 0, 0, null, 0, 0, null,
-                fadein, full, fadeout, fadeOnDeath, 0, layer));
+                fadein, full, fadeout, fadeOnDeath, layer);
     }
 
     public static void addScreenspace(SpriteAPI sprite, MagicRender.positioning pos, Vector2f loc, Vector2f vel, Vector2f ratio, Vector2f growth, float spin,
                                       float fadein, float full, float fadeout, CombatEngineLayers layer) {
-        SCREENSPACE.add(new screenspaceData(sprite, pos, loc, vel, ratio, growth, spin,
+        addScreenspace(sprite, pos, loc, vel, ratio, growth, spin,
                 0, 0, null, 0, 0, null,
-                fadein, full, fadeout, 0, layer));
+                fadein, full, fadeout, layer);
     }
 
-    //////////////////////////////
-    //                          //
-    //         MAIN LOOP        //
-    //                          //
-    //////////////////////////////    
+    /**
+     * @return Whether sprites are currently drawn in batches rather than one at a time.
+     */
+    public static boolean isBatchedRendering() {
+        return batchedRendering;
+    }
 
+    /**
+     * Switches between batched rendering, where each layer's sprites are grouped by texture and blend mode and each
+     * group is drawn with a single vertex-array call, and drawing every sprite on its own with renderAtCenter.
+     * Defaults to "magicRender_batchedRendering" in modSettings.json.
+     */
+    public static void setBatchedRendering(boolean batched) {
+        batchedRendering = batched;
+    }
 
-    void render(CombatEngineLayers layer, ViewportAPI view) {
-        CombatEngineAPI engine = Global.getCombatEngine();
-        if (engine == null) {
+    //Starts counting the game thread's allocations, if the JVM can. The counter's own cost is measured right away
+    private void initAllocationCounter() {
+        allocationCounter = null;
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)
+                    || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+                LOG.warn("This JVM can't count allocations, MagicRender allocation stats are disabled");
+                return;
+            }
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+            counter.setThreadAllocatedMemoryEnabled(true);
+            allocationCounter = counter;
+        } catch (LinkageError | RuntimeException e) {
+            LOG.warn("Failed to count allocations, MagicRender allocation stats are disabled", e);
             return;
         }
 
-        float amount = 0;
-        if (!engine.isPaused()) {
-            amount = engine.getElapsedInLastFrame();
-        }
+        allocationOverhead = 0L;
+        long first = getAllocatedBytes();
+        long second = getAllocatedBytes();
+        allocationOverhead = second - first;
+        statsAllocatedBytes = 0L;
+        statsSprites = 0L;
+        statsFrames = 0;
+    }
 
-        if (!BATTLESPACE.isEmpty()) {
-            battlespaceHandler(layer, amount);
+    //Bytes allocated by the calling thread so far, or 0 when allocations aren't counted
+    private long getAllocatedBytes() {
+        if (allocationCounter == null) {
+            return 0L;
         }
+        return allocationCounter.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
 
-        if (!OBJECTSPACE.isEmpty()) {
-            objectspaceHandler(engine, layer, amount);
+    //Sums up how many sprites were live each frame, and regularly logs the allocations per frame and per sprite
+    private void logStats(float amount) {
+        int sprites = 0;
+        for (CombatEngineLayers layer : LAYERS) {
+            layerQueues queues = QUEUES.get(layer);
+            if (queues != null) {
+                sprites += queues.SINGLEFRAME.size() + queues.BATTLESPACE.size() + queues.OBJECTSPACE.size() + queues.SCREENSPACE.size();
+            }
         }
-
-        if (!SCREENSPACE.isEmpty()) {
-            screenspaceHandler(layer, amount);
+        statsSprites += sprites;
+        statsFrames++;
+
+        statsLogTimer.advance(amount);
+        if (statsLogTimer.intervalElapsed()) {
+            LOG.info(String.format("MagicRender: %.1f sprites, %.1f bytes allocated per frame, %.3f per sprite",
+                    (float) statsSprites / statsFrames, (float) statsAllocatedBytes / statsFrames,
+                    statsSprites > 0 ? (float) statsAllocatedBytes / statsSprites : 0f));
+            statsAllocatedBytes = 0L;
+            statsSprites = 0L;
+            statsFrames = 0;
         }
+    }
 
-        //Single frame sprite rendering
-        if (!SINGLEFRAME.isEmpty()) {
-            List<renderData> toRemove = new ArrayList<>();
-            for (renderData d : SINGLEFRAME) {
-                //Only run the render if it's our turn to render/we are on the right layer
-                if (layer == d.LAYER) {
-                    render(d);
-                    toRemove.add(d);
-                }
+    //////////////////////////////
+    //                          //
+    //         MAIN LOOP        //
+    //                          //
+    //////////////////////////////
+
+
+    //Animates every queued sprite once per frame, so that rendering only has to draw them
+    private void advanceSprites(CombatEngineAPI engine, float amount) {
+        for (CombatEngineLayers layer : LAYERS) {
+            layerQueues queues = QUEUES.get(layer);
+            if (queues == null) {
+                continue;
             }
-            if (!engine.isPaused()) {
-                SINGLEFRAME.removeAll(toRemove);
+
+            if (!queues.BATTLESPACE.isEmpty()) {
+                battlespaceHandler(queues.BATTLESPACE, amount);
+            }
+
+            if (!queues.OBJECTSPACE.isEmpty()) {
+                objectspaceHandler(engine, queues.OBJECTSPACE, amount);
+            }
+
+            if (!queues.SCREENSPACE.isEmpty()) {
+                screenspaceHandler(queues.SCREENSPACE, amount);
             }
         }
     }
 
-    private void battlespaceHandler(CombatEngineLayers layer, float amount) {
-        //iterate through the BATTLESPACE data first:
-        for (Iterator<battlespaceData> iter = BATTLESPACE.iterator(); iter.hasNext(); ) {
-            battlespaceData entry = iter.next();
+    //Takes in the sprites queued from other threads, and drops the single frame ones that have been drawn
+    private static void dropDrawnSprites() {
+        drainPending();
 
-            //Only run the rest of the code if it's our turn to render/we are on the right layer
-            if (layer != entry.LAYER) {
+        for (CombatEngineLayers layer : LAYERS) {
+            layerQueues queues = QUEUES.get(layer);
+            if (queues == null) {
                 continue;
             }
 
-            //add the time spent, that means sprites will never start at 0 exactly, but it simplifies a lot the logic
-            entry.TIME += amount;
-            if (entry.TIME > entry.FADEOUT) {
-                //remove expended ones
-                iter.remove();
-                continue;
+            //Single frame screenspace sprites, with a negative fadeout, are dropped once drawn
+            if (!queues.SCREENSPACE.isEmpty()) {
+                List<screenspaceData> screenspace = queues.SCREENSPACE;
+                int kept = 0;
+                for (int i = 0; i < screenspace.size(); i++) {
+                    screenspaceData entry = screenspace.get(i);
+                    if (entry.FADEOUT < 0 && entry.DRAWN) {
+                        entry.clear();
+                        SCREENSPACE_POOL.add(entry);
+                    } else {
+                        screenspace.set(kept++, entry);
+                    }
+                }
+                truncate(screenspace, kept);
             }
 
-            //grow/shrink the sprite to a new size if needed
-            if (entry.GROWTH != null && entry.GROWTH != new Vector2f()) {
-                entry.SPRITE.setSize(entry.SPRITE.getWidth() + (entry.GROWTH.x * amount), entry.SPRITE.getHeight() + (entry.GROWTH.y * amount));
-                //check if the growth made the sprite too small
-                if (entry.SPRITE.getHeight() <= 0 || entry.SPRITE.getWidth() <= 0) {
-                    //remove sprites that completely shrunk
-                    iter.remove();
-                    continue;
+            //Single frame sprites are dropped once they have been drawn. Any queued after that are kept for next render
+            if (queues.SINGLEFRAME_DRAWN > 0) {
+                List<renderData> singleframe = queues.SINGLEFRAME;
+                int drawn = queues.SINGLEFRAME_DRAWN;
+                for (int i = 0; i < drawn; i++) {
+                    renderData data = singleframe.get(i);
+                    data.SPRITE = null;
+                    data.COLOR = null;
+                    SINGLEFRAME_POOL.add(data);
                 }
+                int kept = 0;
+                for (int i = drawn; i < singleframe.size(); i++) {
+                    singleframe.set(kept++, singleframe.get(i));
+                }
+                truncate(singleframe, kept);
+                queues.SINGLEFRAME_DRAWN = 0;
             }
+        }
+    }
 
-            //move the sprite to a new center if needed
-            if (entry.VEL != null && entry.VEL != new Vector2f()) {
-                Vector2f move = new Vector2f(entry.VEL);
-                move.scale(amount);
-                Vector2f.add(entry.LOC, move, entry.LOC);
-            }
+    //Moves the sprites queued from other threads into their layer's queues. Only this thread ever takes from them
+    private static void drainPending() {
+        renderData singleframe;
+        while ((singleframe = PENDING_SINGLEFRAME.poll()) != null) {
+            getQueues(singleframe.LAYER).SINGLEFRAME.add(singleframe);
+        }
+        battlespaceData battlespace;
+        while ((battlespace = PENDING_BATTLESPACE.poll()) != null) {
+            getQueues(battlespace.LAYER).BATTLESPACE.add(battlespace);
+        }
+        objectspaceData objectspace;
+        while ((objectspace = PENDING_OBJECTSPACE.poll()) != null) {
+            getQueues(objectspace.LAYER).OBJECTSPACE.add(objectspace);
+        }
+        screenspaceData screenspace;
+        while ((screenspace = PENDING_SCREENSPACE.poll()) != null) {
+            getQueues(screenspace.LAYER).SCREENSPACE.add(screenspace);
+        }
+    }
 
-            //spin the sprite if needed
-            if (entry.SPIN != 0) {
-                entry.SPRITE.setAngle(entry.SPRITE.getAngle() + entry.SPIN * amount);
+    //Drops the end of a list, from the last element down so nothing has to be shifted
+    private static void truncate(List<?> list, int size) {
+        for (int i = list.size() - 1; i >= size; i--) {
+            list.remove(i);
+        }
+    }
+
+    void render(CombatEngineLayers layer, ViewportAPI view) {
+        if (allocationCounter == null) {
+            renderLayer(layer, view);
+            return;
+        }
+        long allocationStart = getAllocatedBytes();
+        renderLayer(layer, view);
+        statsAllocatedBytes += getAllocatedBytes() - allocationStart - allocationOverhead;
+    }
+
+    //Only draws the sprites of the layer as they were left by the last advance; it can be called any number of times
+    private void renderLayer(CombatEngineLayers layer, ViewportAPI view) {
+        CombatEngineAPI engine = Global.getCombatEngine();
+        if (engine == null) {
+            return;
+        }
+
+        //Only the sprites queued on this layer are looked at
+        layerQueues queues = QUEUES.get(layer);
+        if (queues == null) {
+            return;
+        }
+        viewBounds.set(view, 0f);
+
+        for (int i = 0; i < queues.BATTLESPACE.size(); i++) {
+            renderBattlespace(queues.BATTLESPACE.get(i));
+        }
+
+        for (int i = 0; i < queues.OBJECTSPACE.size(); i++) {
+            renderObjectspace(engine, queues.OBJECTSPACE.get(i));
+        }
+
+        if (!queues.SCREENSPACE.isEmpty()) {
+            ViewportAPI screen = engine.getViewport();
+            for (int i = 0; i < queues.SCREENSPACE.size(); i++) {
+                renderScreenspace(screen, queues.SCREENSPACE.get(i));
             }
+        }
 
-            //jitter/flickerMedian
-            if (entry.DELAY != null) {
-                entry.DELAY.advance(amount);
-                if (entry.DELAY.intervalElapsed()) {
-
-                    //jitter effect
-                    if (entry.JITTER_RANGE > 0 || entry.JITTER_TILT > 0) {
-                        float a = 0, b = 0, c = 0;
-                        float x = -entry.JITTER.x, y = -entry.JITTER.y, z = -entry.JITTER.z;
-                        //new jitter values
-                        if (entry.JITTER_RANGE > 0) {
-                            a = MathUtils.getRandomNumberInRange(-entry.JITTER_RANGE, entry.JITTER_RANGE);
-                            b = MathUtils.getRandomNumberInRange(-entry.JITTER_RANGE, entry.JITTER_RANGE);
-                        }
-                        if (entry.JITTER_TILT > 0) {
-                            c = MathUtils.getRandomNumberInRange(-entry.JITTER_TILT, entry.JITTER_TILT);
-                        }
-
-                        //remove old jitter, add new value
-                        Vector2f.add(entry.LOC, new Vector2f(x + a, y + b), entry.LOC);
-                        entry.SPRITE.setAngle(entry.SPRITE.getAngle() + z + c);
-
-                        //store new jitter values
-                        entry.JITTER = new Vector3f(a, b, c);
-                    }
-                    //flicker effect
-                    float opacity = 1;
-                    if (entry.FLICKER_RANGE > 0) {
-                        opacity = Math.min(1f, Math.max(0f, MathUtils.getRandomNumberInRange((float) entry.FLICKER_MEDIAN - (float) entry.FLICKER_RANGE, (float) entry.FLICKER_MEDIAN + (float) entry.FLICKER_RANGE)));
-                    }
+        //Single frame sprite rendering
+        List<renderData> singleframe = queues.SINGLEFRAME;
+        for (int i = 0; i < singleframe.size(); i++) {
+            renderData data = singleframe.get(i);
+            applyLook(data.SPRITE, data.WIDTH, data.HEIGHT, data.FACING, data.ALPHA, data.COLOR, data.BLEND_SRC, data.BLEND_DEST);
+            render(data.SPRITE, data.LOC.x, data.LOC.y);
+        }
+        queues.SINGLEFRAME_DRAWN = singleframe.size();
 
-                    //fading stuff
-                    if (entry.TIME < entry.FADEIN) {
-                        opacity *= (entry.TIME / entry.FADEIN);
-                    } else if (entry.TIME > entry.FULL) {
-                        opacity *= (1 - ((entry.TIME - entry.FULL) / (entry.FADEOUT - entry.FULL)));
-                    }
+        //Batched sprites are only drawn now, one call per texture and blend mode, in the order each was first used
+        for (int i = 0; i < batches.size(); i++) {
+            batches.get(i).draw();
+        }
+        batches.clear();
+    }
 
-                    entry.SPRITE.setAlphaMult(opacity);
-                }
+    private void battlespaceHandler(List<battlespaceData> battlespace, float amount) {
+        //iterate through the BATTLESPACE data first, packing the sprites still alive at the front
+        int kept = 0;
+        for (int i = 0; i < battlespace.size(); i++) {
+            battlespaceData entry = battlespace.get(i);
+            if (advanceBattlespace(entry, amount)) {
+                battlespace.set(kept++, entry);
             } else {
-                //fading stuff
-                if (entry.TIME < entry.FADEIN) {
-                    entry.SPRITE.setAlphaMult(entry.TIME / entry.FADEIN);
-                } else if (entry.TIME > entry.FULL) {
-                    entry.SPRITE.setAlphaMult(1 - ((entry.TIME - entry.FULL) / (entry.FADEOUT - entry.FULL)));
-                } else entry.SPRITE.setAlphaMult(1);
+                entry.clear();
+                BATTLESPACE_POOL.add(entry);
             }
-
-            //finally render that stuff
-            render(new renderData(entry.SPRITE, entry.LOC, entry.LAYER));
         }
+        truncate(battlespace, kept);
     }
 
-    private void objectspaceHandler(CombatEngineAPI engine, CombatEngineLayers layer, float amount) {
-        //then iterate throught the OBJECTSPACE data:
-        for (Iterator<objectspaceData> iter = OBJECTSPACE.iterator(); iter.hasNext(); ) {
-            objectspaceData entry = iter.next();
+    //Returns false once the sprite is done
+    private boolean advanceBattlespace(battlespaceData entry, float amount) {
+        //add the time spent, that means sprites will never start at 0 exactly, but it simplifies a lot the logic
+        entry.TIME += amount;
+        if (entry.TIME > entry.FADEOUT) {
+            //remove expended ones
+            return false;
+        }
 
-            //Only run the rest of the code if it's our turn to render/we are on the right layer
-            if (layer != entry.LAYER) {
-                continue;
+        //grow/shrink the sprite to a new size if needed
+        if (entry.GROWS) {
+            entry.WIDTH += entry.GROWTH.x * amount;
+            entry.HEIGHT += entry.GROWTH.y * amount;
+            //check if the growth made the sprite too small
+            if (entry.HEIGHT <= 0 || entry.WIDTH <= 0) {
+                //remove sprites that completely shrunk
+                return false;
             }
+        }
 
-            //check for possible removal when the anchor isn't in game
-            if (entry.DEATHFADE && !engine.isEntityInPlay(entry.ANCHOR)) {
-                iter.remove();
-                continue;
-            }
+        //move the sprite to a new center if needed
+        if (entry.MOVES) {
+            entry.LOC.x += entry.VEL.x * amount;
+            entry.LOC.y += entry.VEL.y * amount;
+        }
+
+        //spin the sprite if needed
+        if (entry.SPIN != 0) {
+            entry.FACING += entry.SPIN * amount;
+        }
 
-            //check for projectile attachement fadeout
-            if (entry.ANCHOR instanceof DamagingProjectileAPI) {
-                //if the proj is fading or removed, offset the fadeout time to the current time
-                if (entry.TIME < entry.FULL && (
-                        ((DamagingProjectileAPI) entry.ANCHOR).isFading()
-                                || !engine.isEntityInPlay(entry.ANCHOR))
-                ) {
-                    entry.FADEOUT = (entry.FADEOUT - entry.FULL) + entry.TIME;
-                    entry.FULL = entry.TIME;
+        //jitter/flickerMedian
+        if (entry.DELAY != null) {
+            entry.DELAY.advance(amount);
+            if (entry.DELAY.intervalElapsed()) {
+                //jitter effect
+                if (entry.JITTER_RANGE > 0 || entry.JITTER_TILT > 0) {
+                    entry.FACING += jitter(entry.JITTER, entry.JITTER_RANGE, entry.JITTER_TILT, entry.LOC);
                 }
+                //flicker effect, then fading stuff
+                entry.ALPHA = flicker(entry.FLICKER_RANGE, entry.FLICKER_MEDIAN) * fade(entry.TIME, entry.FADEIN, entry.FULL, entry.FADEOUT);
             }
+        } else {
+            //fading stuff
+            entry.ALPHA = fade(entry.TIME, entry.FADEIN, entry.FULL, entry.FADEOUT);
+        }
+        return true;
+    }
 
-            //add the time spent, that means sprites will never start at 0 exactly, but it simplifies a lot the logic
-            entry.TIME += amount;
-            if (entry.TIME > entry.FADEOUT) {
-                //remove expended ones
-                iter.remove();
-                continue;
-            }
+    private void renderBattlespace(battlespaceData entry) {
+        applyLook(entry.SPRITE, entry.WIDTH, entry.HEIGHT, entry.FACING, entry.ALPHA, entry.COLOR, entry.BLEND_SRC, entry.BLEND_DEST);
 
-            //grow/shrink the sprite to a new size if needed
-            if (entry.GROWTH != null && entry.GROWTH != new Vector2f()) {
-                entry.SPRITE.setSize(entry.SPRITE.getWidth() + (entry.GROWTH.x * amount), entry.SPRITE.getHeight() + (entry.GROWTH.y * amount));
-                //check if the growth made the sprite too small
-                if (entry.SPRITE.getHeight() <= 0 || entry.SPRITE.getWidth() <= 0) {
-                    //remove sprites that completely shrunk
-                    iter.remove();
-                    continue;
-                }
-            }
+        //finally render that stuff
+        render(entry.SPRITE, entry.LOC.x, entry.LOC.y);
+    }
 
-            //adjust the offset if needed
-            if (entry.VEL != null && entry.VEL != new Vector2f()) {
-                Vector2f move = new Vector2f(entry.VEL);
-                move.scale(amount);
-                Vector2f.add(entry.OFFSET, move, move);
-                entry.OFFSET = move;
+    private void objectspaceHandler(CombatEngineAPI engine, List<objectspaceData> objectspace, float amount) {
+        //then iterate throught the OBJECTSPACE data:
+        int kept = 0;
+        for (int i = 0; i < objectspace.size(); i++) {
+            objectspaceData entry = objectspace.get(i);
+            if (advanceObjectspace(engine, entry, amount)) {
+                objectspace.set(kept++, entry);
+            } else {
+                entry.clear();
+                OBJECTSPACE_POOL.add(entry);
             }
+        }
+        truncate(objectspace, kept);
+    }
 
+    //Returns false once the sprite is done
+    private boolean advanceObjectspace(CombatEngineAPI engine, objectspaceData entry, float amount) {
+        boolean anchored = engine.isEntityInPlay(entry.ANCHOR);
 
-            //jitter/flickerMedian
-            if (entry.DELAY != null) {
-                entry.DELAY.advance(amount);
-                if (entry.DELAY.intervalElapsed()) {
-                    //jitter effect
-                    if (entry.JITTER_RANGE > 0 || entry.JITTER_TILT > 0) {
-                        float a = 0, b = 0, c = 0;
-                        float x = -entry.JITTER.x, y = -entry.JITTER.y, z = -entry.JITTER.z;
-                        //new jitter values
-                        if (entry.JITTER_RANGE > 0) {
-                            a = MathUtils.getRandomNumberInRange(-entry.JITTER_RANGE, entry.JITTER_RANGE);
-                            b = MathUtils.getRandomNumberInRange(-entry.JITTER_RANGE, entry.JITTER_RANGE);
-                        }
-                        if (entry.JITTER_TILT > 0) {
-                            c = MathUtils.getRandomNumberInRange(-entry.JITTER_TILT, entry.JITTER_TILT);
-                        }
-
-                        //remove old jitter, add new value
-                        Vector2f.add(entry.OFFSET, new Vector2f(x + a, y + b), entry.OFFSET);
-                        entry.SPRITE.setAngle(entry.SPRITE.getAngle() + z + c);
-
-                        //store new jitter values
-                        entry.JITTER = new Vector3f(a, b, c);
-                    }
-                    //flicker effect
-                    float opacity = 1;
-                    if (entry.FLICKER_RANGE > 0) {
-                        opacity = Math.min(1f, Math.max(0f, MathUtils.getRandomNumberInRange((float) entry.FLICKER_MEDIAN - (float) entry.FLICKER_RANGE, (float) entry.FLICKER_MEDIAN + (float) entry.FLICKER_RANGE)));
-                    }
+        //check for possible removal when the anchor isn't in game
+        if (entry.DEATHFADE && !anchored) {
+            return false;
+        }
 
-                    //fading stuff
-                    if (entry.TIME < entry.FADEIN) {
-                        opacity *= (entry.TIME / entry.FADEIN);
-                    } else if (entry.TIME > entry.FULL) {
-                        opacity *= (1 - ((entry.TIME - entry.FULL) / (entry.FADEOUT - entry.FULL)));
-                    }
+        //check for projectile attachement fadeout
+        if (entry.ANCHOR instanceof DamagingProjectileAPI) {
+            //if the proj is fading or removed, offset the fadeout time to the current time
+            if (entry.TIME < entry.FULL && (((DamagingProjectileAPI) entry.ANCHOR).isFading() || !anchored)) {
+                entry.FADEOUT = (entry.FADEOUT - entry.FULL) + entry.TIME;
+                entry.FULL = entry.TIME;
+            }
+        }
 
-                    entry.SPRITE.setAlphaMult(opacity);
-                }
-            } else {
-                //fading stuff
-                if (entry.TIME < entry.FADEIN) {
-                    entry.SPRITE.setAlphaMult(entry.TIME / entry.FADEIN);
-                } else if (entry.TIME > entry.FULL) {
-                    entry.SPRITE.setAlphaMult(1 - ((entry.TIME - entry.FULL) / (entry.FADEOUT - entry.FULL)));
-                } else entry.SPRITE.setAlphaMult(1);
+        //add the time spent, that means sprites will never start at 0 exactly, but it simplifies a lot the logic
+        entry.TIME += amount;
+        if (entry.TIME > entry.FADEOUT) {
+            //remove expended ones
+            return false;
+        }
+
+        //grow/shrink the sprite to a new size if needed
+        if (entry.GROWS) {
+            entry.WIDTH += entry.GROWTH.x * amount;
+            entry.HEIGHT += entry.GROWTH.y * amount;
+            //check if the growth made the sprite too small
+            if (entry.HEIGHT <= 0 || entry.WIDTH <= 0) {
+                //remove sprites that completely shrunk
+                return false;
             }
+        }
 
-            //addjust the position and orientation
-            Vector2f location = new Vector2f(entry.OFFSET); //base offset
+        //adjust the offset if needed
+        if (entry.MOVES) {
+            entry.OFFSET.x += entry.VEL.x * amount;
+            entry.OFFSET.y += entry.VEL.y * amount;
+        }
 
-            //for parenting, check if the anchor is present
-            if (entry.PARENT && engine.isEntityInPlay(entry.ANCHOR)) {
-                //if the sprite is parented, use the ANGLE to store the offset
-                if (entry.SPIN != 0) {
-                    entry.ANGLE += entry.SPIN * amount;
-                }
-                entry.SPRITE.setAngle(entry.ANCHOR.getFacing() + 90 + entry.ANGLE);
-                //orient the offset with the facing
-                VectorUtils.rotate(location, entry.ANCHOR.getFacing(), location);
-            } else {
-                //otherwise just orient the sprite
-                if (entry.SPIN != 0) {
-                    entry.SPRITE.setAngle(entry.SPRITE.getAngle() + entry.SPIN * amount);
+        //jitter/flickerMedian
+        if (entry.DELAY != null) {
+            entry.DELAY.advance(amount);
+            if (entry.DELAY.intervalElapsed()) {
+                //jitter effect
+                if (entry.JITTER_RANGE > 0 || entry.JITTER_TILT > 0) {
+                    entry.FACING += jitter(entry.JITTER, entry.JITTER_RANGE, entry.JITTER_TILT, entry.OFFSET);
                 }
+                //flicker effect, then fading stuff
+                entry.ALPHA = flicker(entry.FLICKER_RANGE, entry.FLICKER_MEDIAN) * fade(entry.TIME, entry.FADEIN, entry.FULL, entry.FADEOUT);
             }
+        } else {
+            //fading stuff
+            entry.ALPHA = fade(entry.TIME, entry.FADEIN, entry.FULL, entry.FADEOUT);
+        }
 
-            //move the offset on the anchor
-            if (engine.isEntityInPlay(entry.ANCHOR)) {
-                Vector2f loc = new Vector2f(entry.ANCHOR.getLocation());
-                Vector2f.add(location, loc, location);
-                entry.LOCATION = loc;
-            } else {
-                Vector2f.add(location, entry.LOCATION, location);
+        //for parenting, check if the anchor is present
+        if (entry.PARENT && anchored) {
+            //if the sprite is parented, use the ANGLE to store the offset
+            if (entry.SPIN != 0) {
+                entry.ANGLE += entry.SPIN * amount;
+            }
+            entry.FACING = entry.ANCHOR.getFacing() + 90 + entry.ANGLE;
+        } else {
+            //otherwise just orient the sprite
+            if (entry.SPIN != 0) {
+                entry.FACING += entry.SPIN * amount;
             }
+        }
 
-            //finally render that stuff
-            render(new renderData(entry.SPRITE, location, entry.LAYER));
+        //remember where the anchor was, in case it leaves
+        if (anchored) {
+            entry.LOCATION.set(entry.ANCHOR.getLocation());
         }
+        return true;
     }
 
-    private void screenspaceHandler(CombatEngineLayers layer, float amount) {
-        //iterate throught the BATTLESPACE data first:
-        Vector2f center;
-        ViewportAPI screen = Global.getCombatEngine().getViewport();
+    private void renderObjectspace(CombatEngineAPI engine, objectspaceData entry) {
+        //addjust the position and orientation, starting from the base offset
+        float x = entry.OFFSET.x;
+        float y = entry.OFFSET.y;
+        float facing = entry.FACING;
+
+        //the anchor is read again here, so the sprite sticks to where it is drawn this frame
+        boolean anchored = engine.isEntityInPlay(entry.ANCHOR);
+        if (entry.PARENT && anchored) {
+            facing = entry.ANCHOR.getFacing() + 90 + entry.ANGLE;
+            //orient the offset with the facing
+            double angle = Math.toRadians(entry.ANCHOR.getFacing());
+            float cos = (float) Math.cos(angle);
+            float sin = (float) Math.sin(angle);
+            float rotatedX = x * cos - y * sin;
+            y = x * sin + y * cos;
+            x = rotatedX;
+        }
 
-        for (Iterator<screenspaceData> iter = SCREENSPACE.iterator(); iter.hasNext(); ) {
-            screenspaceData entry = iter.next();
+        //move the offset on the anchor
+        Vector2f anchor = anchored ? entry.ANCHOR.getLocation() : entry.LOCATION;
+        x += anchor.x;
+        y += anchor.y;
 
-            //Only run the rest of the code if it's our turn to render/we are on the right layer
-            if (layer != entry.LAYER) {
-                continue;
+        applyLook(entry.SPRITE, entry.WIDTH, entry.HEIGHT, facing, entry.ALPHA, entry.COLOR, entry.BLEND_SRC, entry.BLEND_DEST);
+
+        //finally render that stuff
+        render(entry.SPRITE, x, y);
+    }
+
+    private void screenspaceHandler(List<screenspaceData> screenspace, float amount) {
+        //iterate throught the SCREENSPACE data:
+        int kept = 0;
+        for (int i = 0; i < screenspace.size(); i++) {
+            screenspaceData entry = screenspace.get(i);
+            if (advanceScreenspace(entry, amount)) {
+                screenspace.set(kept++, entry);
+            } else {
+                entry.clear();
+                SCREENSPACE_POOL.add(entry);
             }
+        }
+        truncate(screenspace, kept);
+    }
 
-            if (entry.FADEOUT < 0) {
-                // SINGLE FRAME RENDERING
-                if (entry.POS == MagicRender.positioning.FULLSCREEN_MAINTAIN_RATIO) {
-                    center = new Vector2f(screen.getCenter());
-                    entry.SPRITE.setSize(entry.SIZE.x * screen.getVisibleWidth(), entry.SIZE.y * screen.getVisibleHeight());
-                } else if (entry.POS == MagicRender.positioning.STRETCH_TO_FULLSCREEN) {
-                    center = new Vector2f(screen.getCenter());
-                    entry.SPRITE.setSize(screen.getVisibleWidth(), screen.getVisibleHeight());
-                } else {
-                    Vector2f refPoint = screen.getCenter();
-                    switch (entry.POS) {
-
-                        case LOW_LEFT:
-                            refPoint = new Vector2f(refPoint.x - (screen.getVisibleWidth() / 2), refPoint.y - (screen.getVisibleHeight() / 2));
-                            break;
-
-                        case LOW_RIGHT:
-                            refPoint = new Vector2f(refPoint.x - (screen.getVisibleWidth() / 2), refPoint.y + (screen.getVisibleHeight() / 2));
-                            break;
-
-                        case UP_LEFT:
-                            refPoint = new Vector2f(refPoint.x + (screen.getVisibleWidth() / 2), refPoint.y - (screen.getVisibleHeight() / 2));
-                            break;
-
-                        case UP_RIGHT:
-                            refPoint = new Vector2f(refPoint.x + (screen.getVisibleWidth() / 2), refPoint.y + (screen.getVisibleHeight() / 2));
-                            break;
-
-                        default:
-                    }
-                    center = new Vector2f(entry.LOC);
-                    center.scale(screen.getViewMult());
-                    Vector2f.add(center, refPoint, center);
-                }
+    //Returns false once the sprite is done
+    private boolean advanceScreenspace(screenspaceData entry, float amount) {
+        if (entry.FADEOUT < 0) {
+            // SINGLE FRAME RENDERING
+            //nothing to animate, dropDrawnSprites removes it once it has been drawn
+            return true;
+        }
 
-                //finally render that stuff
-                render(new renderData(entry.SPRITE, center, entry.LAYER));
+        // TIMED RENDERING
+        //add the time spent, that means sprites will never start at 0 exactly, but it simplifies a lot the logic
+        entry.TIME += amount;
+        if (entry.FADEOUT > 0 && entry.TIME > entry.FADEOUT) {
+            //remove expended ones
+            return false;
+        }
 
-                //and immediatelly remove
-                iter.remove();
-            } else {
-                // TIMED RENDERING                    
-                //add the time spent, that means sprites will never start at 0 exactly, but it simplifies a lot the logic
-                entry.TIME += amount;
-                if (entry.FADEOUT > 0 && entry.TIME > entry.FADEOUT) {
-                    //remove expended ones
-                    iter.remove();
-                    continue;
+        //jitter/flickerMedian
+        if (entry.DELAY != null) {
+            entry.DELAY.advance(amount);
+            if (entry.DELAY.intervalElapsed()) {
+                //jitter effect
+                if (entry.JITTER_RANGE > 0 || entry.JITTER_TILT > 0) {
+                    entry.FACING += jitter(entry.JITTER, entry.JITTER_RANGE, entry.JITTER_TILT, entry.LOC);
                 }
+                //flicker effect, then fading stuff
+                entry.ALPHA = flicker(entry.FLICKER_RANGE, entry.FLICKER_MEDIAN) * fade(entry.TIME, entry.FADEIN, entry.FULL, entry.FADEOUT);
+            }
+        } else {
+            //fading stuff
+            entry.ALPHA = fade(entry.TIME, entry.FADEIN, entry.FULL, entry.FADEOUT);
+        }
 
-                //jitter/flickerMedian
-                if (entry.DELAY != null) {
-                    entry.DELAY.advance(amount);
-                    if (entry.DELAY.intervalElapsed()) {
-                        //jitter effect
-                        if (entry.JITTER_RANGE > 0 || entry.JITTER_TILT > 0) {
-                            float a = 0, b = 0, c = 0;
-                            float x = -entry.JITTER.x, y = -entry.JITTER.y, z = -entry.JITTER.z;
-                            //new jitter values
-                            if (entry.JITTER_RANGE > 0) {
-                                a = MathUtils.getRandomNumberInRange(-entry.JITTER_RANGE, entry.JITTER_RANGE);
-                                b = MathUtils.getRandomNumberInRange(-entry.JITTER_RANGE, entry.JITTER_RANGE);
-                            }
-                            if (entry.JITTER_TILT > 0) {
-                                c = MathUtils.getRandomNumberInRange(-entry.JITTER_TILT, entry.JITTER_TILT);
-                            }
-
-                            //remove old jitter, add new value
-                            Vector2f.add(entry.LOC, new Vector2f(x + a, y + b), entry.LOC);
-                            entry.SPRITE.setAngle(entry.SPRITE.getAngle() + z + c);
-
-                            //store new jitter values
-                            entry.JITTER = new Vector3f(a, b, c);
-                        }
-                        //flicker effect
-                        float opacity = 1;
-                        if (entry.FLICKER_RANGE > 0) {
-                            opacity = Math.min(1f, Math.max(0f, MathUtils.getRandomNumberInRange((float) entry.FLICKER_MEDIAN - (float) entry.FLICKER_RANGE, (float) entry.FLICKER_MEDIAN + (float) entry.FLICKER_RANGE)));
-                        }
-
-                        //fading stuff
-                        if (entry.TIME < entry.FADEIN) {
-                            opacity *= (entry.TIME / entry.FADEIN);
-                        } else if (entry.TIME > entry.FULL) {
-                            opacity *= (1 - ((entry.TIME - entry.FULL) / (entry.FADEOUT - entry.FULL)));
-                        }
-
-                        entry.SPRITE.setAlphaMult(opacity);
-                    }
-                } else {
-                    //fading stuff
-                    if (entry.TIME < entry.FADEIN) {
-                        entry.SPRITE.setAlphaMult(entry.TIME / entry.FADEIN);
-                    } else if (entry.TIME > entry.FULL) {
-                        entry.SPRITE.setAlphaMult(1 - ((entry.TIME - entry.FULL) / (entry.FADEOUT - entry.FULL)));
-                    } else entry.SPRITE.setAlphaMult(1);
-                }
+        //fullscreen sprites are sized by the viewport alone
+        if (entry.POS == MagicRender.positioning.FULLSCREEN_MAINTAIN_RATIO || entry.POS == MagicRender.positioning.STRETCH_TO_FULLSCREEN) {
+            return true;
+        }
 
+        //move the sprite to a new center if needed
+        if (entry.MOVES) {
+            entry.LOC.x += entry.VEL.x * amount;
+            entry.LOC.y += entry.VEL.y * amount;
+        }
 
-                if (entry.POS == MagicRender.positioning.FULLSCREEN_MAINTAIN_RATIO) {
-                    center = new Vector2f(screen.getCenter());
-                    entry.SPRITE.setSize(entry.SIZE.x * screen.getVisibleWidth(), entry.SIZE.y * screen.getVisibleHeight());
-                } else if (entry.POS == MagicRender.positioning.STRETCH_TO_FULLSCREEN) {
-                    center = new Vector2f(screen.getCenter());
-                    entry.SPRITE.setSize(screen.getVisibleWidth(), screen.getVisibleHeight());
-                } else {
-                    Vector2f refPoint = screen.getCenter();
-                    switch (entry.POS) {
+        //grow/shrink the sprite to a new size if needed
+        if (entry.GROWS) {
+            entry.SIZE.x += entry.GROWTH.x * amount;
+            entry.SIZE.y += entry.GROWTH.y * amount;
+            //check if the growth made the sprite too small
+            if (entry.SIZE.x <= 0 || entry.SIZE.y <= 0) {
+                //remove sprites that completely shrunk
+                return false;
+            }
+        }
 
-                        case LOW_LEFT:
-                            refPoint = new Vector2f(refPoint.x - (screen.getVisibleWidth() / 2), refPoint.y - (screen.getVisibleHeight() / 2));
-                            break;
+        //spin the sprite if needed
+        if (entry.SPIN != 0) {
+            entry.FACING += entry.SPIN * amount;
+        }
+        return true;
+    }
 
-                        case LOW_RIGHT:
-                            refPoint = new Vector2f(refPoint.x - (screen.getVisibleWidth() / 2), refPoint.y + (screen.getVisibleHeight() / 2));
-                            break;
+    private void renderScreenspace(ViewportAPI screen, screenspaceData entry) {
+        //screenspace sprites follow the viewport, so their position and size are worked out when drawn
+        Vector2f screenCenter = screen.getCenter();
+        float x = screenCenter.x;
+        float y = screenCenter.y;
+        if (entry.POS == MagicRender.positioning.FULLSCREEN_MAINTAIN_RATIO) {
+            entry.SPRITE.setSize(entry.SIZE.x * screen.getVisibleWidth(), entry.SIZE.y * screen.getVisibleHeight());
+        } else if (entry.POS == MagicRender.positioning.STRETCH_TO_FULLSCREEN) {
+            entry.SPRITE.setSize(screen.getVisibleWidth(), screen.getVisibleHeight());
+        } else {
+            switch (entry.POS) {
+
+                case LOW_LEFT:
+                    x -= screen.getVisibleWidth() / 2;
+                    y -= screen.getVisibleHeight() / 2;
+                    break;
+
+                case LOW_RIGHT:
+                    x -= screen.getVisibleWidth() / 2;
+                    y += screen.getVisibleHeight() / 2;
+                    break;
+
+                case UP_LEFT:
+                    x += screen.getVisibleWidth() / 2;
+                    y -= screen.getVisibleHeight() / 2;
+                    break;
+
+                case UP_RIGHT:
+                    x += screen.getVisibleWidth() / 2;
+                    y += screen.getVisibleHeight() / 2;
+                    break;
+
+                default:
+            }
+            x += entry.LOC.x * screen.getViewMult();
+            y += entry.LOC.y * screen.getViewMult();
 
-                        case UP_LEFT:
-                            refPoint = new Vector2f(refPoint.x + (screen.getVisibleWidth() / 2), refPoint.y - (screen.getVisibleHeight() / 2));
-                            break;
+            //single frame sprites keep the size they were given
+            if (entry.FADEOUT >= 0) {
+                entry.SPRITE.setSize(entry.SIZE.x * screen.getViewMult(), entry.SIZE.y * screen.getViewMult());
+            }
+        }
+        entry.SPRITE.setAngle(entry.FACING);
+        entry.SPRITE.setAlphaMult(entry.ALPHA);
+        entry.SPRITE.setColor(entry.COLOR);
+        entry.SPRITE.setBlendFunc(entry.BLEND_SRC, entry.BLEND_DEST);
+
+        //finally render that stuff
+        render(entry.SPRITE, x, y);
+        entry.DRAWN = true;
+    }
 
-                        case UP_RIGHT:
-                            refPoint = new Vector2f(refPoint.x + (screen.getVisibleWidth() / 2), refPoint.y + (screen.getVisibleHeight() / 2));
-                            break;
+    //Sets a sprite to how one of its queued instances looks. Sprites may be shared by many instances, so this is done
+    //right before each of them is drawn
+    private static void applyLook(SpriteAPI sprite, float width, float height, float facing, float alpha, Color color, int blendSrc, int blendDest) {
+        sprite.setSize(width, height);
+        sprite.setAngle(facing);
+        sprite.setAlphaMult(alpha);
+        sprite.setColor(color);
+        sprite.setBlendFunc(blendSrc, blendDest);
+    }
 
-                        default:
-                    }
+    //Replaces the previous jitter, stored in "jitter", by a new random one: moves the position by the difference, and
+    //returns the difference in tilt for the sprite's facing
+    private static float jitter(Vector3f jitter, float range, float tilt, Vector2f position) {
+        float a = 0, b = 0, c = 0;
+        //new jitter values
+        if (range > 0) {
+            a = MathUtils.getRandomNumberInRange(-range, range);
+            b = MathUtils.getRandomNumberInRange(-range, range);
+        }
+        if (tilt > 0) {
+            c = MathUtils.getRandomNumberInRange(-tilt, tilt);
+        }
 
-                    //move the sprite to a new center if needed
-                    if (entry.VEL != null && entry.VEL != new Vector2f()) {
-                        Vector2f move = new Vector2f(entry.VEL);
-                        move.scale(amount);
-                        Vector2f.add(entry.LOC, move, entry.LOC);
-                    }
-                    center = new Vector2f(entry.LOC);
-                    center.scale(screen.getViewMult());
-                    Vector2f.add(center, refPoint, center);
-
-                    //grow/shrink the sprite to a new size if needed
-                    if (entry.GROWTH != null && entry.GROWTH != new Vector2f()) {
-                        entry.SIZE = new Vector2f(entry.SIZE.x + (entry.GROWTH.x * amount), entry.SIZE.y + (entry.GROWTH.y * amount));
-                        //check if the growth made the sprite too small
-                        if (entry.SIZE.x <= 0 || entry.SIZE.y <= 0) {
-                            //remove sprites that completely shrunk
-                            iter.remove();
-                            continue;
-                        }
-                    }
-                    entry.SPRITE.setSize(entry.SIZE.x * screen.getViewMult(), entry.SIZE.y * screen.getViewMult());
+        //remove old jitter, add new value
+        position.x += a - jitter.x;
+        position.y += b - jitter.y;
+        float tiltChange = c - jitter.z;
 
-                    //spin the sprite if needed
-                    if (entry.SPIN != 0) {
-                        entry.SPRITE.setAngle(entry.SPRITE.getAngle() + entry.SPIN * amount);
-                    }
-                }
+        //store new jitter values
+        jitter.set(a, b, c);
+        return tiltChange;
+    }
 
-                //finally render that stuff
-                render(new renderData(entry.SPRITE, center, entry.LAYER));
+    private static float flicker(float range, float median) {
+        if (range > 0) {
+            return Math.min(1f, Math.max(0f, MathUtils.getRandomNumberInRange(median - range, median + range)));
+        }
+        return 1;
+    }
 
-                if (entry.FADEOUT < 0) {
-                    iter.remove();
-                }
-            }
+    private static float fade(float time, float fadein, float full, float fadeout) {
+        if (time < fadein) {
+            return time / fadein;
+        } else if (time > full) {
+            return 1 - ((time - full) / (fadeout - full));
         }
+        return 1;
     }
 
     //////////////////////////////
     //                          //
     //      RENDER CLASSES      //
     //                          //
-    //////////////////////////////   
+    //////////////////////////////
+
+    private void render(SpriteAPI sprite, float x, float y) {
+        //sprites that drifted off-screen are still animated, but not drawn
+        if (!isOnScreen(sprite, x, y)) {
+            return;
+        }
 
-    private void render(renderData data) {
         //where the magic happen
-        SpriteAPI sprite = data.SPRITE;
-        sprite.renderAtCenter(data.LOC.x, data.LOC.y);
+        if (batchedRendering) {
+            batchSprite(sprite, x, y);
+        } else {
+            sprite.renderAtCenter(x, y);
+        }
+    }
+
+    //Whether any part of the sprite, with its current size and angle, would be drawn on screen
+    private boolean isOnScreen(SpriteAPI sprite, float x, float y) {
+        float halfWidth = sprite.getWidth() / 2f;
+        float halfHeight = sprite.getHeight() / 2f;
+        double angle = Math.toRadians(sprite.getAngle());
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+        //a sprite turning around another point than its center is drawn off (x, y): its pivot sits where batchSprite
+        //puts it, and the sprite's center is turned around that pivot
+        float centerX = x;
+        float centerY = y;
+        if (sprite.getCenterX() >= 0 || sprite.getCenterY() >= 0) {
+            float pivotX = sprite.getCenterX() < 0 ? halfWidth : sprite.getCenterX();
+            float pivotY = sprite.getCenterY() < 0 ? halfHeight : sprite.getCenterY();
+            float offsetX = halfWidth - pivotX;
+            float offsetY = halfHeight - pivotY;
+            centerX = x - offsetX + offsetX * cos - offsetY * sin;
+            centerY = y - offsetY + offsetX * sin + offsetY * cos;
+        }
+        float extentX = halfWidth * Math.abs(cos) + halfHeight * Math.abs(sin);
+        float extentY = halfWidth * Math.abs(sin) + halfHeight * Math.abs(cos);
+        return viewBounds.isNearViewport(centerX, centerY, extentX, extentY);
+    }
+
+    //Adds the quad renderAtCenter would draw to the batch of the sprite's texture and blend mode
+    private void batchSprite(SpriteAPI sprite, float x, float y) {
+        MagicTrailBatch batch = batches.getBatch(sprite.getTextureId(), sprite.getBlendSrc(), sprite.getBlendDest());
+
+        float width = sprite.getWidth();
+        float height = sprite.getHeight();
+        //the sprite turns around its own center, unless it was given another one
+        float pivotX = sprite.getCenterX() < 0 ? width / 2f : sprite.getCenterX();
+        float pivotY = sprite.getCenterY() < 0 ? height / 2f : sprite.getCenterY();
+        float originX = x - width / 2f + pivotX;
+        float originY = y - height / 2f + pivotY;
+        float angle = (float) Math.toRadians(sprite.getAngle());
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+
+        Color color = sprite.getColor();
+        float r = color.getRed() / 255f;
+        float g = color.getGreen() / 255f;
+        float b = color.getBlue() / 255f;
+        float a = color.getAlpha() / 255f * sprite.getAlphaMult();
+
+        float u0 = sprite.getTexX();
+        float v0 = sprite.getTexY();
+        float u1 = u0 + sprite.getTexWidth();
+        float v1 = v0 + sprite.getTexHeight();
+
+        //corners relative to the pivot, in the same order renderAtCenter draws them
+        float left = -pivotX;
+        float right = width - pivotX;
+        float bottom = -pivotY;
+        float top = height - pivotY;
+        batch.addVertex(originX + left * cos - bottom * sin, originY + left * sin + bottom * cos, u0, v0, r, g, b, a);
+        batch.addVertex(originX + left * cos - top * sin, originY + left * sin + top * cos, u0, v1, r, g, b, a);
+        batch.addVertex(originX + right * cos - top * sin, originY + right * sin + top * cos, u1, v1, r, g, b, a);
+        batch.addVertex(originX + right * cos - bottom * sin, originY + right * sin + bottom * cos, u1, v0, r, g, b, a);
     }
 
     public static class renderData {
-        public final SpriteAPI SPRITE;
-        public final Vector2f LOC;
-        public final CombatEngineLayers LAYER;
+        public SpriteAPI SPRITE;
+        public final Vector2f LOC = new Vector2f();
+        public CombatEngineLayers LAYER;
+
+        //how the sprite looked when queued, applied to it when drawn
+        private float WIDTH;
+        private float HEIGHT;
+        private float FACING;
+        private float ALPHA;
+        private Color COLOR;
+        private int BLEND_SRC;
+        private int BLEND_DEST;
 
         public renderData(SpriteAPI sprite, Vector2f loc, CombatEngineLayers layer) {
+            set(sprite, loc, layer);
+        }
+
+        private renderData() {
+        }
+
+        private void set(SpriteAPI sprite, Vector2f loc, CombatEngineLayers layer) {
             this.SPRITE = sprite;
-            this.LOC = loc;
+            this.LOC.set(loc);
             this.LAYER = layer;
+
+            this.WIDTH = sprite.getWidth();
+            this.HEIGHT = sprite.getHeight();
+            this.FACING = sprite.getAngle();
+            this.ALPHA = sprite.getAlphaMult();
+            this.COLOR = sprite.getColor();
+            this.BLEND_SRC = sprite.getBlendSrc();
+            this.BLEND_DEST = sprite.getBlendDest();
+        }
+
+        private void setLook(float width, float height, float facing, Color color, int blendSrc, int blendDest) {
+            this.WIDTH = width;
+            this.HEIGHT = height;
+            this.FACING = facing;
+            this.ALPHA = 1;
+            this.COLOR = color;
+            this.BLEND_SRC = blendSrc;
+            this.BLEND_DEST = blendDest;
         }
     }
 
+    //Every sprite queued on one layer
+    private static class layerQueues {
+        private final List<renderData> SINGLEFRAME = new ArrayList<>();
+        private final List<battlespaceData> BATTLESPACE = new ArrayList<>();
+        private final List<objectspaceData> OBJECTSPACE = new ArrayList<>();
+        private final List<screenspaceData> SCREENSPACE = new ArrayList<>();
+        //how many single frame sprites were drawn since the last advance
+        private int SINGLEFRAME_DRAWN = 0;
+    }
+
+    //The records below are reused once their sprite is done, so they keep their own copy of every vector
+
     private static class battlespaceData {
-        private final SpriteAPI SPRITE;
-        private Vector2f LOC;
-        private final Vector2f VEL;
-        private final Vector2f GROWTH;
-        private final float SPIN;
-
-        private final float JITTER_RANGE;
-        private final float JITTER_TILT;
-        private Vector3f JITTER;
-        private final float FLICKER_RANGE;
-        private final float FLICKER_MEDIAN;
+        private SpriteAPI SPRITE;
+        private final Vector2f LOC = new Vector2f();
+        private final Vector2f VEL = new Vector2f();
+        private final Vector2f GROWTH = new Vector2f();
+        private boolean MOVES;
+        private boolean GROWS;
+        private float SPIN;
+
+        private float JITTER_RANGE;
+        private float JITTER_TILT;
+        private final Vector3f JITTER = new Vector3f();
+        private float FLICKER_RANGE;
+        private float FLICKER_MEDIAN;
         private IntervalUtil DELAY;
 
-        private final float FADEIN;
-        private final float FULL; //fade in + full
-        private final float FADEOUT; //full duration
+        private float FADEIN;
+        private float FULL; //fade in + full
+        private float FADEOUT; //full duration
         private float TIME;
-        private final CombatEngineLayers LAYER;
-
-        public battlespaceData(SpriteAPI sprite, Vector2f loc, Vector2f vel, Vector2f growth, float spin,
-                               float jitterRange, float jitterTilt, Vector3f jitter, float flickerRange, float flickerMedian, IntervalUtil delay,
-                               float fadein, float full, float fadeout, float time, CombatEngineLayers layer) {
+        private CombatEngineLayers LAYER;
+
+        //state of the sprite as of the last advance, applied to it when drawn
+        private float WIDTH;
+        private float HEIGHT;
+        private float FACING;
+        private float ALPHA;
+        private Color COLOR;
+        private int BLEND_SRC;
+        private int BLEND_DEST;
+
+        private void set(SpriteAPI sprite, Vector2f loc, Vector2f vel, Vector2f growth, float spin,
+                         float jitterRange, float jitterTilt, Vector3f jitter, float flickerRange, float flickerMedian, IntervalUtil delay,
+                         float fadein, float full, float fadeout, float time, CombatEngineLayers layer) {
             this.SPRITE = sprite;
-            this.LOC = loc;
-            this.VEL = vel;
-            this.GROWTH = growth;
+            this.LOC.set(loc);
+            this.MOVES = copy(vel, this.VEL);
+            this.GROWS = copy(growth, this.GROWTH);
             this.SPIN = spin;
 
             this.JITTER_RANGE = jitterRange;
             this.JITTER_TILT = jitterTilt;
-            this.JITTER = jitter;
+            copy(jitter, this.JITTER);
             this.FLICKER_RANGE = flickerRange;
             this.FLICKER_MEDIAN = flickerMedian;
             this.DELAY = delay;
@@ -619,50 +1094,86 @@ public class MagicRenderPlugin extends BaseEveryFrameCombatPlugin {
             this.FADEOUT = fadeout;
             this.TIME = time;
             this.LAYER = layer;
+
+            this.WIDTH = sprite.getWidth();
+            this.HEIGHT = sprite.getHeight();
+            this.FACING = sprite.getAngle();
+            this.ALPHA = fade(time, fadein, full, fadeout);
+            this.COLOR = sprite.getColor();
+            this.BLEND_SRC = sprite.getBlendSrc();
+            this.BLEND_DEST = sprite.getBlendDest();
+        }
+
+        //used instead of how the sprite looks, when it is shared by other effects
+        private void setLook(float width, float height, float facing, Color color, int blendSrc, int blendDest) {
+            this.WIDTH = width;
+            this.HEIGHT = height;
+            this.FACING = facing;
+            this.COLOR = color;
+            this.BLEND_SRC = blendSrc;
+            this.BLEND_DEST = blendDest;
+        }
+
+        //lets go of the game objects once done
+        private void clear() {
+            this.SPRITE = null;
+            this.COLOR = null;
+            this.DELAY = null;
         }
     }
 
     private static class objectspaceData {
-        private final SpriteAPI SPRITE;
-        private final CombatEntityAPI ANCHOR;
-        private Vector2f LOCATION;
-        private Vector2f OFFSET;
-        private final Vector2f VEL;
-        private final Vector2f GROWTH;
+        private SpriteAPI SPRITE;
+        private CombatEntityAPI ANCHOR;
+        private final Vector2f LOCATION = new Vector2f();
+        private final Vector2f OFFSET = new Vector2f();
+        private final Vector2f VEL = new Vector2f();
+        private final Vector2f GROWTH = new Vector2f();
+        private boolean MOVES;
+        private boolean GROWS;
         private float ANGLE;
-        private final float SPIN;
-        private final boolean PARENT;
-
-        private final float JITTER_RANGE;
-        private final float JITTER_TILT;
-        private Vector3f JITTER;
-        private final float FLICKER_RANGE;
-        private final float FLICKER_MEDIAN;
+        private float SPIN;
+        private boolean PARENT;
+
+        private float JITTER_RANGE;
+        private float JITTER_TILT;
+        private final Vector3f JITTER = new Vector3f();
+        private float FLICKER_RANGE;
+        private float FLICKER_MEDIAN;
         private IntervalUtil DELAY;
 
-        private final float FADEIN;
+        private float FADEIN;
         private float FULL; //fade in + full
         private float FADEOUT; //full duration
-        private final boolean DEATHFADE;
+        private boolean DEATHFADE;
         private float TIME;
-        private final CombatEngineLayers LAYER;
-
-        public objectspaceData(SpriteAPI sprite, CombatEntityAPI anchor, Vector2f loc, Vector2f offset, Vector2f vel, Vector2f growth, float angle, float spin, boolean parent,
-                               float jitterRange, float jitterTilt, Vector3f jitter, float flickerRange, float flickerMedian, IntervalUtil delay,
-                               float fadein, float full, float fadeout, boolean fade, float time, CombatEngineLayers layer) {
+        private CombatEngineLayers LAYER;
+
+        //state of the sprite as of the last advance, applied to it when drawn
+        private float WIDTH;
+        private float HEIGHT;
+        private float FACING;
+        private float ALPHA;
+        private Color COLOR;
+        private int BLEND_SRC;
+        private int BLEND_DEST;
+
+        private void set(SpriteAPI sprite, CombatEntityAPI anchor, Vector2f loc, Vector2f offset, Vector2f vel, Vector2f growth, float angle, float spin, boolean parent,
+                         float jitterRange, float jitterTilt, Vector3f jitter, float flickerRange, float flickerMedian, IntervalUtil delay,
+                         float fadein, float full, float fadeout, boolean fade, float time, CombatEngineLayers layer) {
             this.SPRITE = sprite;
             this.ANCHOR = anchor;
-            this.LOCATION = loc;
-            this.OFFSET = offset;
-            this.VEL = vel;
-            this.GROWTH = growth;
+            this.LOCATION.set(loc);
+            copy(offset, this.OFFSET);
+            this.MOVES = copy(vel, this.VEL);
+            this.GROWS = copy(growth, this.GROWTH);
             this.ANGLE = angle;
             this.SPIN = spin;
             this.PARENT = parent;
 
             this.JITTER_RANGE = jitterRange;
             this.JITTER_TILT = jitterTilt;
-            this.JITTER = jitter;
+            copy(jitter, this.JITTER);
             this.FLICKER_RANGE = flickerRange;
             this.FLICKER_MEDIAN = flickerMedian;
             this.DELAY = delay;
@@ -673,45 +1184,81 @@ public class MagicRenderPlugin extends BaseEveryFrameCombatPlugin {
             this.DEATHFADE = fade;
             this.TIME = time;
             this.LAYER = layer;
+
+            this.WIDTH = sprite.getWidth();
+            this.HEIGHT = sprite.getHeight();
+            this.FACING = sprite.getAngle();
+            this.ALPHA = fade(time, fadein, full, fadeout);
+            this.COLOR = sprite.getColor();
+            this.BLEND_SRC = sprite.getBlendSrc();
+            this.BLEND_DEST = sprite.getBlendDest();
+        }
+
+        //used instead of how the sprite looks, when it is shared by other effects
+        private void setLook(float width, float height, float facing, Color color, int blendSrc, int blendDest) {
+            this.WIDTH = width;
+            this.HEIGHT = height;
+            this.FACING = facing;
+            this.COLOR = color;
+            this.BLEND_SRC = blendSrc;
+            this.BLEND_DEST = blendDest;
+        }
+
+        //lets go of the game objects once done
+        private void clear() {
+            this.SPRITE = null;
+            this.COLOR = null;
+            this.ANCHOR = null;
+            this.DELAY = null;
         }
     }
 
     private static class screenspaceData {
-        private final SpriteAPI SPRITE;
-        private final MagicRender.positioning POS;
-        private Vector2f LOC;
-        private final Vector2f VEL;
-        private Vector2f SIZE;
-        private final Vector2f GROWTH;
-        private final float SPIN;
-
-        private final float JITTER_RANGE;
-        private final float JITTER_TILT;
-        private Vector3f JITTER;
-        private final float FLICKER_RANGE;
-        private final float FLICKER_MEDIAN;
+        private SpriteAPI SPRITE;
+        private MagicRender.positioning POS;
+        private final Vector2f LOC = new Vector2f();
+        private final Vector2f VEL = new Vector2f();
+        private final Vector2f SIZE = new Vector2f();
+        private final Vector2f GROWTH = new Vector2f();
+        private boolean MOVES;
+        private boolean GROWS;
+        private float SPIN;
+
+        private float JITTER_RANGE;
+        private float JITTER_TILT;
+        private final Vector3f JITTER = new Vector3f();
+        private float FLICKER_RANGE;
+        private float FLICKER_MEDIAN;
         private IntervalUtil DELAY;
 
-        private final float FADEIN;
-        private final float FULL; //fade in + full
-        private final float FADEOUT; //full duration
+        private float FADEIN;
+        private float FULL; //fade in + full
+        private float FADEOUT; //full duration
         private float TIME;
-        private final CombatEngineLayers LAYER;
-
-        public screenspaceData(SpriteAPI sprite, MagicRender.positioning position, Vector2f loc, Vector2f vel, Vector2f size, Vector2f growth, float spin,
-                               float jitterRange, float jitterTilt, Vector3f jitter, float flickerRange, float flickerMedian, IntervalUtil delay,
-                               float fadein, float full, float fadeout, float time, CombatEngineLayers layer) {
+        private CombatEngineLayers LAYER;
+
+        //state of the sprite as of the last advance, applied to it when drawn
+        private float FACING;
+        private float ALPHA;
+        private Color COLOR;
+        private int BLEND_SRC;
+        private int BLEND_DEST;
+        private boolean DRAWN;
+
+        private void set(SpriteAPI sprite, MagicRender.positioning position, Vector2f loc, Vector2f vel, Vector2f size, Vector2f growth, float spin,
+                         float jitterRange, float jitterTilt, Vector3f jitter, float flickerRange, float flickerMedian, IntervalUtil delay,
+                         float fadein, float full, float fadeout, float time, CombatEngineLayers layer) {
             this.SPRITE = sprite;
             this.POS = position;
-            this.LOC = loc;
-            this.VEL = vel;
-            this.SIZE = size;
-            this.GROWTH = growth;
+            this.LOC.set(loc);
+            this.MOVES = copy(vel, this.VEL);
+            copy(size, this.SIZE);
+            this.GROWS = copy(growth, this.GROWTH);
             this.SPIN = spin;
 
             this.JITTER_RANGE = jitterRange;
             this.JITTER_TILT = jitterTilt;
-            this.JITTER = jitter;
+            copy(jitter, this.JITTER);
             this.FLICKER_RANGE = flickerRange;
             this.FLICKER_MEDIAN = flickerMedian;
             this.DELAY = delay;
@@ -721,6 +1268,38 @@ public class MagicRenderPlugin extends BaseEveryFrameCombatPlugin {
             this.FADEOUT = fadeout;
             this.TIME = time;
             this.LAYER = layer;
+
+            this.FACING = sprite.getAngle();
+            this.ALPHA = fade(time, fadein, full, fadeout);
+            this.COLOR = sprite.getColor();
+            this.BLEND_SRC = sprite.getBlendSrc();
+            this.BLEND_DEST = sprite.getBlendDest();
+            this.DRAWN = false;
+        }
+
+        //lets go of the game objects once done
+        private void clear() {
+            this.SPRITE = null;
+            this.COLOR = null;
+            this.DELAY = null;
+        }
+    }
+
+    //Copies a vector into a record's own one, null counting as zero. Returns whether it isn't zero
+    private static boolean copy(Vector2f from, Vector2f to) {
+        if (from == null) {
+            to.set(0, 0);
+        } else {
+            to.set(from);
+        }
+        return to.x != 0 || to.y != 0;
+    }
+
+    private static void copy(Vector3f from, Vector3f to) {
+        if (from == null) {
+            to.set(0, 0, 0);
+        } else {
+            to.set(from.x, from.y, from.z);
         }
     }
 }
@@ -756,4 +1335,4 @@ class MagicRenderer extends BaseCombatLayeredRenderingPlugin {
     public EnumSet<CombatEngineLayers> getActiveLayers() {
         return EnumSet.allOf(CombatEngineLayers.class);
     }
-}
\ No newline at end of file
+}
@@ -6,16 +6,30 @@ import com.fs.starfarer.api.combat.*;
 import com.fs.starfarer.api.graphics.SpriteAPI;
 import com.fs.starfarer.api.input.InputEventAPI;
 import com.fs.starfarer.api.util.IntervalUtil;
+import org.apache.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 import org.lazywizard.lazylib.MathUtils;
 import org.lwjgl.util.vector.Vector2f;
+import org.magiclib.util.MagicSettings;
+import org.magiclib.util.MagicTrailAtlas;
+import org.magiclib.util.MagicTrailBatch;
+import org.magiclib.util.MagicTrailBatchList;
+import org.magiclib.util.MagicTrailIdMap;
 import org.magiclib.util.MagicTrailObject;
+import org.magiclib.util.MagicTrailShader;
+import org.magiclib.util.MagicTrailShaderBuffer;
+import org.magiclib.util.MagicTrailStyle;
+import org.magiclib.util.MagicTrailStyleBuilder;
 import org.magiclib.util.MagicTrailTracker;
+import org.magiclib.util.MagicTrailViewport;
+import org.magiclib.util.MagicVariables;
 
 import java.awt.*;
 import java.util.List;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static org.lwjgl.opengl.GL11.*;
 
@@ -27,22 +41,107 @@ import static org.lwjgl.opengl.GL11.*;
  * @author Nicke535, Originem (optimization)
  */
 public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
+    private static final Logger LOG = Global.getLogger(MagicTrailPlugin.class);
+
     public static final String PLUGIN_KEY = "MagicTrailPlugin";
+    //Custom data key holding the queue of entities to cut trails on, for mods that don't want to depend on MagicLib
+    public static final String LIB_FREE_CUT_KEY = "MagicTrailPlugin_LIB_FREE_TRAIL_CUT";
     //Tracker for unique ID getting. Only use for this script, though: it's dangerous to use for other ID purposes, since it is so simple
     //NOTE: IDs should be bigger than 0; lower than 0 IDs are used by the script for "cut" trails
+    private static long usedTrailIDs = 0L;
+    private static long usedCutterIDs = 0L;
+    //Legacy float IDs, still handed out by getUniqueID()
     private static float usedIDs = 1f;
-    private static float usedCutterIDs = -1f;
+
+    //Float IDs are mapped onto their raw bits with this flag set, so they never collide with IDs from getUniqueTrailID()
+    private static final long FLOAT_ID_FLAG = 1L << 62;
 
     private static final int ANIM_KEY = -1;
 
+    //If true, every trail sharing a layer, texture and blend mode is drawn with a single vertex-array call. If false,
+    //each trail is drawn in immediate mode with its own glBegin/glEnd block (the old behaviour)
+    private static boolean batchedRendering = MagicSettings.getBoolean(MagicVariables.MAGICLIB_ID, "magicTrail_batchedRendering");
+
+    //Level of detail: trail segments shorter than this many pixels on screen are merged with their neighbours. 0 disables it
+    private static float lodPixelThreshold = MagicSettings.getFloat(MagicVariables.MAGICLIB_ID, "magicTrail_lodPixelThreshold");
+
+    //If true, trails are ticked and their quads built on a pool of worker threads during advance, into a snapshot that
+    //the renderers only have to draw. Off by default
+    private static boolean parallelSimulation = MagicSettings.getBoolean(MagicVariables.MAGICLIB_ID, "magicTrail_parallelSimulation");
+    //If true, the whole CustomData is also searched every frame for entities stored under keys merely *containing*
+    //LIB_FREE_CUT_KEY, the library-free cutting protocol from before the cut queue. Off by default
+    private static boolean legacyCutScan = MagicSettings.getBoolean(MagicVariables.MAGICLIB_ID, "magicTrail_legacyCutScan");
+    //Worker threads for parallel simulation, created the first time it is used. Always leaves one core to the main thread
+    private static ForkJoinPool simulationPool = null;
+    //Parallel simulation culls trails against the viewport as it is during advance, grown by this fraction in case the camera moves before rendering
+    private static final float PARALLEL_CULL_MARGIN = 0.1f;
+
+    //Segment budget: past this many live trail segments, new pieces are thinned out and then refused, least important first. 0 disables it
+    private static int maxSegments = MagicSettings.getInteger(MagicVariables.MAGICLIB_ID, "magicTrail_maxSegments");
+    //Optional cap on how many trail pieces are spawned in a single frame, shed the same way. 0 disables it
+    private static int maxSpawnsPerFrame = MagicSettings.getInteger(MagicVariables.MAGICLIB_ID, "magicTrail_maxSpawnsPerFrame");
+
+    //Fraction of a budget after which pieces start being shed
+    private static final float SHEDDING_START = 0.75f;
+    //Just before a budget is full, a trail with a priority of 1 only keeps one piece in this many
+    private static final float MAX_THINNING = 4f;
+    //Trails of the player ship and its projectiles count this much more than the rest, and may overdraw a full budget by up to this fraction
+    private static final float PLAYER_PRIORITY_MULT = 2f;
+    private static final float MAX_OVERDRAW = 0.25f;
+
+    //Segments alive as of the last tick plus any spawned since, and pieces spawned this frame
+    private int liveSegments = 0;
+    private int spawnsThisFrame = 0;
+    //How many pieces were shed since combat started, either to thin out a trail or because the budget was full
+    private long thinnedPieces = 0L;
+    private long refusedPieces = 0L;
+
     //Map which handles all the trails: takes in a render layer, an integer (the texture) and a map of MagicTrailTrackers, identified by a unique ID which must be tracked for each source independently
     //Also, if tex id =-1, it means it's an animated trail that texture could be changed mid-trail
-    protected Map<CombatEngineLayers, Map<Integer, Map<Float, MagicTrailTracker>>> mainMap = new EnumMap<>(CombatEngineLayers.class);
-
-    //Map for "cutting" trails: if a trail belongs to an entity (it hasn't already been cut) its ID is here
-    //if tex id =-1, it's animated cutting map
-    private Map<CombatEngineLayers, Map<Integer, Map<CombatEntityAPI, List<Float>>>> cuttingMap = new EnumMap<>(CombatEngineLayers.class);
-
+    //Both inner levels are keyed by primitives, so looking up a tracker doesn't box anything
+    protected Map<CombatEngineLayers, MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>>> mainMap = new EnumMap<>(CombatEngineLayers.class);
+
+    //Reverse index for "cutting" trails: every trail belonging to an entity (that hasn't already been cut), as the
+    //tracker map it lives in and its ID, so a cut only touches that entity's own trails
+    private final Map<CombatEntityAPI, EntityTrails> entityTrails = new HashMap<>();
+
+    //Entities to cut trails on at the start of the next frame. Also stored in the combat custom data under LIB_FREE_CUT_KEY
+    private final List<CombatEntityAPI> cutQueue = new ArrayList<>();
+
+
+    //One renderer per layer, only registered with the engine once a trail is added to that layer
+    private final Map<CombatEngineLayers, MagicTrailRenderer> renderers = new EnumMap<>(CombatEngineLayers.class);
+
+    //Expired trackers are reset and kept here to be reused for new trails, instead of being left to the garbage collector
+    private static final int MAX_POOLED_TRACKERS = 128;
+    private final List<MagicTrailTracker> trackerPool = new ArrayList<>();
+
+    //Scratch vector for spawn positions; spawning only ever happens on the main thread
+    private static final Vector2f correctedPosition = new Vector2f();
+
+    //Parallel simulation snapshot, double-buffered: chunks are filled in the back list, then swapped to the front for the
+    //renderers to draw. Chunks and their batches are kept between frames so nothing has to be reallocated
+    private List<MagicTrailSimulationChunk> frontChunks = new ArrayList<>();
+    private List<MagicTrailSimulationChunk> backChunks = new ArrayList<>();
+    private int frontChunkCount = 0;
+    private final MagicTrailViewport simulationViewport = new MagicTrailViewport();
+    private final SimulationRoot simulationRoot = new SimulationRoot();
+
+    //Performance stats: shown on the HUD in dev mode and logged periodically if enabled
+    private static boolean debugStats = MagicSettings.getBoolean(MagicVariables.MAGICLIB_ID, "magicTrail_debugStats");
+    private static final String STATS_STATUS_KEY = "MagicTrailPlugin_stats";
+    private final IntervalUtil statsLogTimer = new IntervalUtil(5f, 5f);
+    //Counted while rendering the current frame, and kept from the last complete frame
+    private int frameDrawCalls = 0;
+    private int frameVertices = 0;
+    private long frameRenderNanos = 0L;
+    private int lastDrawCalls = 0;
+    private int lastVertices = 0;
+    private long lastRenderNanos = 0L;
+    private long lastTickNanos = 0L;
+
+    //Clock for shader-aged trails: seconds of unpaused combat, which segment spawn times are measured against
+    private float shaderTime = 0f;
 
     //clean the main map and cutting map per second
     private final IntervalUtil cleanTimer = new IntervalUtil(1f, 1f);
@@ -53,58 +152,156 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      * Add trail tracker to target plugin
      *
      * @param plugin       MagicTrailPlugin
-     * @param ID           trail id, use Misc.getUniqueID()
+     * @param ID           trail id, use getUniqueTrailID()
      * @param linkedEntity
      * @param layer        rendered layer
      * @param sprite
      * @param isAnim       if the trail is anim
      * @return
      */
-    private static MagicTrailTracker addOrGetTrailTracker(MagicTrailPlugin plugin, Float ID, CombatEntityAPI linkedEntity, CombatEngineLayers layer, SpriteAPI sprite, boolean isAnim) {
+    private static MagicTrailTracker addOrGetTrailTracker(MagicTrailPlugin plugin, long ID, CombatEntityAPI linkedEntity, CombatEngineLayers layer, SpriteAPI sprite, boolean isAnim) {
 
         int texID;
         texID = isAnim ? ANIM_KEY : sprite.getTextureId();
 
-        Map<Float, MagicTrailTracker> trailTrackerMap;
-        Map<Integer, Map<Float, MagicTrailTracker>> layerMap = plugin.mainMap.get(layer);
+        MagicTrailIdMap<MagicTrailTracker> trailTrackerMap;
+        MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>> layerMap = plugin.mainMap.get(layer);
         if (layerMap == null) {
-            layerMap = new HashMap<>();
+            layerMap = new MagicTrailIdMap<>();
             plugin.mainMap.put(layer, layerMap);
+
+            //First trail on this layer: start rendering it
+            MagicTrailRenderer renderer = new MagicTrailRenderer(plugin, layer, layerMap);
+            plugin.renderers.put(layer, renderer);
+            plugin.engine.addLayeredRenderingPlugin(renderer);
         }
 
         trailTrackerMap = layerMap.get(texID);
         if (trailTrackerMap == null) {
-            trailTrackerMap = new HashMap<>();
+            trailTrackerMap = new MagicTrailIdMap<>();
             layerMap.put(texID, trailTrackerMap);
         }
 
         MagicTrailTracker trailTracker = trailTrackerMap.get(ID);
         if (trailTracker == null) {
-            trailTracker = new MagicTrailTracker();
+            trailTracker = plugin.trackerPool.isEmpty() ? new MagicTrailTracker() : plugin.trackerPool.remove(plugin.trackerPool.size() - 1);
             trailTrackerMap.put(ID, trailTracker);
         }
 
         if (linkedEntity != null) {
-            Map<Integer, Map<CombatEntityAPI, List<Float>>> layerCutMap = plugin.cuttingMap.get(layer);
-            if (layerCutMap == null) {
-                layerCutMap = new HashMap<>();
-                plugin.cuttingMap.put(layer, layerCutMap);
+            EntityTrails trails = plugin.entityTrails.get(linkedEntity);
+            if (trails == null) {
+                trails = new EntityTrails();
+                plugin.entityTrails.put(linkedEntity, trails);
+            }
+            trails.add(trailTrackerMap, ID);
+        }
+        return trailTracker;
+    }
+
+    //The trail's tracker if it already exists, without creating anything
+    private static MagicTrailTracker findTrailTracker(MagicTrailPlugin plugin, long ID, CombatEngineLayers layer, SpriteAPI sprite, boolean isAnim) {
+        MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>> layerMap = plugin.mainMap.get(layer);
+        if (layerMap == null) {
+            return null;
+        }
+        MagicTrailIdMap<MagicTrailTracker> trailTrackerMap = layerMap.get(isAnim ? ANIM_KEY : sprite.getTextureId());
+        return trailTrackerMap == null ? null : trailTrackerMap.get(ID);
+    }
+
+    /**
+     * Checks a new trail piece against the segment budget. Below 75% of the budget every piece is spawned. Above it,
+     * each trail only keeps one piece out of every few, thinning out low-priority trails the hardest, and once the
+     * budget is full only the player's high-priority trails get any new pieces. Thinning means trails already in
+     * progress get coarser rather than breaking apart.
+     *
+     * @param tracker The trail's tracker, or null if this is its first piece; new trails aren't thinned
+     * @param weight The trail's own priority multiplier; 1 for most trails
+     * @return true if the piece should be spawned
+     */
+    private static boolean acceptTrailMember(MagicTrailPlugin plugin, MagicTrailTracker tracker, CombatEntityAPI linkedEntity, Vector2f position, float weight) {
+        float pressure = 0f;
+        if (maxSegments > 0) {
+            pressure = (float) plugin.liveSegments / maxSegments;
+        }
+        if (maxSpawnsPerFrame > 0) {
+            pressure = Math.max(pressure, (float) plugin.spawnsThisFrame / maxSpawnsPerFrame);
+        }
+
+        if (pressure > SHEDDING_START) {
+            float priority = getSpawnPriority(plugin, linkedEntity, position, weight);
+            if (pressure >= 1f && (priority < PLAYER_PRIORITY_MULT || pressure >= 1f + MAX_OVERDRAW)) {
+                plugin.refusedPieces++;
+                return false;
             }
-            Map<CombatEntityAPI, List<Float>> entityCuttingIDMap = layerCutMap.get(texID);
-            if (entityCuttingIDMap == null) {
-                entityCuttingIDMap = new HashMap<>();
-                layerCutMap.put(texID, entityCuttingIDMap);
+
+            float thinning = Math.min(1f, (pressure - SHEDDING_START) / (1f - SHEDDING_START)) * MAX_THINNING;
+            int keepEvery = 1 + (int) (thinning / Math.max(priority, 0.01f));
+            if (tracker != null && tracker.thinnedSpawns + 1 < keepEvery) {
+                tracker.thinnedSpawns++;
+                plugin.thinnedPieces++;
+                return false;
             }
-            List<Float> cuttingIDs = entityCuttingIDMap.get(linkedEntity);
-            if (cuttingIDs == null) {
-                cuttingIDs = new ArrayList<>();
-                entityCuttingIDMap.put(linkedEntity, cuttingIDs);
+        }
+
+        if (tracker != null) {
+            tracker.thinnedSpawns = 0;
+        }
+        plugin.liveSegments++;
+        plugin.spawnsThisFrame++;
+        return true;
+    }
+
+    //How important a trail piece is to keep: its own weight, doubled for the player's trails, and reduced the farther off-screen it is
+    private static float getSpawnPriority(MagicTrailPlugin plugin, CombatEntityAPI linkedEntity, Vector2f position, float weight) {
+        float priority = weight;
+
+        ShipAPI player = plugin.engine.getPlayerShip();
+        if (player != null && linkedEntity != null) {
+            if (linkedEntity == player
+                    || (linkedEntity instanceof DamagingProjectileAPI && ((DamagingProjectileAPI) linkedEntity).getSource() == player)) {
+                priority *= PLAYER_PRIORITY_MULT;
             }
-            if (!cuttingIDs.contains(ID)) {
-                cuttingIDs.add(ID);
+        }
+
+        ViewportAPI viewport = plugin.engine.getViewport();
+        if (viewport != null) {
+            float reach = 0.5f * Math.max(viewport.getVisibleWidth(), viewport.getVisibleHeight());
+            float distance = MathUtils.getDistance(position, viewport.getCenter());
+            if (distance > reach) {
+                priority *= reach / distance;
             }
         }
-        return trailTracker;
+        return priority;
+    }
+
+    //Reads the "PRIORITY" advanced option, defaulting to 1
+    private static float getPriorityOption(@Nullable Map<String, Object> advancedOptions) {
+        if (advancedOptions != null && advancedOptions.get("PRIORITY") instanceof Float) {
+            return (Float) advancedOptions.get("PRIORITY");
+        }
+        return 1f;
+    }
+
+    //Maps a legacy float ID onto the long ID space. Uses the raw bits, so two float IDs are the same trail exactly when
+    //they were equal as boxed Floats
+    private static long floatToTrailID(float ID) {
+        return FLOAT_ID_FLAG | (Float.floatToIntBits(ID) & 0xFFFFFFFFL);
+    }
+
+    //Offset tweaker to fix single frame delay for lateral movement: projectiles spawn trail pieces a frame late compared
+    //to their source ship, so the ship's movement over that frame is subtracted. Returns a shared scratch vector
+    private static Vector2f getCorrectedPosition(CombatEntityAPI linkedEntity, Vector2f position, float frameOffsetMult) {
+        correctedPosition.set(position);
+        if (linkedEntity instanceof DamagingProjectileAPI) {
+            DamagingProjectileAPI proj = (DamagingProjectileAPI) linkedEntity;
+
+            Vector2f shipVel = proj.getSource().getVelocity();
+            float offsetMult = Global.getCombatEngine().getElapsedInLastFrame() * frameOffsetMult;
+            correctedPosition.x -= shipVel.x * offsetMult;
+            correctedPosition.y -= shipVel.y * offsetMult;
+        }
+        return correctedPosition;
     }
 
     //SIMPLE DECLARATION
@@ -117,7 +314,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *
      * @param linkedEntity The entity this trail is attached to, used for cutting trails.
      *                     Can be Null, but that should really only be done in weird, edge-case scenarios
-     * @param ID           The ID for this specific trail. Preferably get this from getUniqueID,
+     * @param ID           The ID for this specific trail. Preferably get this from getUniqueTrailID,
      *                     but it's not required: just expect very weird results if you don't
      * @param sprite       Which sprite to draw for this trail: do *not* change this halfway through a trail,
      *                     as that will split it into two trails
@@ -145,7 +342,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                     the middle of a trail
      */
     public static void addTrailMemberSimple(
-            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            CombatEntityAPI linkedEntity, long ID, SpriteAPI sprite,
             Vector2f position, float speed, float angle,
             float startSize, float endSize,
             Color color, float opacity,
@@ -157,6 +354,8 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
 
         CombatEngineLayers layer = CombatEngineLayers.CONTRAILS_LAYER;
 
+        //Drops this piece if the trail segment budget is running out, before any tracker is made for it
+        if (!acceptTrailMember(plugin, findTrailTracker(plugin, ID, layer, sprite, false), linkedEntity, position, 1f)) return;
         //Finds the correct maps, and ensures they are actually instantiated [and adds our ID to the cutting map]
         MagicTrailTracker tracker = addOrGetTrailTracker(plugin, ID, linkedEntity, layer, sprite, false);
 
@@ -164,16 +363,89 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
         int srcBlend = GL_SRC_ALPHA;
         int destBlend = additive ? GL_ONE : GL_ONE_MINUS_SRC_ALPHA;
 
-        //Creates the custom object we want
-        MagicTrailObject objectToAdd = new MagicTrailObject(inDuration, mainDuration, outDuration, startSize, endSize, 0f, 0f,
+        //And finally add the new segment to the trail
+        int rgb = color.getRGB();
+        tracker.addNewTrailSegment(inDuration, mainDuration, outDuration, startSize, endSize, 0f, 0f,
                 opacity, srcBlend, destBlend,
-                speed, speed, color, color,
-                angle, position,
-                -1f, 0, new Vector2f(),
+                speed, speed, rgb, rgb,
+                angle, position.x, position.y,
+                -1f, 0, 0f, 0f,
                 0f, 0);
+    }
 
-        //And finally add it to the correct location in our maps
-        tracker.addNewTrailObject(objectToAdd);
+    /**
+     * Legacy float-ID version of the method above, for code still using {@link #getUniqueID()}. New code should
+     * use {@link #getUniqueTrailID()} and the long-ID version instead.
+     */
+    public static void addTrailMemberSimple(
+            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            Vector2f position, float speed, float angle,
+            float startSize, float endSize,
+            Color color, float opacity,
+            float inDuration, float mainDuration, float outDuration,
+            boolean additive) {
+        addTrailMemberSimple(linkedEntity, floatToTrailID(ID), sprite, position, speed, angle, startSize, endSize, color, opacity, inDuration, mainDuration,
+                outDuration, additive);
+    }
+
+
+    // STYLE DECLARATION
+
+    /**
+     * Spawns a trail piece, which links up with other pieces with the same ID to form a smooth trail. Everything but
+     * the position and angle comes from a prebuilt {@link MagicTrailStyle}, which makes this the cheapest way to spawn
+     * trails every frame: no options are parsed and nothing is allocated per piece.
+     *
+     * @param linkedEntity The entity this trail is attached to, used for cutting trails.
+     *                     Can be Null, but that should really only be done in weird, edge-case scenarios
+     * @param ID           The ID for this specific trail. Preferably get this from getUniqueTrailID,
+     *                     but it's not required: just expect very weird results if you don't
+     * @param style        The style of this trail piece, made with a {@link MagicTrailStyleBuilder}. The sprite, layer
+     *                     and blend mode of a style should not change halfway through a trail
+     * @param position     Starting position for this piece of trail
+     * @param angle        Which angle this piece of trail has in degrees; determines which direction it moves,
+     *                     and which direction its size is measured over
+     */
+    public static void addTrailMemberFromStyle(
+            CombatEntityAPI linkedEntity, long ID, MagicTrailStyle style,
+            Vector2f position, float angle) {
+        //First, find the plugin, and if it doesn't exist do nothing
+        MagicTrailPlugin plugin = getPlugin();
+        if (plugin == null) return;
+
+        //Drops this piece if the trail segment budget is running out, before any tracker is made for it
+        if (!acceptTrailMember(plugin, findTrailTracker(plugin, ID, style.getLayer(), style.getSprite(), false), linkedEntity, position, style.getPriority())) return;
+        //Finds the correct maps, and ensures they are actually instantiated [and adds our ID to the cutting map]
+        MagicTrailTracker tracker = addOrGetTrailTracker(plugin, ID, linkedEntity, style.getLayer(), style.getSprite(), false);
+
+        //Adjusts scroll speed and propagation to our most recent trail's values
+        tracker.scrollSpeed = style.getTextureScrollSpeed();
+        if (style.usesForwardPropagation()) {
+            tracker.usesForwardPropagation = true;
+        }
+        if (style.usesSplineInterpolation()) {
+            tracker.usesSplineInterpolation = true;
+        }
+
+        float mult = style.getFrameOffsetMult() != 0 ? style.getFrameOffsetMult() : 1f;
+        Vector2f spawnPosition = getCorrectedPosition(linkedEntity, position, mult);
+
+        //check for specific texture offset or a random one
+        float textOffset = style.getTextureOffset();
+        if (textOffset == -1) {
+            //the texture tracker keep a fixed random texture offset
+            if (tracker.textureOffset == -1) {
+                tracker.textureOffset = MathUtils.getRandomNumberInRange(0, style.getTextureLoopLength());
+            }
+            textOffset = tracker.textureOffset;
+        }
+
+        tracker.addNewTrailSegment(style.getInDuration(), style.getMainDuration(), style.getOutDuration(),
+                style.getStartSize(), style.getEndSize(), style.getStartAngularVelocity(), style.getEndAngularVelocity(),
+                style.getOpacity(), style.getBlendModeSRC(), style.getBlendModeDEST(), style.getStartSpeed(), style.getEndSpeed(),
+                style.getStartColorRGB(), style.getEndColorRGB(), angle, spawnPosition.x, spawnPosition.y,
+                style.getTextureLoopLength(), textOffset, style.getOffsetVelocityX(), style.getOffsetVelocityY(),
+                style.getSizePulseWidth(), style.getCurve());
     }
 
 
@@ -187,7 +459,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *
      * @param linkedEntity         The entity this trail is attached to, used for cutting trails.
      *                             Can be Null, but that should really only be done in weird, edge-case scenarios
-     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueID,
+     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueTrailID,
      *                             but it's not required: just expect very weird results if you don't
      * @param sprite               Which sprite to draw for this trail: do *not* change this halfway through a trail,
      *                             as that will split it into two trails
@@ -244,6 +516,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      * @param layerToRenderOn      Which combat layer to render the trail on. All available layers are specified in
      *                             CombatEngineLayers. Old behaviour was CombatEngineLayers.BELOW_INDICATORS_LAYER.
      *                             CANNOT change mid-trail, under any circumstance
@@ -251,7 +528,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             adjust trail offset at different speeds. Default: 1f
      */
     public static void addTrailMemberAdvanced(
-            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            CombatEntityAPI linkedEntity, long ID, SpriteAPI sprite,
             Vector2f position, float startSpeed, float endSpeed,
             float angle, float startAngularVelocity, float endAngularVelocity,
             float startSize, float endSize,
@@ -271,6 +548,26 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
                 offsetVelocity, advancedOptions, layerToRenderOn, frameOffsetMult);
     }
 
+    /**
+     * Legacy float-ID version of the method above, for code still using {@link #getUniqueID()}. New code should
+     * use {@link #getUniqueTrailID()} and the long-ID version instead.
+     */
+    public static void addTrailMemberAdvanced(
+            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            Vector2f position, float startSpeed, float endSpeed,
+            float angle, float startAngularVelocity, float endAngularVelocity,
+            float startSize, float endSize,
+            Color startColor, Color endColor, float opacity,
+            float inDuration, float mainDuration, float outDuration,
+            boolean additive,
+            float textureLoopLength, float textureScrollSpeed, float textureOffset,
+            @Nullable Vector2f offsetVelocity, @Nullable Map<String, Object> advancedOptions,
+            @Nullable CombatEngineLayers layerToRenderOn, float frameOffsetMult) {
+        addTrailMemberAdvanced(linkedEntity, floatToTrailID(ID), sprite, position, startSpeed, endSpeed, angle, startAngularVelocity, endAngularVelocity, startSize,
+                endSize, startColor, endColor, opacity, inDuration, mainDuration, outDuration, additive, textureLoopLength, textureScrollSpeed, textureOffset,
+                offsetVelocity, advancedOptions, layerToRenderOn, frameOffsetMult);
+    }
+
     /**
      * Spawns a trail piece, which links up with other pieces with the same ID
      * to form a smooth trail. This function has all available functions; if you
@@ -279,7 +576,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *
      * @param linkedEntity         The entity this trail is attached to, used for cutting trails.
      *                             Can be Null, but that should really only be done in weird, edge-case scenarios
-     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueID,
+     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueTrailID,
      *                             but it's not required: just expect very weird results if you don't
      * @param sprite               Which sprite to draw for this trail: do *not* change this halfway through a trail,
      *                             as that will split it into two trails
@@ -338,6 +635,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      * @param layerToRenderOn      Which combat layer to render the trail on. All available layers are specified in
      *                             CombatEngineLayers. Old behaviour was CombatEngineLayers.BELOW_INDICATORS_LAYER.
      *                             CANNOT change mid-trail, under any circumstance
@@ -345,7 +647,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             adjust trail offset at different speeds. Default: 1f
      */
     public static void addTrailMemberAdvanced(
-            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            CombatEntityAPI linkedEntity, long ID, SpriteAPI sprite,
             Vector2f position, float startSpeed, float endSpeed,
             float angle, float startAngularVelocity, float endAngularVelocity,
             float startSize, float endSize,
@@ -360,12 +662,6 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
         MagicTrailPlugin plugin = getPlugin();
         if (plugin == null) return;
 
-
-        Vector2f offsetVel = new Vector2f();
-        if (offsetVelocity != null) {
-            offsetVel = offsetVelocity;
-        }
-
         CombatEngineLayers layer = CombatEngineLayers.CONTRAILS_LAYER;
         if (layerToRenderOn != null) {
             layer = layerToRenderOn;
@@ -376,6 +672,8 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             mult = frameOffsetMult;
         }
 
+        //Drops this piece if the trail segment budget is running out, before any tracker is made for it
+        if (!acceptTrailMember(plugin, findTrailTracker(plugin, ID, layer, sprite, false), linkedEntity, position, getPriorityOption(advancedOptions))) return;
         //Finds the correct maps, and ensures they are actually instantiated [and adds our ID to the cutting map]
         MagicTrailTracker tracker = addOrGetTrailTracker(plugin, ID, linkedEntity, layer, sprite, false);
 
@@ -395,18 +693,14 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             if (advancedOptions.get("FORWARD_PROPAGATION") instanceof Boolean && (boolean) advancedOptions.get("FORWARD_PROPAGATION")) {
                 tracker.usesForwardPropagation = true;
             }
+            if (advancedOptions.get("SPLINE_INTERPOLATION") instanceof Boolean && (boolean) advancedOptions.get("SPLINE_INTERPOLATION")) {
+                tracker.usesSplineInterpolation = true;
+            }
         }
         //--End of special options--
 
         //Offset tweaker to fix single frame delay for lateral movement
-        Vector2f correctedPosition = new Vector2f(position);
-        if (linkedEntity instanceof DamagingProjectileAPI) {
-            DamagingProjectileAPI proj = (DamagingProjectileAPI) linkedEntity;
-
-            Vector2f shipVelPerAdvance = (Vector2f) new Vector2f(proj.getSource().getVelocity()).scale(Global.getCombatEngine().getElapsedInLastFrame());
-            shipVelPerAdvance.scale(mult);
-            Vector2f.sub(position, shipVelPerAdvance, correctedPosition);
-        }
+        Vector2f correctedPosition = getCorrectedPosition(linkedEntity, position, mult);
 
         //check for specific texture offset or a random one
         float textOffset = 0;
@@ -420,13 +714,32 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             textOffset = textureOffset;
         }
 
-        //Creates the custom object we want
-        MagicTrailObject objectToAdd = new MagicTrailObject(inDuration, mainDuration, outDuration, startSize, endSize, startAngularVelocity, endAngularVelocity,
-                opacity, blendModeSRC, blendModeDEST, startSpeed, endSpeed, startColor, endColor, angle, correctedPosition, textureLoopLength, textOffset, offsetVel,
+        //And finally add the new segment to the trail
+        tracker.addNewTrailSegment(inDuration, mainDuration, outDuration, startSize, endSize, startAngularVelocity, endAngularVelocity,
+                opacity, blendModeSRC, blendModeDEST, startSpeed, endSpeed, startColor.getRGB(), endColor.getRGB(), angle,
+                correctedPosition.x, correctedPosition.y, textureLoopLength, textOffset,
+                offsetVelocity == null ? 0f : offsetVelocity.x, offsetVelocity == null ? 0f : offsetVelocity.y,
                 sizePulseWidth, sizePulseCount);
+    }
 
-        //And finally add it to the correct location in our maps
-        tracker.addNewTrailObject(objectToAdd);
+    /**
+     * Legacy float-ID version of the method above, for code still using {@link #getUniqueID()}. New code should
+     * use {@link #getUniqueTrailID()} and the long-ID version instead.
+     */
+    public static void addTrailMemberAdvanced(
+            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            Vector2f position, float startSpeed, float endSpeed,
+            float angle, float startAngularVelocity, float endAngularVelocity,
+            float startSize, float endSize,
+            Color startColor, Color endColor, float opacity,
+            float inDuration, float mainDuration, float outDuration,
+            int blendModeSRC, int blendModeDEST,
+            float textureLoopLength, float textureScrollSpeed, float textureOffset,
+            @Nullable Vector2f offsetVelocity, @Nullable Map<String, Object> advancedOptions,
+            @Nullable CombatEngineLayers layerToRenderOn, float frameOffsetMult) {
+        addTrailMemberAdvanced(linkedEntity, floatToTrailID(ID), sprite, position, startSpeed, endSpeed, angle, startAngularVelocity, endAngularVelocity, startSize,
+                endSize, startColor, endColor, opacity, inDuration, mainDuration, outDuration, blendModeSRC, blendModeDEST, textureLoopLength, textureScrollSpeed,
+                textureOffset, offsetVelocity, advancedOptions, layerToRenderOn, frameOffsetMult);
     }
 
 
@@ -496,6 +809,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      * @param layerToRenderOn      Which combat layer to render the trail on. All available layers are specified in
      *                             CombatEngineLayers. Old behaviour was CombatEngineLayers.BELOW_INDICATORS_LAYER.
      *                             CANNOT change mid-trail, under any circumstance
@@ -589,6 +907,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      * @param layerToRenderOn      Which combat layer to render the trail on. All available layers are specified in
      *                             CombatEngineLayers. Old behaviour was CombatEngineLayers.BELOW_INDICATORS_LAYER.
      *                             CANNOT change mid-trail, under any circumstance
@@ -628,8 +951,10 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             mult = frameOffsetMult;
         }
 
+        //Drops this piece if the trail segment budget is running out, before any tracker is made for it
+        if (!acceptTrailMember(plugin, findTrailTracker(plugin, floatToTrailID(ID), layer, sprite, false), linkedEntity, position, getPriorityOption(advancedOptions))) return;
         //Finds the correct maps, and ensures they are actually instantiated [and adds our ID to the cutting map]
-        MagicTrailTracker tracker = addOrGetTrailTracker(plugin, ID, linkedEntity, layer, sprite, false);
+        MagicTrailTracker tracker = addOrGetTrailTracker(plugin, floatToTrailID(ID), linkedEntity, layer, sprite, false);
 
         //Adjusts scroll speed to our most recent trail's value
         tracker.scrollSpeed = textureScrollSpeed;
@@ -647,6 +972,9 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             if (advancedOptions.get("FORWARD_PROPAGATION") instanceof Boolean && (boolean) advancedOptions.get("FORWARD_PROPAGATION")) {
                 tracker.usesForwardPropagation = true;
             }
+            if (advancedOptions.get("SPLINE_INTERPOLATION") instanceof Boolean && (boolean) advancedOptions.get("SPLINE_INTERPOLATION")) {
+                tracker.usesSplineInterpolation = true;
+            }
         }
         //--End of special options--
 
@@ -735,6 +1063,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      */
     @Deprecated
     public static void addTrailMemberAdvanced(
@@ -818,6 +1151,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      * @param layerToRenderOn      Which combat layer to render the trail on. All available layers are specified in
      *                             CombatEngineLayers. Old behaviour was CombatEngineLayers.BELOW_INDICATORS_LAYER.
      *                             CANNOT change mid-trail, under any circumstance
@@ -839,8 +1177,10 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
         if (plugin == null) return;
 
 
+        //Drops this piece if the trail segment budget is running out, before any tracker is made for it
+        if (!acceptTrailMember(plugin, findTrailTracker(plugin, floatToTrailID(ID), layerToRenderOn, sprite, false), linkedEntity, position, getPriorityOption(advancedOptions))) return;
         //Finds the correct maps, and ensures they are actually instantiated [and adds our ID to the cutting map]
-        MagicTrailTracker tracker = addOrGetTrailTracker(plugin, ID, linkedEntity, layerToRenderOn, sprite, false);
+        MagicTrailTracker tracker = addOrGetTrailTracker(plugin, floatToTrailID(ID), linkedEntity, layerToRenderOn, sprite, false);
 
         //Adjusts scroll speed to our most recent trail's value
         tracker.scrollSpeed = textureScrollSpeed;
@@ -858,6 +1198,9 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             if (advancedOptions.get("FORWARD_PROPAGATION") instanceof Boolean && (boolean) advancedOptions.get("FORWARD_PROPAGATION")) {
                 tracker.usesForwardPropagation = true;
             }
+            if (advancedOptions.get("SPLINE_INTERPOLATION") instanceof Boolean && (boolean) advancedOptions.get("SPLINE_INTERPOLATION")) {
+                tracker.usesSplineInterpolation = true;
+            }
         }
         //--End of special options--
 
@@ -888,7 +1231,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *
      * @param linkedEntity         The entity this trail is attached to, used for cutting trails.
      *                             Can be Null, but that should really only be done in weird, edge-case scenarios
-     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueID,
+     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueTrailID,
      *                             but it's not required: just expect very weird results if you don't
      * @param sprite               Which sprite to draw for this trail: if changed mid-trail, the entire trail uses the
      *                             new sprite.
@@ -945,6 +1288,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      * @param layerToRenderOn      Which combat layer to render the trail on. All available layers are specified in
      *                             CombatEngineLayers. Old behaviour was CombatEngineLayers.BELOW_INDICATORS_LAYER.
      *                             CANNOT change mid-trail, under any circumstance
@@ -952,7 +1300,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             adjust trail offset at different speeds. Default: 1f
      */
     public static void addTrailMemberAnimated(
-            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            CombatEntityAPI linkedEntity, long ID, SpriteAPI sprite,
             Vector2f position, float startSpeed, float endSpeed,
             float angle, float startAngularVelocity, float endAngularVelocity,
             float startSize, float endSize,
@@ -972,6 +1320,26 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
                 advancedOptions, layerToRenderOn, frameOffsetMult);
     }
 
+    /**
+     * Legacy float-ID version of the method above, for code still using {@link #getUniqueID()}. New code should
+     * use {@link #getUniqueTrailID()} and the long-ID version instead.
+     */
+    public static void addTrailMemberAnimated(
+            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            Vector2f position, float startSpeed, float endSpeed,
+            float angle, float startAngularVelocity, float endAngularVelocity,
+            float startSize, float endSize,
+            Color startColor, Color endColor, float opacity,
+            float inDuration, float mainDuration, float outDuration,
+            boolean additive,
+            float textureLoopLength, float textureScrollSpeed, float textureOffset,
+            Vector2f offsetVelocity, @Nullable Map<String, Object> advancedOptions,
+            @Nullable CombatEngineLayers layerToRenderOn, float frameOffsetMult) {
+        addTrailMemberAnimated(linkedEntity, floatToTrailID(ID), sprite, position, startSpeed, endSpeed, angle, startAngularVelocity, endAngularVelocity, startSize,
+                endSize, startColor, endColor, opacity, inDuration, mainDuration, outDuration, additive, textureLoopLength, textureScrollSpeed, textureOffset,
+                offsetVelocity, advancedOptions, layerToRenderOn, frameOffsetMult);
+    }
+
 
     /**
      * Spawns a trail piece, which links up with other pieces with the same ID
@@ -982,7 +1350,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *
      * @param linkedEntity         The entity this trail is attached to, used for cutting trails.
      *                             Can be Null, but that should really only be done in weird, edge-case scenarios
-     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueID,
+     * @param ID                   The ID for this specific trail. Preferably get this from getUniqueTrailID,
      *                             but it's not required: just expect very weird results if you don't
      * @param sprite               Which sprite to draw for this trail: if changed mid-trail, the entire trail uses the
      *                             new sprite.
@@ -1041,6 +1409,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      * @param layerToRenderOn      Which combat layer to render the trail on. All available layers are specified in
      *                             CombatEngineLayers. Old behaviour was CombatEngineLayers.BELOW_INDICATORS_LAYER.
      *                             CANNOT change mid-trail, under any circumstance
@@ -1048,7 +1421,7 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             adjust trail offset at different speeds
      */
     public static void addTrailMemberAnimated(
-            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            CombatEntityAPI linkedEntity, long ID, SpriteAPI sprite,
             Vector2f position, float startSpeed, float endSpeed,
             float angle, float startAngularVelocity, float endAngularVelocity,
             float startSize, float endSize,
@@ -1062,6 +1435,8 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
         MagicTrailPlugin plugin = getPlugin();
         if (plugin == null) return;
 
+        //Drops this piece if the trail segment budget is running out, before any tracker is made for it
+        if (!acceptTrailMember(plugin, findTrailTracker(plugin, ID, layerToRenderOn, sprite, true), linkedEntity, position, getPriorityOption(advancedOptions))) return;
         //Finds the correct maps, and ensures they are actually instantiated
         MagicTrailTracker tracker = addOrGetTrailTracker(plugin, ID, linkedEntity, layerToRenderOn, sprite, true);
 
@@ -1078,18 +1453,14 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             if (advancedOptions.get("FORWARD_PROPAGATION") instanceof Boolean && (boolean) advancedOptions.get("FORWARD_PROPAGATION")) {
                 tracker.usesForwardPropagation = true;
             }
+            if (advancedOptions.get("SPLINE_INTERPOLATION") instanceof Boolean && (boolean) advancedOptions.get("SPLINE_INTERPOLATION")) {
+                tracker.usesSplineInterpolation = true;
+            }
         }
         //--End of special options--
 
         //Offset tweaker to fix single frame delay for lateral movement
-        Vector2f correctedPosition = new Vector2f(position);
-        if (linkedEntity instanceof DamagingProjectileAPI) {
-            DamagingProjectileAPI proj = (DamagingProjectileAPI) linkedEntity;
-
-            Vector2f shipVelPerAdvance = (Vector2f) new Vector2f(proj.getSource().getVelocity()).scale(Global.getCombatEngine().getElapsedInLastFrame());
-            shipVelPerAdvance.scale(frameOffsetMult);
-            Vector2f.sub(position, shipVelPerAdvance, correctedPosition);
-        }
+        Vector2f correctedPosition = getCorrectedPosition(linkedEntity, position, frameOffsetMult);
 
         //Adjusts scroll speed to our most recent trail's value
         tracker.scrollSpeed = textureScrollSpeed;
@@ -1099,11 +1470,6 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
         tracker.isAnimated = true;
         tracker.currentAnimRenderTexture = texID;
 
-        Vector2f offsetVel = new Vector2f();
-        if (offsetVelocity != null) {
-            offsetVel = offsetVelocity;
-        }
-
         //check for specific texture offset or a random one
         float textOffset = 0;
         if (textureOffset == -1) {
@@ -1116,14 +1482,32 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             textOffset = textureOffset;
         }
 
-
-        //Creates the custom object we want
-        MagicTrailObject objectToAdd = new MagicTrailObject(inDuration, mainDuration, outDuration, startSize, endSize, startAngularVelocity, endAngularVelocity,
-                opacity, blendModeSRC, blendModeDEST, startSpeed, endSpeed, startColor, endColor, angle, correctedPosition, textureLoopLength, textOffset, offsetVel,
+        //And finally add the new segment to the trail
+        tracker.addNewTrailSegment(inDuration, mainDuration, outDuration, startSize, endSize, startAngularVelocity, endAngularVelocity,
+                opacity, blendModeSRC, blendModeDEST, startSpeed, endSpeed, startColor.getRGB(), endColor.getRGB(), angle,
+                correctedPosition.x, correctedPosition.y, textureLoopLength, textOffset,
+                offsetVelocity == null ? 0f : offsetVelocity.x, offsetVelocity == null ? 0f : offsetVelocity.y,
                 sizePulseWidth, sizePulseCount);
+    }
 
-        //And finally add it to the correct location in our maps
-        tracker.addNewTrailObject(objectToAdd);
+    /**
+     * Legacy float-ID version of the method above, for code still using {@link #getUniqueID()}. New code should
+     * use {@link #getUniqueTrailID()} and the long-ID version instead.
+     */
+    public static void addTrailMemberAnimated(
+            CombatEntityAPI linkedEntity, float ID, SpriteAPI sprite,
+            Vector2f position, float startSpeed, float endSpeed,
+            float angle, float startAngularVelocity, float endAngularVelocity,
+            float startSize, float endSize,
+            Color startColor, Color endColor, float opacity,
+            float inDuration, float mainDuration, float outDuration,
+            int blendModeSRC, int blendModeDEST,
+            float textureLoopLength, float textureScrollSpeed, float textureOffset,
+            @Nullable Vector2f offsetVelocity, @Nullable Map<String, Object> advancedOptions,
+            CombatEngineLayers layerToRenderOn, float frameOffsetMult) {
+        addTrailMemberAnimated(linkedEntity, floatToTrailID(ID), sprite, position, startSpeed, endSpeed, angle, startAngularVelocity, endAngularVelocity, startSize,
+                endSize, startColor, endColor, opacity, inDuration, mainDuration, outDuration, blendModeSRC, blendModeDEST, textureLoopLength, textureScrollSpeed,
+                textureOffset, offsetVelocity, advancedOptions, layerToRenderOn, frameOffsetMult);
     }
 
 
@@ -1192,6 +1576,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      */
     @Deprecated
     public static void addTrailMemberAnimated(
@@ -1283,6 +1672,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      * @param layerToRenderOn      Which combat layer to render the trail on. All available layers are specified in
      *                             CombatEngineLayers. Old behaviour was CombatEngineLayers.BELOW_INDICATORS_LAYER.
      *                             CANNOT change mid-trail, under any circumstance
@@ -1306,8 +1700,10 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
         if (plugin == null) return;
 
 
+        //Drops this piece if the trail segment budget is running out, before any tracker is made for it
+        if (!acceptTrailMember(plugin, findTrailTracker(plugin, floatToTrailID(ID), layerToRenderOn, sprite, true), linkedEntity, position, getPriorityOption(advancedOptions))) return;
         //Finds the correct maps, and ensures they are actually instantiated
-        MagicTrailTracker tracker = addOrGetTrailTracker(plugin, ID, linkedEntity, layerToRenderOn, sprite, true);
+        MagicTrailTracker tracker = addOrGetTrailTracker(plugin, floatToTrailID(ID), linkedEntity, layerToRenderOn, sprite, true);
 
         //--Reads in our special options, if we have any--
         float sizePulseWidth = 0f;
@@ -1322,6 +1718,9 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             if (advancedOptions.get("FORWARD_PROPAGATION") instanceof Boolean && (boolean) advancedOptions.get("FORWARD_PROPAGATION")) {
                 tracker.usesForwardPropagation = true;
             }
+            if (advancedOptions.get("SPLINE_INTERPOLATION") instanceof Boolean && (boolean) advancedOptions.get("SPLINE_INTERPOLATION")) {
+                tracker.usesSplineInterpolation = true;
+            }
         }
         //--End of special options--
 
@@ -1419,6 +1818,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      */
     @Deprecated
     public static void addTrailMemberAnimated(
@@ -1503,6 +1907,11 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      *                             "FORWARD_PROPAGATION" :  Boolean - If the trail uses the legacy render method of
      *                             "forward propagation". Used to be the default. CANNOT be
      *                             changed mid-trail
+     *                             "PRIORITY" :  Float - How important the trail is to keep when the trail segment budget runs
+     *                             out; trails with a lower priority are thinned out first. Default: 1
+     *                             "SPLINE_INTERPOLATION" :  Boolean - If the trail is drawn as a smooth curve through its pieces
+     *                             rather than straight lines between them, so it can spawn pieces less often and still look
+     *                             smooth when turning. CANNOT be changed mid-trail
      * @param layerToRenderOn      Which combat layer to render the trail on. All available layers are specified in
      *                             CombatEngineLayers. Old behaviour was CombatEngineLayers.BELOW_INDICATORS_LAYER.
      *                             CANNOT change mid-trail, under any circumstance
@@ -1525,7 +1934,9 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
 
         //Finds the correct maps, and ensures they are actually instantiated
 
-        MagicTrailTracker tracker = addOrGetTrailTracker(plugin, ID, linkedEntity, layerToRenderOn, sprite, true);
+        //Drops this piece if the trail segment budget is running out, before any tracker is made for it
+        if (!acceptTrailMember(plugin, findTrailTracker(plugin, floatToTrailID(ID), layerToRenderOn, sprite, true), linkedEntity, position, getPriorityOption(advancedOptions))) return;
+        MagicTrailTracker tracker = addOrGetTrailTracker(plugin, floatToTrailID(ID), linkedEntity, layerToRenderOn, sprite, true);
 
         //--Reads in our special options, if we have any--
         float sizePulseWidth = 0f;
@@ -1540,6 +1951,9 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
             if (advancedOptions.get("FORWARD_PROPAGATION") instanceof Boolean && (boolean) advancedOptions.get("FORWARD_PROPAGATION")) {
                 tracker.usesForwardPropagation = true;
             }
+            if (advancedOptions.get("SPLINE_INTERPOLATION") instanceof Boolean && (boolean) advancedOptions.get("SPLINE_INTERPOLATION")) {
+                tracker.usesSplineInterpolation = true;
+            }
         }
         //--End of special options--
 
@@ -1567,6 +1981,17 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      * A small function to get a unique ID for the trail member: *must* be saved in the function that generates the
      * trail, since if it changes it counts as a new trail altogether
      *
+     * @return A new trail ID, always bigger than 0
+     */
+    public static long getUniqueTrailID() {
+        usedTrailIDs++;
+        return usedTrailIDs;
+    }
+
+    /**
+     * Legacy version of {@link #getUniqueTrailID()}, for use with the float-ID overloads. Float IDs run out of
+     * precision after a few million trails (at which point two "unique" IDs can end up equal), so prefer the long IDs.
+     *
      * @return
      */
     public static float getUniqueID() {
@@ -1577,11 +2002,9 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
     }
 
     //Similar to above, but is *explicitly* intended for the cutTrailsOnEntity function, and is thus private
-    private static float getUniqueCutterID() {
-        //Gets a value 0.1f lower than the previous maximum ID, and marks that as our previous maximum ID
-        float toReturn = usedCutterIDs - 0.1f;
-        usedCutterIDs = toReturn;
-        return toReturn;
+    private static long getUniqueCutterID() {
+        usedCutterIDs--;
+        return usedCutterIDs;
     }
 
 
@@ -1590,12 +2013,18 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
      * be used before teleporting any entity, since it may have trails attached to it which will otherwise stretch
      * in unintended ways.
      * <p>
-     * This can also be called (with a potential 1-frame delay) by adding an entity to any CustomData in
-     * the CombatEngineAPI with a key containing the phrase "MagicTrailPlugin_LIB_FREE_TRAIL_CUT" (note: *containing*.
-     * there must be more to the key than this, as it should be unique [optimally, use your modID and the ID of the
-     * ship trying to cut the trails]). This alternate  calling method does not require MagicLib, and may thus
-     * be optimal for smaller mods or mods that don't want any  other MagicLib features but still needs
-     * trail-cutting support
+     * This can also be done (with a potential 1-frame delay) without depending on MagicLib, by adding the entity to
+     * the collection stored in the CombatEngineAPI's CustomData under {@link #LIB_FREE_CUT_KEY}
+     * ("MagicTrailPlugin_LIB_FREE_TRAIL_CUT"):
+     * <pre>
+     * Object queue = engine.getCustomData().get("MagicTrailPlugin_LIB_FREE_TRAIL_CUT");
+     * if (queue instanceof Collection) {
+     *     ((Collection&lt;Object&gt;) queue).add(ship);
+     * }
+     * </pre>
+     * The older method of adding the entity under any CustomData key <i>containing</i> that phrase is deprecated. It
+     * needs the whole CustomData to be searched every frame, so it is only picked up while
+     * {@link #setLegacyCutScan(boolean) legacy cut scanning} is on, and should not be used by new code
      *
      * @param entity The entity you want to cut all trails on
      */
@@ -1604,31 +2033,20 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
         MagicTrailPlugin plugin = getPlugin();
         if (plugin == null) return;
 
-        //Iterate over all textures in the main map...
-        for (Entry<CombatEngineLayers, Map<Integer, Map<CombatEntityAPI, List<Float>>>>
-                cuttingLayerEntry : plugin.cuttingMap.entrySet()) {
-            CombatEngineLayers layer = cuttingLayerEntry.getKey();
-            Map<Integer, Map<CombatEntityAPI, List<Float>>> cuttingLayerMap = cuttingLayerEntry.getValue();
-            for (Entry<Integer, Map<CombatEntityAPI, List<Float>>> cuttingEntityEntry : cuttingLayerMap.entrySet()) {
-                //If our entity has any registered trails, cut them all off by giving them new, unique IDs
-                int texID = cuttingEntityEntry.getKey();
-                Map<CombatEntityAPI, List<Float>> cuttingEntityMap = cuttingEntityEntry.getValue();
-
-                if (cuttingEntityMap.get(entity) != null) {
-                    //Get the trackers from main trail map
-                    Map<Float, MagicTrailTracker> trailTrackerMap = plugin.mainMap.get(layer).get(texID);
-                    if (trailTrackerMap != null) {
-                        for (Float trailID : cuttingEntityMap.get(entity)) {
-                            MagicTrailTracker trailTracker = trailTrackerMap.get(trailID);
-                            if (trailTracker != null) {
-                                trailTrackerMap.put(getUniqueCutterID(), trailTracker);
-                                trailTrackerMap.remove(trailID);
-                            }
-                        }
-                    }
-                }
+        //If our entity has any registered trails, cut them all off by giving them new, unique IDs
+        EntityTrails trails = plugin.entityTrails.get(entity);
+        if (trails == null) {
+            return;
+        }
+        for (int i = 0; i < trails.count; i++) {
+            MagicTrailIdMap<MagicTrailTracker> trailTrackerMap = trails.maps[i];
+            MagicTrailTracker trailTracker = trailTrackerMap.remove(trails.ids[i]);
+            if (trailTracker != null) {
+                trailTrackerMap.put(getUniqueCutterID(), trailTracker);
             }
         }
+        //The cut trails no longer belong to the entity; keeps the index object around for its next trails
+        trails.clear();
     }
 
 
@@ -1636,20 +2054,255 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
 
     @Override
     public void init(CombatEngineAPI engine) {
-        //Creates the render plugin and adds it to the engine
-        MagicTrailRenderer renderer = new MagicTrailRenderer(this);
-        engine.addLayeredRenderingPlugin(renderer);
-
-        //Stores our plugins in easy-to-reach locations, so we can access it in different places
+        //Stores our plugin in an easy-to-reach location, so we can access it in different places
+        //Render plugins are only created and added to the engine once a layer receives its first trail
         engine.getCustomData().put(PLUGIN_KEY, this);
-        engine.getCustomData().put("MagicTrailRenderer", renderer);
+        this.engine = engine;
 
+        //Packs any trail sprites registered since the last combat into atlases, and gets the trail shader ready
+        MagicTrailAtlas.build();
+        MagicTrailShader.init();
+        shaderTime = 0f;
+
+        usedTrailIDs = 0L;
+        usedCutterIDs = 0L;
         usedIDs = 1f;
-        usedCutterIDs = -1f;
         mainMap.clear();
-        cuttingMap.clear();
+        entityTrails.clear();
+        cutQueue.clear();
+        engine.getCustomData().put(LIB_FREE_CUT_KEY, cutQueue);
+        renderers.clear();
+        trackerPool.clear();
+        frontChunkCount = 0;
+        frameDrawCalls = 0;
+        frameVertices = 0;
+        frameRenderNanos = 0L;
+        lastDrawCalls = 0;
+        lastVertices = 0;
+        lastRenderNanos = 0L;
+        lastTickNanos = 0L;
+        liveSegments = 0;
+        spawnsThisFrame = 0;
+        thinnedPieces = 0L;
+        refusedPieces = 0L;
+    }
 
-        this.engine = engine;
+    /**
+     * @return Whether trails are currently drawn in batches rather than one at a time in immediate mode.
+     */
+    public static boolean isBatchedRendering() {
+        return batchedRendering;
+    }
+
+    /**
+     * Switches between batched rendering, where all trails sharing a layer, texture and blend mode are drawn with a
+     * single vertex-array call, and the legacy immediate-mode rendering. Defaults to "magicTrail_batchedRendering" in
+     * modSettings.json; mostly useful for comparing the two.
+     */
+    public static void setBatchedRendering(boolean batched) {
+        batchedRendering = batched;
+    }
+
+    /**
+     * @return The on-screen length, in pixels, below which consecutive trail segments are merged into one quad.
+     */
+    public static float getLodPixelThreshold() {
+        return lodPixelThreshold;
+    }
+
+    /**
+     * Sets the on-screen length, in pixels, below which consecutive trail segments are merged into one quad. Mostly
+     * matters when zoomed out, where dense trails would otherwise draw many sub-pixel quads. 0 or less draws every
+     * segment. Defaults to "magicTrail_lodPixelThreshold" in modSettings.json.
+     */
+    public static void setLodPixelThreshold(float pixels) {
+        lodPixelThreshold = pixels;
+    }
+
+    /**
+     * @return Whether trails are currently ticked and built on worker threads.
+     */
+    public static boolean isParallelSimulation() {
+        return parallelSimulation;
+    }
+
+    /**
+     * Switches parallel trail simulation on or off. When on, ticking trails and building their quads is split across
+     * a pool of worker threads during the plugin's advance, leaving only the draw calls for the renderers. Only worth
+     * it with a lot of trails and spare cores. Pieces spawned after the trail plugin's advance only show up the frame
+     * after, so trails may lag behind their source by an extra frame. Defaults to "magicTrail_parallelSimulation" in
+     * modSettings.json.
+     */
+    public static void setParallelSimulation(boolean parallel) {
+        parallelSimulation = parallel;
+    }
+
+    /**
+     * @return Whether the CustomData is searched every frame for deprecated library-free cut keys.
+     */
+    public static boolean isLegacyCutScan() {
+        return legacyCutScan;
+    }
+
+    /**
+     * Switches on or off the deprecated library-free cutting protocol, where an entity is added under any CustomData
+     * key <i>containing</i> {@link #LIB_FREE_CUT_KEY}. Picking those up means searching every CustomData key each
+     * frame, so only turn this on for mods that still cut trails that way. Defaults to "magicTrail_legacyCutScan" in
+     * modSettings.json.
+     */
+    public static void setLegacyCutScan(boolean scan) {
+        legacyCutScan = scan;
+    }
+
+    /**
+     * @return How many trail segments may be alive at once before new pieces are refused; 0 means no limit.
+     */
+    public static int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * Sets how many trail segments may be alive at once. Past 75% of this, new trail pieces are thinned out, starting
+     * with the least important trails: those far off-screen, not belonging to the player, or with a low priority. Once
+     * it is reached, only the player's own trails get new pieces. 0 or less removes the limit. Defaults to
+     * "magicTrail_maxSegments" in modSettings.json.
+     */
+    public static void setMaxSegments(int segments) {
+        maxSegments = segments;
+    }
+
+    /**
+     * @return How many trail pieces may be spawned in a single frame; 0 means no limit.
+     */
+    public static int getMaxSpawnsPerFrame() {
+        return maxSpawnsPerFrame;
+    }
+
+    /**
+     * Sets how many trail pieces may be spawned in a single frame, with pieces shed the same way as for
+     * {@link #setMaxSegments(int)}. 0 or less removes the limit. Defaults to "magicTrail_maxSpawnsPerFrame" in
+     * modSettings.json.
+     */
+    public static void setMaxSpawnsPerFrame(int spawns) {
+        maxSpawnsPerFrame = spawns;
+    }
+
+    /**
+     * @return How many trail segments are currently alive, as of the last frame plus any spawned since.
+     */
+    public static int getLiveSegmentCount() {
+        MagicTrailPlugin plugin = getPlugin();
+        return plugin == null ? 0 : plugin.liveSegments;
+    }
+
+    /**
+     * @return How many trail pieces were dropped this combat to thin out trails while the segment budget was running low.
+     */
+    public static long getThinnedPieceCount() {
+        MagicTrailPlugin plugin = getPlugin();
+        return plugin == null ? 0L : plugin.thinnedPieces;
+    }
+
+    /**
+     * @return How many trail pieces were refused this combat because the segment budget was full.
+     */
+    public static long getRefusedPieceCount() {
+        MagicTrailPlugin plugin = getPlugin();
+        return plugin == null ? 0L : plugin.refusedPieces;
+    }
+
+    /**
+     * @return How many trail pieces were shed this combat for any reason; thinned and refused pieces combined.
+     */
+    public static long getShedPieceCount() {
+        return getThinnedPieceCount() + getRefusedPieceCount();
+    }
+
+    /**
+     * @return Whether trail performance stats are shown on the HUD (in dev mode only) and periodically logged.
+     */
+    public static boolean isDebugStats() {
+        return debugStats;
+    }
+
+    /**
+     * Shows trail performance stats as a status line on the player ship's HUD, while in dev mode, and logs them every
+     * 5 seconds, including how many trails use each layer and texture. Defaults to "magicTrail_debugStats" in
+     * modSettings.json.
+     */
+    public static void setDebugStats(boolean enabled) {
+        debugStats = enabled;
+    }
+
+    /**
+     * @return How many trails currently exist, by render layer and then by texture ID. Animated trails are under
+     * texture ID -1. The maps are created on every call, so this is not meant to be called every frame.
+     */
+    public static Map<CombatEngineLayers, Map<Integer, Integer>> getTrackerCounts() {
+        Map<CombatEngineLayers, Map<Integer, Integer>> counts = new EnumMap<>(CombatEngineLayers.class);
+        MagicTrailPlugin plugin = getPlugin();
+        if (plugin == null) {
+            return counts;
+        }
+        for (Entry<CombatEngineLayers, MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>>> layerEntry : plugin.mainMap.entrySet()) {
+            Map<Integer, Integer> layerCounts = new LinkedHashMap<>();
+            MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>> layerMap = layerEntry.getValue();
+            for (int texSlot = 0; texSlot < layerMap.getSlotCount(); texSlot++) {
+                MagicTrailIdMap<MagicTrailTracker> trailTrackerMap = layerMap.getValueAt(texSlot);
+                if (trailTrackerMap != null) {
+                    layerCounts.put((int) layerMap.getKeyAt(texSlot), trailTrackerMap.size());
+                }
+            }
+            counts.put(layerEntry.getKey(), layerCounts);
+        }
+        return counts;
+    }
+
+    /**
+     * @return How many draw calls trails took to render last frame.
+     */
+    public static int getLastFrameDrawCalls() {
+        MagicTrailPlugin plugin = getPlugin();
+        return plugin == null ? 0 : plugin.lastDrawCalls;
+    }
+
+    /**
+     * @return How many vertices trails sent to OpenGL last frame.
+     */
+    public static int getLastFrameVertexCount() {
+        MagicTrailPlugin plugin = getPlugin();
+        return plugin == null ? 0 : plugin.lastVertices;
+    }
+
+    /**
+     * @return How long, in milliseconds, ticking every trail took last frame. With parallel simulation on, this
+     * includes building the trails' quads.
+     */
+    public static float getLastTickTimeMillis() {
+        MagicTrailPlugin plugin = getPlugin();
+        return plugin == null ? 0f : plugin.lastTickNanos / 1000000f;
+    }
+
+    /**
+     * @return How long, in milliseconds, rendering every trail layer took last frame.
+     */
+    public static float getLastRenderTimeMillis() {
+        MagicTrailPlugin plugin = getPlugin();
+        return plugin == null ? 0f : plugin.lastRenderNanos / 1000000f;
+    }
+
+    //Called by the renderers for every draw call they make, and once they are done with a frame
+    void countDrawCall(int vertices) {
+        frameDrawCalls++;
+        frameVertices += vertices;
+    }
+
+    void countRenderTime(long nanos) {
+        frameRenderNanos += nanos;
+    }
+
+    float getShaderTime() {
+        return shaderTime;
     }
 
     /**
@@ -1667,73 +2320,286 @@ public class MagicTrailPlugin extends BaseEveryFrameCombatPlugin {
     //Ticks all maps, and checks for any entity that should recieve library-free cutting
     @Override
     public void advance(float amount, java.util.List<InputEventAPI> events) {
-        if (engine == null || engine.isPaused()) {
+        if (engine == null) {
             return;
         }
+        long tickStart = System.nanoTime();
+
+        //Everything rendered since last advance belongs to the previous frame
+        lastDrawCalls = frameDrawCalls;
+        lastVertices = frameVertices;
+        lastRenderNanos = frameRenderNanos;
+        frameDrawCalls = 0;
+        frameVertices = 0;
+        frameRenderNanos = 0L;
+
+        if (engine.isPaused()) {
+            //The camera can still move while paused, so the parallel snapshot has to be rebuilt anyway
+            if (parallelSimulation) {
+                simulateInParallel(0f, false);
+            }
+            lastTickNanos = System.nanoTime() - tickStart;
+            return;
+        }
+
+        //Cuts any trails that were requested to be cut since last frame, before they can be ticked
+        processCutRequests();
+        shaderTime += amount;
 
         cleanTimer.advance(amount);
         //Check if it's the clean time
         boolean shouldClean = cleanTimer.intervalElapsed();
 
-        //Ticks the main map
-        for (Map<Integer, Map<Float, MagicTrailTracker>> layerMap : mainMap.values()) {
-            for (Map<Float, MagicTrailTracker> trailTrackerMap : layerMap.values()) {
-                Iterator<Entry<Float, MagicTrailTracker>> trailTrackerIterator = trailTrackerMap.entrySet().iterator();
-                while (trailTrackerIterator.hasNext()) {
-                    Entry<Float, MagicTrailTracker> entry = trailTrackerIterator.next();
-                    MagicTrailTracker tracker = entry.getValue();
-                    if (shouldClean && tracker.isExpired()) {
-                        trailTrackerIterator.remove();
+        //Ticks the main map, counting the segments left alive for the segment budget
+        if (parallelSimulation) {
+            liveSegments = simulateInParallel(amount, shouldClean);
+        } else {
+            int segmentTotal = 0;
+            for (MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>> layerMap : mainMap.values()) {
+                for (int texSlot = 0; texSlot < layerMap.getSlotCount(); texSlot++) {
+                    MagicTrailIdMap<MagicTrailTracker> trailTrackerMap = layerMap.getValueAt(texSlot);
+                    if (trailTrackerMap == null) {
+                        continue;
+                    }
+                    for (int slot = 0; slot < trailTrackerMap.getSlotCount(); slot++) {
+                        MagicTrailTracker tracker = trailTrackerMap.getValueAt(slot);
+                        if (tracker == null) {
+                            continue;
+                        }
+                        if (shouldClean && tracker.isExpired()) {
+                            trailTrackerMap.removeAt(slot);
+                            if (trackerPool.size() < MAX_POOLED_TRACKERS) {
+                                tracker.reset();
+                                trackerPool.add(tracker);
+                            }
+                            continue;
+                        }
+                        tracker.tickTimersInTrail(amount);
+                        segmentTotal += tracker.getSegmentCount();
                     }
-                    tracker.tickTimersInTrail(amount);
                 }
             }
+            liveSegments = segmentTotal;
         }
 
-        //Clean the cutting map
+        spawnsThisFrame = 0;
+
+        //Clean the cutting index: if the entity is not in the engine, just delete it
         if (shouldClean) {
-            for (Map<Integer, Map<CombatEntityAPI, List<Float>>> texMap : cuttingMap.values()) {
-                for (Map<CombatEntityAPI, List<Float>> entityMap : texMap.values()) {
-                    Iterator<Entry<CombatEntityAPI, List<Float>>> entryIterator = entityMap.entrySet().iterator();
-                    //If the entity is not in the engine, just delete it
-                    while (entryIterator.hasNext()) {
-                        Entry<CombatEntityAPI, List<Float>> entry = entryIterator.next();
-                        CombatEntityAPI entity = entry.getKey();
-                        if (!engine.isEntityInPlay(entity)) {
-                            entryIterator.remove();
+            Iterator<Entry<CombatEntityAPI, EntityTrails>> entryIterator = entityTrails.entrySet().iterator();
+            while (entryIterator.hasNext()) {
+                if (!engine.isEntityInPlay(entryIterator.next().getKey())) {
+                    entryIterator.remove();
+                }
+            }
+        }
+
+        lastTickNanos = System.nanoTime() - tickStart;
+        if (debugStats) {
+            showStats(amount);
+        }
+    }
+
+    //Shows the last frame's stats on the HUD in dev mode, and regularly logs them along with how many trails use each texture
+    private void showStats(float amount) {
+        ShipAPI player = engine.getPlayerShip();
+        if (player != null && Global.getSettings().isDevMode()) {
+            engine.maintainStatusForPlayerShip(STATS_STATUS_KEY, "graphics/icons/hullsys/temporal_shell.png",
+                    "Trails: " + liveSegments + " segments",
+                    String.format("%.2f ms tick, %.2f ms render, %d draws, %d vertices",
+                            lastTickNanos / 1000000f, lastRenderNanos / 1000000f, lastDrawCalls, lastVertices),
+                    false);
+        }
+
+        statsLogTimer.advance(amount);
+        if (statsLogTimer.intervalElapsed()) {
+            LOG.info(String.format("Trails: %d segments, %.2f ms tick, %.2f ms render, %d draws, %d vertices, %d shed; trails by layer and texture: %s",
+                    liveSegments, lastTickNanos / 1000000f, lastRenderNanos / 1000000f, lastDrawCalls, lastVertices,
+                    thinnedPieces + refusedPieces, getTrackerCounts()));
+        }
+    }
+
+    //Parallel simulation: splits every live tracker into chunks, each holding trails of a single layer, then ticks them
+    //and builds their quads on the worker pool. Each tracker is in exactly one chunk, and the main thread waits until
+    //every chunk is done, so nothing else touches a tracker while it is being worked on. Returns the live segment count
+    private int simulateInParallel(float amount, boolean shouldClean) {
+        ViewportAPI viewport = engine.getViewport();
+        float minQuadLength = lodPixelThreshold * viewport.getViewMult();
+        simulationViewport.set(viewport, PARALLEL_CULL_MARGIN * Math.max(viewport.getVisibleWidth(), viewport.getVisibleHeight()));
+
+        int chunkCount = 0;
+        for (Entry<CombatEngineLayers, MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>>> layerEntry : mainMap.entrySet()) {
+            MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>> layerMap = layerEntry.getValue();
+            MagicTrailSimulationChunk chunk = null;
+            for (int texSlot = 0; texSlot < layerMap.getSlotCount(); texSlot++) {
+                MagicTrailIdMap<MagicTrailTracker> trailTrackerMap = layerMap.getValueAt(texSlot);
+                if (trailTrackerMap == null) {
+                    continue;
+                }
+                int texID = (int) layerMap.getKeyAt(texSlot);
+                for (int slot = 0; slot < trailTrackerMap.getSlotCount(); slot++) {
+                    MagicTrailTracker tracker = trailTrackerMap.getValueAt(slot);
+                    if (tracker == null) {
+                        continue;
+                    }
+                    //Expired trackers are removed here, since the worker threads can't touch the maps
+                    if (shouldClean && tracker.isExpired()) {
+                        trailTrackerMap.removeAt(slot);
+                        if (trackerPool.size() < MAX_POOLED_TRACKERS) {
+                            tracker.reset();
+                            trackerPool.add(tracker);
                         }
+                        continue;
                     }
+                    if (chunk == null || chunk.isFull()) {
+                        if (chunkCount == backChunks.size()) {
+                            backChunks.add(new MagicTrailSimulationChunk());
+                        }
+                        chunk = backChunks.get(chunkCount++);
+                        chunk.start(layerEntry.getKey(), amount, simulationViewport, minQuadLength);
+                    }
+                    chunk.add(tracker, texID);
                 }
             }
         }
 
-        //Checks our combat engine's customData and sees if someone has attempted a library-free trail cutting this frame
-        //If they have, cut it properly and store the fact that cutting took place this frame
+        //A single chunk isn't worth handing over to other threads
+        if (chunkCount == 1) {
+            backChunks.get(0).simulate();
+        } else if (chunkCount > 1) {
+            simulationRoot.start(backChunks, chunkCount);
+            getSimulationPool().invoke(simulationRoot);
+        }
+
+        int segmentTotal = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            segmentTotal += backChunks.get(i).getSegmentCount();
+        }
+
+        //Swaps the finished snapshot to the front, where the renderers draw it from
+        List<MagicTrailSimulationChunk> finished = backChunks;
+        backChunks = frontChunks;
+        frontChunks = finished;
+        frontChunkCount = chunkCount;
+        return segmentTotal;
+    }
+
+    //Draws the part of the parallel simulation snapshot on one layer; called by that layer's renderer
+    void drawSimulationSnapshot(CombatEngineLayers layer) {
+        for (int i = 0; i < frontChunkCount; i++) {
+            MagicTrailSimulationChunk chunk = frontChunks.get(i);
+            if (chunk.getLayer() == layer) {
+                chunk.draw(batchedRendering, this);
+            }
+        }
+    }
+
+    private static ForkJoinPool getSimulationPool() {
+        if (simulationPool == null) {
+            simulationPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        }
+        return simulationPool;
+    }
+
+    //Runs every chunk of a frame on the worker pool, and returns once they are all done. Kept and restarted each frame
+    private static class SimulationRoot extends RecursiveAction {
+        private List<MagicTrailSimulationChunk> chunks;
+        private int count = 0;
+
+        private void start(List<MagicTrailSimulationChunk> chunks, int count) {
+            reinitialize();
+            this.chunks = chunks;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 1; i < count; i++) {
+                chunks.get(i).fork();
+            }
+            chunks.get(0).invoke();
+            for (int i = 1; i < count; i++) {
+                chunks.get(i).join();
+            }
+        }
+    }
+
+    //Cuts every queued entity's trails, whether it was queued through the library-free key or the legacy custom data keys
+    private void processCutRequests() {
         final Map<String, Object> customData = engine.getCustomData();
-        //Use iterator to remove at the same time
-        Iterator<Entry<String, Object>> dataEntryIterator = customData.entrySet().iterator();
-
-        while (dataEntryIterator.hasNext()) {
-            Entry<String, Object> entry = dataEntryIterator.next();
-            String key = entry.getKey();
-            //If cutting took place this frame, we remove all CustomData key-data pairs that are used for lib-free cutting
-            if (entry.getValue() instanceof CombatEntityAPI
-                    && key.contains("MagicTrailPlugin_LIB_FREE_TRAIL_CUT")) {
-                CombatEntityAPI combatEntity = (CombatEntityAPI) entry.getValue();
-                cutTrailsOnEntity(combatEntity);
-                dataEntryIterator.remove();
+
+        //Someone may have replaced our queue with a lone entity, or removed it: read it and put it back
+        Object queued = customData.get(LIB_FREE_CUT_KEY);
+        if (queued != cutQueue) {
+            if (queued instanceof CombatEntityAPI) {
+                cutQueue.add((CombatEntityAPI) queued);
             }
+            customData.put(LIB_FREE_CUT_KEY, cutQueue);
         }
 
+        //Deprecated library-free cutting: entities stored under any key *containing* the phrase. Needs a full scan
+        if (legacyCutScan) {
+            Iterator<Entry<String, Object>> dataEntryIterator = customData.entrySet().iterator();
+            while (dataEntryIterator.hasNext()) {
+                Entry<String, Object> entry = dataEntryIterator.next();
+                if (entry.getValue() instanceof CombatEntityAPI && entry.getKey().contains(LIB_FREE_CUT_KEY)) {
+                    cutQueue.add((CombatEntityAPI) entry.getValue());
+                    dataEntryIterator.remove();
+                }
+            }
+        }
+
+        for (int i = 0; i < cutQueue.size(); i++) {
+            cutTrailsOnEntity(cutQueue.get(i));
+        }
+        cutQueue.clear();
+    }
+
+    //Every trail registered to one entity: the tracker map each one is in, and its ID in that map
+    private static class EntityTrails {
+        @SuppressWarnings("unchecked")
+        private MagicTrailIdMap<MagicTrailTracker>[] maps = new MagicTrailIdMap[4];
+        private long[] ids = new long[4];
+        private int count = 0;
+
+        private void add(MagicTrailIdMap<MagicTrailTracker> map, long ID) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == ID && maps[i] == map) {
+                    return;
+                }
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                maps = Arrays.copyOf(maps, count * 2);
+            }
+            maps[count] = map;
+            ids[count] = ID;
+            count++;
+        }
 
+        private void clear() {
+            Arrays.fill(maps, 0, count, null);
+            count = 0;
+        }
     }
 }
 
 
-//Handles all rendering of the trails, since this now has to be done on a separate plugin to use render layers
+//Handles all rendering of the trails on one layer, since this now has to be done on a separate plugin to use render layers
 class MagicTrailRenderer extends BaseCombatLayeredRenderingPlugin {
-    //Our parent plugin, which handles all trail activity *except* rendering
-    private MagicTrailPlugin parentPlugin;
+    //The layer we render, and the trails on it; the parent plugin handles all trail activity *except* rendering
+    private final MagicTrailPlugin plugin;
+    private final EnumSet<CombatEngineLayers> activeLayers;
+    private final MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>> mainLayerMap;
+
+    //Batches used by the batched render path; kept between frames so their vertex arrays don't have to be reallocated
+    private final MagicTrailBatchList batches = new MagicTrailBatchList();
+
+    //Copy of the viewport, taken once per frame, that every trail on the layer is culled against
+    private final MagicTrailViewport viewSnapshot = new MagicTrailViewport();
+
+    //Persistent buffers of the layer's shader-aged trails, one per texture and blend mode; kept for the whole combat
+    private final List<MagicTrailShaderBuffer> shaderBuffers = new ArrayList<>();
 
     //No render distance limit!
     @Override
@@ -1741,32 +2607,233 @@ class MagicTrailRenderer extends BaseCombatLayeredRenderingPlugin {
         return 999999999999999999999f;
     }
 
-    //Our constructor takes our parent plugin, so we can access the trail data during rendering
-    protected MagicTrailRenderer(MagicTrailPlugin parentPlugin) {
-        this.parentPlugin = parentPlugin;
+    //Our constructor takes the layer's part of our parent plugin's main map, so we can access the trail data during rendering
+    protected MagicTrailRenderer(MagicTrailPlugin plugin, CombatEngineLayers layer, MagicTrailIdMap<MagicTrailIdMap<MagicTrailTracker>> mainLayerMap) {
+        this.plugin = plugin;
+        this.activeLayers = EnumSet.of(layer);
+        this.mainLayerMap = mainLayerMap;
     }
 
-    //Main render function: renders all trails of a given layer
+    //Main render function: renders all trails of our layer, and times it for the plugin's stats
     @Override
     public void render(CombatEngineLayers layer, ViewportAPI view) {
-        //Iterates through all normal trails on this layer, and render them one at a time
-        Map<Integer, Map<Float, MagicTrailTracker>> mainLayerMap = parentPlugin.mainMap.get(layer);
-        if (mainLayerMap != null) {
-            for (Entry<Integer, Map<Float, MagicTrailTracker>> entry : mainLayerMap.entrySet()) {
-                int texID = entry.getKey();
-                Map<Float, MagicTrailTracker> trailTrackerMap = entry.getValue();
-                for (MagicTrailTracker trailTracker : trailTrackerMap.values()) {
-                    // texID may be -1 which means the anime key
-                    trailTracker.renderTrail(texID);
+        long renderStart = System.nanoTime();
+        renderLayer(layer, view);
+        renderShaderTrails();
+        plugin.countRenderTime(System.nanoTime() - renderStart);
+    }
+
+    private void renderLayer(CombatEngineLayers layer, ViewportAPI view) {
+        //Parallel path: the trails were already ticked and built during advance, so only the draw calls are left
+        if (MagicTrailPlugin.isParallelSimulation()) {
+            plugin.drawSimulationSnapshot(layer);
+            return;
+        }
+
+        viewSnapshot.set(view, 0f);
+
+        //The LOD threshold is in pixels; the view mult converts it into world units at the current zoom
+        float minQuadLength = MagicTrailPlugin.getLodPixelThreshold() * view.getViewMult();
+
+        //Legacy path: iterates through all normal trails on this layer, and render them one at a time
+        if (!MagicTrailPlugin.isBatchedRendering()) {
+            for (int texSlot = 0; texSlot < mainLayerMap.getSlotCount(); texSlot++) {
+                MagicTrailIdMap<MagicTrailTracker> trailTrackerMap = mainLayerMap.getValueAt(texSlot);
+                if (trailTrackerMap == null) {
+                    continue;
+                }
+                int texID = (int) mainLayerMap.getKeyAt(texSlot);
+                for (int slot = 0; slot < trailTrackerMap.getSlotCount(); slot++) {
+                    MagicTrailTracker trailTracker = trailTrackerMap.getValueAt(slot);
+                    if (trailTracker != null && isVisible(trailTracker, viewSnapshot)) {
+                        // texID may be -1 which means the anime key
+                        int vertices = trailTracker.renderTrail(texID, minQuadLength);
+                        if (vertices > 0) {
+                            plugin.countDrawCall(vertices);
+                        }
+                    }
+                }
+            }
+            return;
+        }
+
+        //Batched path: collects every trail sharing a texture and blend mode into one batch, then draws each batch once
+        for (int texSlot = 0; texSlot < mainLayerMap.getSlotCount(); texSlot++) {
+            MagicTrailIdMap<MagicTrailTracker> trailTrackerMap = mainLayerMap.getValueAt(texSlot);
+            if (trailTrackerMap == null) {
+                continue;
+            }
+            int texID = (int) mainLayerMap.getKeyAt(texSlot);
+            for (int slot = 0; slot < trailTrackerMap.getSlotCount(); slot++) {
+                MagicTrailTracker trailTracker = trailTrackerMap.getValueAt(slot);
+                if (trailTracker == null || !isVisible(trailTracker, viewSnapshot)) {
+                    continue;
+                }
+                // texID may be -1 which means the anime key; the tracker knows its real texture in that case
+                MagicTrailBatch batch = batches.getBatch(trailTracker.getRenderTexture(texID), trailTracker.getBlendModeSRC(), trailTracker.getBlendModeDEST());
+                trailTracker.buildTrailGeometry(batch, viewSnapshot, minQuadLength);
+            }
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            MagicTrailBatch batch = batches.get(i);
+            if (!batch.isEmpty()) {
+                plugin.countDrawCall(batch.getVertexCount());
+            }
+            batch.draw();
+        }
+        batches.clear();
+    }
+
+    //Shader-aged trails: uploads the quads of every segment added since last frame, then draws each buffer in one call.
+    //They aren't culled, since the graphics card only has to hide what's off-screen and nothing is built on the CPU
+    private void renderShaderTrails() {
+        if (shaderBuffers.isEmpty() && !MagicTrailShader.isActive()) {
+            return;
+        }
+        float time = plugin.getShaderTime();
+        for (int texSlot = 0; texSlot < mainLayerMap.getSlotCount(); texSlot++) {
+            MagicTrailIdMap<MagicTrailTracker> trailTrackerMap = mainLayerMap.getValueAt(texSlot);
+            if (trailTrackerMap == null) {
+                continue;
+            }
+            int texID = (int) mainLayerMap.getKeyAt(texSlot);
+            for (int slot = 0; slot < trailTrackerMap.getSlotCount(); slot++) {
+                MagicTrailTracker trailTracker = trailTrackerMap.getValueAt(slot);
+                if (trailTracker != null && trailTracker.isShaderAged()) {
+                    MagicTrailShaderBuffer buffer = getShaderBuffer(trailTracker.getRenderTexture(texID), trailTracker.getBlendModeSRC(), trailTracker.getBlendModeDEST());
+                    trailTracker.uploadShaderQuads(buffer, time);
                 }
             }
         }
+        for (int i = 0; i < shaderBuffers.size(); i++) {
+            MagicTrailShaderBuffer buffer = shaderBuffers.get(i);
+            if (!buffer.isEmpty()) {
+                plugin.countDrawCall(buffer.getVertexCount());
+            }
+            buffer.draw(time);
+        }
+    }
+
+    //Finds the buffer a trail's quads go in, and maps its U coordinates to the trail's texture, as MagicTrailBatchList does
+    private MagicTrailShaderBuffer getShaderBuffer(int textureID, int blendModeSRC, int blendModeDEST) {
+        MagicTrailAtlas.Region region = MagicTrailAtlas.getRegion(textureID);
+        int bufferTexture = region == null ? textureID : region.getAtlasTextureID();
+        MagicTrailShaderBuffer buffer = null;
+        for (int i = 0; i < shaderBuffers.size(); i++) {
+            if (shaderBuffers.get(i).matches(bufferTexture, blendModeSRC, blendModeDEST)) {
+                buffer = shaderBuffers.get(i);
+                break;
+            }
+        }
+        if (buffer == null) {
+            buffer = MagicTrailShader.createBuffer(bufferTexture, blendModeSRC, blendModeDEST);
+            shaderBuffers.add(buffer);
+        }
+        if (region == null) {
+            buffer.setURange(0f, 1f);
+        } else {
+            buffer.setURange(region.getU0(), region.getU1());
+        }
+        return buffer;
     }
 
-    //We render on all layers : ideally, we would render only on layers we have trails on, but this check only runs once
-    //so that doesn't work. Also, the overhead is pretty negligable, so it should be fine anyway
+    //Tests a whole trail against the viewport in one go. Trails that fail are flagged, so that they only get aged
+    //rather than fully ticked until they come back into view
+    private static boolean isVisible(MagicTrailTracker trailTracker, MagicTrailViewport view) {
+        boolean visible = trailTracker.isNearViewport(view);
+        trailTracker.setCulled(!visible);
+        return visible;
+    }
+
+    //We only render on our own layer: the engine asks for this once, which is why each layer gets its own renderer
     @Override
     public EnumSet<CombatEngineLayers> getActiveLayers() {
-        return EnumSet.allOf(CombatEngineLayers.class);
+        return activeLayers;
+    }
+}
+
+
+//One slice of a layer's trails for parallel simulation: ticks its trackers, then builds their quads into batches of its
+//own. The batches are left alone until the chunk is reused, two frames later, so the renderer can draw them meanwhile
+class MagicTrailSimulationChunk extends RecursiveAction {
+    //How many trackers a chunk holds; small enough for the work to spread evenly over the threads
+    private static final int CAPACITY = 64;
+
+    private final MagicTrailTracker[] trackers = new MagicTrailTracker[CAPACITY];
+    private final int[] textureIDs = new int[CAPACITY];
+    private int count = 0;
+
+    private CombatEngineLayers layer;
+    private float amount = 0f;
+    private MagicTrailViewport viewport;
+    private float minQuadLength = 0f;
+    private int segmentCount = 0;
+
+    private final MagicTrailBatchList batches = new MagicTrailBatchList();
+
+    //Empties the chunk for a new frame's trails
+    void start(CombatEngineLayers layer, float amount, MagicTrailViewport viewport, float minQuadLength) {
+        reinitialize();
+        Arrays.fill(trackers, 0, count, null);
+        count = 0;
+        this.layer = layer;
+        this.amount = amount;
+        this.viewport = viewport;
+        this.minQuadLength = minQuadLength;
+        segmentCount = 0;
+        batches.clear();
+    }
+
+    boolean isFull() {
+        return count == CAPACITY;
+    }
+
+    void add(MagicTrailTracker tracker, int textureID) {
+        trackers[count] = tracker;
+        textureIDs[count] = textureID;
+        count++;
+    }
+
+    CombatEngineLayers getLayer() {
+        return layer;
+    }
+
+    int getSegmentCount() {
+        return segmentCount;
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void compute() {
+        simulate();
+    }
+
+    //Does, for this chunk's trails, what advance and the renderer do one after the other on the normal path
+    void simulate() {
+        for (int i = 0; i < count; i++) {
+            MagicTrailTracker tracker = trackers[i];
+            boolean visible = tracker.isNearViewport(viewport);
+            tracker.setCulled(!visible);
+            tracker.tickTimersInTrail(amount);
+            segmentCount += tracker.getSegmentCount();
+            if (visible) {
+                MagicTrailBatch batch = batches.getBatch(tracker.getRenderTexture(textureIDs[i]), tracker.getBlendModeSRC(), tracker.getBlendModeDEST());
+                tracker.buildTrailGeometry(batch, viewport, minQuadLength);
+            }
+        }
+    }
+
+    //Submits the built quads; on the main thread only
+    void draw(boolean batched, MagicTrailPlugin plugin) {
+        for (int i = 0; i < batches.size(); i++) {
+            MagicTrailBatch batch = batches.get(i);
+            if (!batch.isEmpty()) {
+                plugin.countDrawCall(batch.getVertexCount());
+            }
+            if (batched) {
+                batch.draw();
+            } else {
+                batch.drawImmediate();
+            }
+        }
+    }
+}
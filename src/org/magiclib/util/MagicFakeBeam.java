@@ -329,7 +329,7 @@ public class MagicFakeBeam {
                 end = MathUtils.getPoint(from, smoothIn + smoothOut + 2, angle);
             }
 
-            float ID = MagicTrailPlugin.getUniqueID();
+            long ID = MagicTrailPlugin.getUniqueTrailID();
             SpriteAPI texture = Global.getSettings().getSprite("fx", textureCore);
 
             MagicTrailPlugin.addTrailMemberAdvanced(
@@ -367,7 +367,7 @@ public class MagicFakeBeam {
             MagicTrailPlugin.addTrailMemberAdvanced(null, ID, texture, end, 0, 0, angle, 0, 0, widthOut / 3, widthOut / 3 + growth, core, fringe, 1, 0, full, fading, GL_SRC_ALPHA, GL_ONE, textureLength, textureScroll, new Vector2f(), null,
                     CombatEngineLayers.BELOW_INDICATORS_LAYER, 1);
 
-            ID = MagicTrailPlugin.getUniqueID();
+            ID = MagicTrailPlugin.getUniqueTrailID();
             texture = Global.getSettings().getSprite("fx", textureFringe);
 
             MagicTrailPlugin.addTrailMemberAdvanced(null, ID, texture, from, 0, 0, angle, 0, 0, widthIn / 2, widthIn / 2 + growth, fringe, fringe, 1, 0, full, fading, GL_SRC_ALPHA, GL_ONE, textureLength, textureScroll, new Vector2f(), null,
@@ -9,22 +9,33 @@ import com.fs.starfarer.api.graphics.SpriteAPI;
 import com.fs.starfarer.api.util.IntervalUtil;
 import org.lazywizard.lazylib.MathUtils;
 import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
 import org.magiclib.plugins.MagicRenderPlugin;
 
 import java.awt.*;
 
+import static org.lwjgl.opengl.GL11.GL_ONE;
+import static org.lwjgl.opengl.GL11.GL_ONE_MINUS_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11.GL_SRC_ALPHA;
+
 /**
  * Draw arbitrary sprites on screen with constraints to entities/camera when needed. Most drawing functions come with three optional declarations:
  * A simple declaration that should cover most use cases,
  * an advanced declaration that adds jitter/flicker controls plus render layer overrides,
  * and an advanced declaration that also includes OpenGL blending options.
  * Note that every element will be drawn one frame late.
+ * Sprites can also be queued from other threads than the game's, without locking; they are handed over to the game
+ * thread at the start of its next frame. Don't touch a sprite from another thread once it has been queued.
+ * Effects drawing the same image many times can pass a sprite category and id instead of a sprite, to share a single
+ * sprite between all of them; see {@link MagicSpriteCache}. Those sprites have to be in the cache already when queued
+ * from other threads.
  *
  * @author Tartiflette
  */
 public class MagicRender {
 
+    //Where objectspace sprites start when their anchor has no location yet. Only ever copied, never modified
+    private static final Vector2f OFFSCREEN = new Vector2f(50000, 50000);
+
     /**
      * Checks if a point is within a certain distance of the screen's edges;
      * Used to avoid spawning particles or other effects that won't be seen by the player while impacting performances.
@@ -78,6 +89,39 @@ public class MagicRender {
         MagicRenderPlugin.addSingleframe(sprite, loc, CombatEngineLayers.BELOW_INDICATORS_LAYER);
     }
 
+    /**
+     * Single frame render in absolute engine coordinates, using a sprite shared with every other effect drawing the
+     * same image. See {@link MagicSpriteCache}.
+     *
+     * @param category settings category of the sprite.
+     * @param id       settings id of the sprite.
+     * @param loc      Vector2f, center in world coordinates.
+     * @param size     Vector2f(width, height) in pixels.
+     * @param angle    float of the sprite's azimuth. 0 is pointing top.
+     * @param color    Color() override, also used for fading.
+     * @param additive boolean for additive blending.
+     */
+    public static void singleframe(
+            String category,
+            String id,
+            Vector2f loc,
+            Vector2f size,
+            float angle,
+            Color color,
+            boolean additive
+    ) {
+        SpriteAPI sprite = MagicSpriteCache.getSprite(category, id);
+        if (sprite == null) {
+            return;
+        }
+        MagicRenderPlugin.addSingleframe(
+                sprite, loc,
+                size.x, size.y, angle, color,
+                GL_SRC_ALPHA, additive ? GL_ONE : GL_ONE_MINUS_SRC_ALPHA,
+                CombatEngineLayers.BELOW_INDICATORS_LAYER
+        );
+    }
+
     /**
      * Single frame render, absolute engine coordinates,                        can be used for animations.
      *
@@ -181,7 +225,7 @@ public class MagicRender {
         }
         MagicRenderPlugin.addBattlespace(
                 sprite,
-                new Vector2f(loc), new Vector2f(vel),
+                loc, vel,
                 growth, spin,
                 0, 0, null,
                 0, 0, null,
@@ -190,6 +234,54 @@ public class MagicRender {
         );
     }
 
+    /**
+     * Draws a sprite in absolute engine coordinates for a duration, using a sprite shared with every other effect
+     * drawing the same image. See {@link MagicSpriteCache}.
+     *
+     * @param category settings category of the sprite.
+     * @param id       settings id of the sprite.
+     * @param loc      Vector2f, center in world coordinates.
+     * @param vel      Vector2f() velocity of the sprite.
+     * @param size     Vector2f(width, height) in pixels.
+     * @param growth   Vector2f() change of size over time in pixels/sec. Can be negative, a sprite that completely shrunk will be removed.
+     * @param angle    float of the sprite's azimuth. 0 is pointing top.
+     * @param spin     float of the sprite's rotation, in degree/sec.
+     * @param color    Color() override, also used for fading.
+     * @param additive boolean for additive blending.
+     * @param fadein   time in sec for fading in.
+     * @param full     time in sec at maximum opacity (clamped by color)
+     * @param fadeout  time in sec for fading out
+     */
+    public static void battlespace(
+            String category,
+            String id,
+            Vector2f loc,
+            Vector2f vel,
+            Vector2f size,
+            Vector2f growth,
+            float angle,
+            float spin,
+            Color color,
+            boolean additive,
+            float fadein,
+            float full,
+            float fadeout
+    ) {
+        SpriteAPI sprite = MagicSpriteCache.getSprite(category, id);
+        if (sprite == null) {
+            return;
+        }
+        MagicRenderPlugin.addBattlespace(
+                sprite,
+                size.x, size.y, angle, color,
+                GL_SRC_ALPHA, additive ? GL_ONE : GL_ONE_MINUS_SRC_ALPHA,
+                loc, vel,
+                growth, spin,
+                fadein, fadein + full, fadein + full + fadeout,
+                CombatEngineLayers.BELOW_INDICATORS_LAYER
+        );
+    }
+
     /**
      * Draws a sprite in absolute engine coordinates for a duration. Advanced declaration.
      *
@@ -242,9 +334,9 @@ public class MagicRender {
 
         MagicRenderPlugin.addBattlespace(
                 sprite,
-                new Vector2f(loc), new Vector2f(vel),
+                loc, vel,
                 growth, spin,
-                jitterRange, jitterTilt, new Vector3f(),
+                jitterRange, jitterTilt, null,
                 flickerRange, flickerMedian, delay,
                 fadein, fadein + full, fadein + full + fadeout,
                 layer);
@@ -303,9 +395,9 @@ public class MagicRender {
 
         MagicRenderPlugin.addBattlespace(
                 sprite,
-                new Vector2f(loc), new Vector2f(vel),
+                loc, vel,
                 growth, spin,
-                jitterRange, jitterTilt, new Vector3f(),
+                jitterRange, jitterTilt, null,
                 flickerRange, flickerMedian, delay,
                 fadein, fadein + full, fadein + full + fadeout,
                 layer
@@ -365,15 +457,15 @@ public class MagicRender {
             sprite.setAdditiveBlend();
         }
 
-        Vector2f loc = new Vector2f(50000, 50000);
-        if (anchor.getLocation() != null) {
-            loc = new Vector2f(anchor.getLocation());
+        Vector2f loc = anchor.getLocation();
+        if (loc == null) {
+            loc = OFFSCREEN;
         }
 
         MagicRenderPlugin.addObjectspace(
                 sprite,
                 anchor,
-                loc, offset, new Vector2f(vel),
+                loc, offset, vel,
                 growth, angle, spin,
                 parent,
                 0, 0, null,
@@ -383,6 +475,69 @@ public class MagicRender {
         );
     }
 
+    /**
+     * Draws a sprite attached to an entity for a duration, using a sprite shared with every other effect drawing the
+     * same image. See {@link MagicSpriteCache}.
+     *
+     * @param category    settings category of the sprite.
+     * @param id          settings id of the sprite.
+     * @param anchor      CombatEntityAPI the sprite will follow.
+     * @param offset      Vector2f, offset from the anchor's center in world coordinates. If "parent" is true, it will be kept relative to the anchor's orientation.
+     * @param vel         Vector2f() velocity of the sprite relative to the anchor. If "parent" is true, it will be relative to the anchor's orientation.
+     * @param size        Vector2f(width, height) in pixels.
+     * @param growth      Vector2f() change of size over time in pixels/sec. Can be negative, a sprite that completely shrunk will be removed.
+     * @param angle       float of the sprite's azimuth. 0 is pointing front. If "parent" is true, 0 will match the anchor's orientation.
+     * @param spin        float of the sprite's rotation, in degree/sec. If "parent" is true, it will be relative to the anchor's orientation.
+     * @param parent      boolean, if true the sprite will also follow the anchor's orientation in addition to the position.
+     * @param color       Color() override, also used for fading.
+     * @param additive    boolean for additive blending.
+     * @param fadein      time in sec for fading in.
+     * @param full        time in sec at maximum opacity (clamped by color). If attached to a projectile that value can be longer than the maximum flight time, for example 99s.
+     * @param fadeout     time in sec for fading out. If attached to a projectile, the sprite will immediately start to fade if the anchor hit or fade.
+     * @param fadeOnDeath if true the sprite will fadeout in case the anchor is removed, if false it will be instantly removed. Mostly useful if you want to put effects on missiles or projectiles.
+     */
+    public static void objectspace(
+            String category,
+            String id,
+            CombatEntityAPI anchor,
+            Vector2f offset,
+            Vector2f vel,
+            Vector2f size,
+            Vector2f growth,
+            float angle,
+            float spin,
+            boolean parent,
+            Color color,
+            boolean additive,
+            float fadein,
+            float full,
+            float fadeout,
+            boolean fadeOnDeath
+    ) {
+        SpriteAPI sprite = MagicSpriteCache.getSprite(category, id);
+        if (sprite == null) {
+            return;
+        }
+        float facing = parent ? anchor.getFacing() + angle + 90 : angle + 90;
+
+        Vector2f loc = anchor.getLocation();
+        if (loc == null) {
+            loc = OFFSCREEN;
+        }
+
+        MagicRenderPlugin.addObjectspace(
+                sprite,
+                size.x, size.y, facing, color,
+                GL_SRC_ALPHA, additive ? GL_ONE : GL_ONE_MINUS_SRC_ALPHA,
+                anchor,
+                loc, offset, vel,
+                growth, angle, spin,
+                parent,
+                fadein, fadein + full, fadein + full + fadeout, fadeOnDeath,
+                CombatEngineLayers.BELOW_INDICATORS_LAYER
+        );
+    }
+
     /**
      * Draws a sprite attached to an entity for a duration. Advanced declaration.
      *
@@ -442,9 +597,9 @@ public class MagicRender {
             sprite.setAdditiveBlend();
         }
 
-        Vector2f loc = new Vector2f(50000, 50000);
-        if (anchor.getLocation() != null) {
-            loc = new Vector2f(anchor.getLocation());
+        Vector2f loc = anchor.getLocation();
+        if (loc == null) {
+            loc = OFFSCREEN;
         }
 
         IntervalUtil delay = new IntervalUtil(0.016f, Math.max(0.016f, maxDelay));
@@ -452,10 +607,10 @@ public class MagicRender {
         MagicRenderPlugin.addObjectspace(
                 sprite,
                 anchor,
-                loc, offset, new Vector2f(vel),
+                loc, offset, vel,
                 growth, angle, spin,
                 parent,
-                jitterRange, jitterTilt, new Vector3f(),
+                jitterRange, jitterTilt, null,
                 flickerRange, flickerMedian, delay,
                 fadein, fadein + full, fadein + full + fadeout, fadeOnDeath,
                 layer
@@ -522,9 +677,9 @@ public class MagicRender {
         sprite.setColor(color);
         sprite.setBlendFunc(srcBlendFunc, destBlendFunc);
 
-        Vector2f loc = new Vector2f(50000, 50000);
-        if (anchor.getLocation() != null) {
-            loc = new Vector2f(anchor.getLocation());
+        Vector2f loc = anchor.getLocation();
+        if (loc == null) {
+            loc = OFFSCREEN;
         }
 
         IntervalUtil delay = new IntervalUtil(0.016f, Math.max(0.016f, maxDelay));
@@ -532,10 +687,10 @@ public class MagicRender {
         MagicRenderPlugin.addObjectspace(
                 sprite,
                 anchor,
-                loc, offset, new Vector2f(vel),
+                loc, offset, vel,
                 growth, angle, spin,
                 parent,
-                jitterRange, jitterTilt, new Vector3f(),
+                jitterRange, jitterTilt, null,
                 flickerRange, flickerMedian, delay,
                 fadein, fadein + full, fadein + full + fadeout, fadeOnDeath,
                 layer
@@ -609,10 +764,9 @@ public class MagicRender {
             sprite.setAdditiveBlend();
         }
 
-        Vector2f velocity = new Vector2f(vel);
         MagicRenderPlugin.addScreenspace(
                 sprite,
-                pos, loc, velocity,
+                pos, loc, vel,
                 ratio, growth, spin,
                 0, 0, null,
                 0, 0, null,
@@ -697,9 +851,9 @@ public class MagicRender {
 
         MagicRenderPlugin.addScreenspace(
                 sprite,
-                pos, new Vector2f(loc), new Vector2f(vel),
+                pos, loc, vel,
                 ratio, growth, spin,
-                jitterRange, jitterTilt, new Vector3f(),
+                jitterRange, jitterTilt, null,
                 flickerRange, flickerMedian, delay,
                 fadein, fadein + full, fadein + full + fadeout,
                 layer);
@@ -781,9 +935,9 @@ public class MagicRender {
 
         MagicRenderPlugin.addScreenspace(
                 sprite,
-                pos, new Vector2f(loc), new Vector2f(vel),
+                pos, loc, vel,
                 ratio, growth, spin,
-                jitterRange, jitterTilt, new Vector3f(),
+                jitterRange, jitterTilt, null,
                 flickerRange, flickerMedian, delay,
                 fadein, fadein + full, fadein + full + fadeout,
                 layer);
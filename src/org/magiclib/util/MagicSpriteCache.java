@@ -0,0 +1,77 @@
+package org.magiclib.util;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.graphics.SpriteAPI;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared sprites for effects that draw the same image many times, such as the MagicRender calls taking a sprite
+ * category and id. Global.getSettings().getSprite() creates a new sprite every time it is called; this hands out the
+ * same sprite for a given image instead, so thousands of identical effects don't each carry their own.
+ * <p>
+ * Since a cached sprite is shared, its size, angle, color and blending mean nothing: they are given along with each
+ * effect, and applied to the sprite right before that effect is drawn.
+ * <p>
+ * Sprites already in the cache can be looked up from any thread. A sprite that isn't cached yet is loaded through the
+ * game's settings, which aren't thread-safe, so sprites used from other threads should be looked up once on the game
+ * thread first, for instance when the mod loads or when combat starts.
+ */
+public final class MagicSpriteCache {
+
+    //Sprites by settings category then id, so lookups don't build a key, and by file path
+    private static final ConcurrentHashMap<String, Map<String, SpriteAPI>> BY_ID = new ConcurrentHashMap<>();
+    private static final Map<String, SpriteAPI> BY_PATH = new ConcurrentHashMap<>();
+
+    private MagicSpriteCache() {
+    }
+
+    /**
+     * @param category Settings category of the sprite, as in settings.json's "graphics"
+     * @param id       Id of the sprite within that category
+     * @return The shared sprite, or null if there is no such sprite
+     */
+    public static SpriteAPI getSprite(String category, String id) {
+        Map<String, SpriteAPI> sprites = BY_ID.get(category);
+        if (sprites == null) {
+            sprites = new ConcurrentHashMap<>();
+            Map<String, SpriteAPI> existing = BY_ID.putIfAbsent(category, sprites);
+            if (existing != null) {
+                sprites = existing;
+            }
+        }
+        SpriteAPI sprite = sprites.get(id);
+        if (sprite == null) {
+            sprite = Global.getSettings().getSprite(category, id);
+            //missing sprites aren't cached, in case they are loaded later on
+            if (sprite != null) {
+                sprites.put(id, sprite);
+            }
+        }
+        return sprite;
+    }
+
+    /**
+     * @param path File path of the sprite. Its texture has to be loaded already, see SettingsAPI.loadTexture()
+     * @return The shared sprite, or null if there is no such sprite
+     */
+    public static SpriteAPI getSprite(String path) {
+        SpriteAPI sprite = BY_PATH.get(path);
+        if (sprite == null) {
+            sprite = Global.getSettings().getSprite(path);
+            if (sprite != null) {
+                BY_PATH.put(path, sprite);
+            }
+        }
+        return sprite;
+    }
+
+    /**
+     * Forgets every shared sprite. Effects already queued keep drawing with the ones they were given.
+     */
+    public static void clear() {
+        BY_ID.clear();
+        BY_PATH.clear();
+    }
+}
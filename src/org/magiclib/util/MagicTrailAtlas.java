@@ -0,0 +1,224 @@
+package org.magiclib.util;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.graphics.SpriteAPI;
+import org.apache.log4j.Logger;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * This file isn't meant to be used directly; use the MagicTrailPlugin to actually do anything properly.
+ * <p>
+ * Packs trail sprites into shared atlas textures, so that trails with different sprites but the same blend mode can be
+ * drawn together in one batch, and animated trails switch frames without switching textures. Trails run their texture
+ * along V and stretch it across their width along U, so sprites are packed side by side: every sprite in an atlas keeps
+ * the atlas' full height, and V can still repeat. Only sprites of the same height are packed together.
+ * <p>
+ * Sprites have to be registered, typically in onApplicationLoad, with {@link #registerSprite(String, String)}. MagicLib
+ * registers the sprites of every trail in magicTrail_data.csv on its own. Registered sprites are packed the next time a
+ * combat starts. The atlases are copies: the original textures are left alone, and are still used by anything else.
+ * Only active if "magicTrail_textureAtlas" is enabled in modSettings.json.
+ */
+public final class MagicTrailAtlas {
+    private static final Logger LOG = Global.getLogger(MagicTrailAtlas.class);
+
+    private static boolean enabled = MagicSettings.getBoolean(MagicVariables.MAGICLIB_ID, "magicTrail_textureAtlas");
+
+    //Widest atlas to create, if the graphics card allows it
+    private static final int MAX_ATLAS_WIDTH = 4096;
+
+    //Sprites registered since the atlases were last built, and where each packed texture ended up, by its own texture ID
+    private static final List<SpriteAPI> pendingSprites = new ArrayList<>();
+    private static final MagicTrailIdMap<Region> regions = new MagicTrailIdMap<>();
+
+    private MagicTrailAtlas() {
+    }
+
+    /**
+     * Where a texture was packed: which atlas, and which horizontal stretch of it.
+     */
+    public static final class Region {
+        private final int atlasTextureID;
+        private final float u0;
+        private final float u1;
+
+        private Region(int atlasTextureID, float u0, float u1) {
+            this.atlasTextureID = atlasTextureID;
+            this.u0 = u0;
+            this.u1 = u1;
+        }
+
+        public int getAtlasTextureID() {
+            return atlasTextureID;
+        }
+
+        //U coordinate of the texture's left edge in the atlas
+        public float getU0() {
+            return u0;
+        }
+
+        //U coordinate of the texture's right edge in the atlas
+        public float getU1() {
+            return u1;
+        }
+    }
+
+    /**
+     * Registers a sprite, from the game's settings.json "graphics" section, to be packed into an atlas.
+     */
+    public static void registerSprite(String category, String id) {
+        registerSprite(Global.getSettings().getSprite(category, id));
+    }
+
+    /**
+     * Registers a sprite to be packed into an atlas. Sprites that are already packed are ignored.
+     */
+    public static void registerSprite(SpriteAPI sprite) {
+        if (sprite != null) {
+            pendingSprites.add(sprite);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns atlas rendering on or off. Defaults to "magicTrail_textureAtlas" in modSettings.json. Sprites are only
+     * packed while it is on.
+     */
+    public static void setEnabled(boolean enabled) {
+        MagicTrailAtlas.enabled = enabled;
+    }
+
+    /**
+     * @return Where a texture was packed, or null if it isn't in an atlas or atlases are disabled
+     */
+    public static Region getRegion(int textureID) {
+        return enabled ? regions.get(textureID) : null;
+    }
+
+    /**
+     * Packs every sprite registered since the last call. Reads the sprites back from the graphics card, so it has to
+     * be called from the main thread; the MagicTrailPlugin does so when a combat starts.
+     */
+    public static void build() {
+        if (!enabled || pendingSprites.isEmpty()) {
+            return;
+        }
+
+        int previousTexture = glGetInteger(GL_TEXTURE_BINDING_2D);
+        int maxWidth = Math.min(MAX_ATLAS_WIDTH, glGetInteger(GL_MAX_TEXTURE_SIZE));
+
+        //Reads each new texture once, grouping them by height
+        Map<Integer, List<TexturePixels>> texturesByHeight = new TreeMap<>();
+        MagicTrailIdMap<Boolean> seen = new MagicTrailIdMap<>();
+        for (SpriteAPI sprite : pendingSprites) {
+            int textureID = sprite.getTextureId();
+            if (regions.containsKey(textureID) || seen.containsKey(textureID)) {
+                continue;
+            }
+            seen.put(textureID, Boolean.TRUE);
+
+            TexturePixels texture = readTexture(textureID);
+            if (texture.width <= 0 || texture.height <= 0 || texture.width > maxWidth) {
+                continue;
+            }
+            List<TexturePixels> group = texturesByHeight.get(texture.height);
+            if (group == null) {
+                group = new ArrayList<>();
+                texturesByHeight.put(texture.height, group);
+            }
+            group.add(texture);
+        }
+        pendingSprites.clear();
+
+        //Packs each height into as few atlases as fit within the width limit. A lone texture would gain nothing
+        int atlasCount = 0;
+        int packedCount = 0;
+        for (List<TexturePixels> group : texturesByHeight.values()) {
+            int start = 0;
+            while (start < group.size()) {
+                int end = start;
+                int width = 0;
+                while (end < group.size() && width + group.get(end).width <= maxWidth) {
+                    width += group.get(end).width;
+                    end++;
+                }
+                if (end - start > 1) {
+                    createAtlas(group.subList(start, end), width);
+                    atlasCount++;
+                    packedCount += end - start;
+                }
+                start = end;
+            }
+        }
+
+        glBindTexture(GL_TEXTURE_2D, previousTexture);
+        if (MagicVariables.verbose) {
+            LOG.info("Packed " + packedCount + " trail textures into " + atlasCount + " atlases");
+        }
+    }
+
+    private static TexturePixels readTexture(int textureID) {
+        glBindTexture(GL_TEXTURE_2D, textureID);
+        int width = glGetTexLevelParameteri(GL_TEXTURE_2D, 0, GL_TEXTURE_WIDTH);
+        int height = glGetTexLevelParameteri(GL_TEXTURE_2D, 0, GL_TEXTURE_HEIGHT);
+        ByteBuffer pixels = null;
+        if (width > 0 && height > 0) {
+            pixels = BufferUtils.createByteBuffer(width * height * 4);
+            glPixelStorei(GL_PACK_ALIGNMENT, 1);
+            glGetTexImage(GL_TEXTURE_2D, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        }
+        return new TexturePixels(textureID, width, height, pixels);
+    }
+
+    //Creates one atlas from textures of the same height, placed left to right
+    private static void createAtlas(List<TexturePixels> textures, int usedWidth) {
+        int atlasWidth = 1;
+        while (atlasWidth < usedWidth) {
+            atlasWidth <<= 1;
+        }
+        int height = textures.get(0).height;
+
+        int atlasID = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, atlasID);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, atlasWidth, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        int x = 0;
+        for (TexturePixels texture : textures) {
+            glTexSubImage2D(GL_TEXTURE_2D, 0, x, 0, texture.width, texture.height, GL_RGBA, GL_UNSIGNED_BYTE, texture.pixels);
+            //Insets the edges by half a texel, so filtering never picks up the neighbouring texture
+            float u0 = (x + 0.5f) / atlasWidth;
+            float u1 = (x + texture.width - 0.5f) / atlasWidth;
+            regions.put(texture.textureID, new Region(atlasID, u0, u1));
+            x += texture.width;
+        }
+    }
+
+    private static class TexturePixels {
+        private final int textureID;
+        private final int width;
+        private final int height;
+        private final ByteBuffer pixels;
+
+        private TexturePixels(int textureID, int width, int height, ByteBuffer pixels) {
+            this.textureID = textureID;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+}
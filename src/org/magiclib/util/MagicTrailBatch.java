@@ -0,0 +1,138 @@
+package org.magiclib.util;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * This file isn't meant to be used directly; use the MagicTrailPlugin to actually do anything properly.
+ * <p>
+ * Collects the quads of one or more trails sharing the same texture and blend mode. The quads can then either be
+ * submitted all at once with a single vertex-array draw call, or one vertex at a time in immediate mode (the legacy
+ * behaviour, kept around for comparison). Vertices are stored interleaved as x, y, u, v, r, g, b, a.
+ */
+public class MagicTrailBatch {
+    public static final int FLOATS_PER_VERTEX = 8;
+    private static final int STRIDE = FLOATS_PER_VERTEX * 4;
+
+    //Direct buffer handed over to OpenGL. Batches are only ever drawn one at a time on the render thread, so they all share it
+    private static FloatBuffer uploadBuffer = BufferUtils.createFloatBuffer(FLOATS_PER_VERTEX * 4 * 256);
+
+    private int textureID = 0;
+    private int blendModeSRC = GL_SRC_ALPHA;
+    private int blendModeDEST = GL_ONE_MINUS_SRC_ALPHA;
+
+    //The part of the texture's width that U coordinates from 0 to 1 are mapped to; all of it, unless it's an atlas
+    private float uOffset = 0f;
+    private float uScale = 1f;
+
+    private float[] vertices = new float[FLOATS_PER_VERTEX * 4 * 64];
+    private int floatCount = 0;
+
+    //Sets which texture and blend mode this batch is drawn with
+    public void setKey(int textureID, int blendModeSRC, int blendModeDEST) {
+        this.textureID = textureID;
+        this.blendModeSRC = blendModeSRC;
+        this.blendModeDEST = blendModeDEST;
+        setURange(0f, 1f);
+    }
+
+    //Sets the part of the texture that vertices added from now on use, from its U coordinate u0 to u1
+    public void setURange(float u0, float u1) {
+        this.uOffset = u0;
+        this.uScale = u1 - u0;
+    }
+
+    public boolean matches(int textureID, int blendModeSRC, int blendModeDEST) {
+        return this.textureID == textureID && this.blendModeSRC == blendModeSRC && this.blendModeDEST == blendModeDEST;
+    }
+
+    public void addVertex(float x, float y, float u, float v, float r, float g, float b, float a) {
+        if (floatCount + FLOATS_PER_VERTEX > vertices.length) {
+            float[] grown = new float[vertices.length * 2];
+            System.arraycopy(vertices, 0, grown, 0, floatCount);
+            vertices = grown;
+        }
+        vertices[floatCount++] = x;
+        vertices[floatCount++] = y;
+        vertices[floatCount++] = uOffset + u * uScale;
+        vertices[floatCount++] = v;
+        vertices[floatCount++] = r;
+        vertices[floatCount++] = g;
+        vertices[floatCount++] = b;
+        vertices[floatCount++] = a;
+    }
+
+    public int getVertexCount() {
+        return floatCount / FLOATS_PER_VERTEX;
+    }
+
+    public boolean isEmpty() {
+        return floatCount == 0;
+    }
+
+    public void clear() {
+        floatCount = 0;
+    }
+
+    //Draws every quad in the batch with a single glDrawArrays call
+    public void draw() {
+        if (floatCount == 0) {
+            return;
+        }
+
+        if (uploadBuffer.capacity() < floatCount) {
+            uploadBuffer = BufferUtils.createFloatBuffer(Math.max(floatCount, uploadBuffer.capacity() * 2));
+        }
+        uploadBuffer.clear();
+        uploadBuffer.put(vertices, 0, floatCount);
+        uploadBuffer.flip();
+
+        glPushMatrix();
+        glEnable(GL_TEXTURE_2D);
+        glBindTexture(GL_TEXTURE_2D, textureID);
+        glEnable(GL_BLEND);
+        glBlendFunc(blendModeSRC, blendModeDEST);
+
+        glEnableClientState(GL_VERTEX_ARRAY);
+        glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+        glEnableClientState(GL_COLOR_ARRAY);
+
+        uploadBuffer.position(0);
+        glVertexPointer(2, STRIDE, uploadBuffer);
+        uploadBuffer.position(2);
+        glTexCoordPointer(2, STRIDE, uploadBuffer);
+        uploadBuffer.position(4);
+        glColorPointer(4, STRIDE, uploadBuffer);
+
+        glDrawArrays(GL_QUADS, 0, getVertexCount());
+
+        glDisableClientState(GL_COLOR_ARRAY);
+        glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+        glDisableClientState(GL_VERTEX_ARRAY);
+        glPopMatrix();
+    }
+
+    //Draws every quad in the batch through a glBegin/glEnd block, the way trails were originally rendered
+    public void drawImmediate() {
+        if (floatCount == 0) {
+            return;
+        }
+
+        glPushMatrix();
+        glEnable(GL_TEXTURE_2D);
+        glBindTexture(GL_TEXTURE_2D, textureID);
+        glEnable(GL_BLEND);
+        glBlendFunc(blendModeSRC, blendModeDEST);
+        glBegin(GL_QUADS);
+        for (int i = 0; i < floatCount; i += FLOATS_PER_VERTEX) {
+            glColor4f(vertices[i + 4], vertices[i + 5], vertices[i + 6], vertices[i + 7]);
+            glTexCoord2f(vertices[i + 2], vertices[i + 3]);
+            glVertex2f(vertices[i], vertices[i + 1]);
+        }
+        glEnd();
+        glPopMatrix();
+    }
+}
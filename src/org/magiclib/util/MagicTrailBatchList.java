@@ -0,0 +1,62 @@
+package org.magiclib.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This file isn't meant to be used directly; use the MagicTrailPlugin to actually do anything properly.
+ * <p>
+ * The batches filled in one frame, one per texture and blend mode. Trails whose texture is in a
+ * {@link MagicTrailAtlas} go in their atlas' batch. Batches are recycled between frames, so their vertex arrays don't
+ * have to be reallocated.
+ */
+public class MagicTrailBatchList {
+    private final List<MagicTrailBatch> activeBatches = new ArrayList<>();
+    private final List<MagicTrailBatch> idleBatches = new ArrayList<>();
+
+    /**
+     * Finds the batch a trail should be built into, and maps the batch's U coordinates to the trail's texture.
+     * Only valid until the next call, since the next trail may use a different part of the same atlas.
+     */
+    public MagicTrailBatch getBatch(int textureID, int blendModeSRC, int blendModeDEST) {
+        MagicTrailAtlas.Region region = MagicTrailAtlas.getRegion(textureID);
+        MagicTrailBatch batch = findBatch(region == null ? textureID : region.getAtlasTextureID(), blendModeSRC, blendModeDEST);
+        if (region == null) {
+            batch.setURange(0f, 1f);
+        } else {
+            batch.setURange(region.getU0(), region.getU1());
+        }
+        return batch;
+    }
+
+    private MagicTrailBatch findBatch(int textureID, int blendModeSRC, int blendModeDEST) {
+        for (int i = 0; i < activeBatches.size(); i++) {
+            MagicTrailBatch batch = activeBatches.get(i);
+            if (batch.matches(textureID, blendModeSRC, blendModeDEST)) {
+                return batch;
+            }
+        }
+        MagicTrailBatch batch = idleBatches.isEmpty() ? new MagicTrailBatch() : idleBatches.remove(idleBatches.size() - 1);
+        batch.setKey(textureID, blendModeSRC, blendModeDEST);
+        activeBatches.add(batch);
+        return batch;
+    }
+
+    public int size() {
+        return activeBatches.size();
+    }
+
+    public MagicTrailBatch get(int index) {
+        return activeBatches.get(index);
+    }
+
+    //Empties every batch and keeps them for reuse
+    public void clear() {
+        for (int i = 0; i < activeBatches.size(); i++) {
+            MagicTrailBatch batch = activeBatches.get(i);
+            batch.clear();
+            idleBatches.add(batch);
+        }
+        activeBatches.clear();
+    }
+}
@@ -0,0 +1,112 @@
+package org.magiclib.util;
+
+/**
+ * This file isn't meant to be used directly; use the MagicTrailPlugin to actually do anything properly.
+ * <p>
+ * Lookup table for the size pulse of a trail segment, the one part of its lifetime that isn't a plain linear slide or
+ * a piecewise linear fade. The pulse only depends on lifetime progress and pulse count, so every segment with the same
+ * pulse count shares one curve, and ticking a segment is reduced to a table read and linear interpolation.
+ * <p>
+ * The table is indexed by lifetime progress, from 0 (just spawned) to 1 (expired). It holds at least RESOLUTION
+ * samples, and SAMPLES_PER_PULSE per pulse, so its error doesn't grow with the pulse count; above MAX_SAMPLES, the
+ * exact formula is used instead. Segments without a pulse share a single curve with no table at all.
+ */
+public final class MagicTrailCurve {
+    public static final int RESOLUTION = 256;
+    public static final int SAMPLES_PER_PULSE = 128;
+    public static final int MAX_SAMPLES = 8192;
+
+    //Shared by every segment that doesn't pulse
+    private static final MagicTrailCurve NO_PULSE = new MagicTrailCurve(0f);
+
+    //Small set-associative cache, so segments spawned with the same pulse count don't each build their own table: each
+    //pulse count maps to a set of CACHE_WAYS curves, most recently used first, so colliding counts don't evict each other
+    private static final int CACHE_SET_BITS = 4;
+    private static final int CACHE_WAYS = 4;
+    private static final MagicTrailCurve[] CACHE = new MagicTrailCurve[(1 << CACHE_SET_BITS) * CACHE_WAYS];
+
+    private final float sizePulseCount;
+
+    //Pulse as a fraction of the segment's pulse width, by lifetime progress; null if there is no pulse, or if it is
+    //computed exactly instead
+    final float[] pulse;
+    private final int samples;
+
+    private MagicTrailCurve(float sizePulseCount) {
+        this.sizePulseCount = sizePulseCount;
+
+        int wanted = Math.max(RESOLUTION, (int) Math.ceil(sizePulseCount) * SAMPLES_PER_PULSE);
+        if (sizePulseCount == 0f || wanted > MAX_SAMPLES) {
+            samples = 0;
+            pulse = null;
+        } else {
+            samples = wanted;
+            pulse = new float[samples + 1];
+            for (int i = 0; i <= samples; i++) {
+                pulse[i] = computePulse((float) i / samples, sizePulseCount);
+            }
+        }
+    }
+
+    /**
+     * Gets the curve for a pulse count, reusing a previously built one when possible. Segments without a pulse all get
+     * the same curve, which has no table.
+     */
+    public static MagicTrailCurve get(float sizePulseCount) {
+        if (sizePulseCount == 0f) {
+            return NO_PULSE;
+        }
+
+        //Whole pulse counts only differ in their float's top bits, so those are mixed into the set index
+        int set = ((Float.floatToIntBits(sizePulseCount) * 0x9E3779B9) >>> (32 - CACHE_SET_BITS)) * CACHE_WAYS;
+
+        //Look through the set; whatever is found, or built, moves to the front of it
+        int way = 0;
+        MagicTrailCurve curve = null;
+        for (; way < CACHE_WAYS; way++) {
+            MagicTrailCurve cached = CACHE[set + way];
+            if (cached != null && cached.sizePulseCount == sizePulseCount) {
+                curve = cached;
+                break;
+            }
+        }
+        if (curve == null) {
+            curve = new MagicTrailCurve(sizePulseCount);
+            way = CACHE_WAYS - 1;
+        }
+        for (; way > 0; way--) {
+            CACHE[set + way] = CACHE[set + way - 1];
+        }
+        CACHE[set] = curve;
+        return curve;
+    }
+
+    public float getSizePulseCount() {
+        return sizePulseCount;
+    }
+
+    //Pulse multiplier at a given lifetime progress, from 0 to 1
+    public float getPulse(float progress) {
+        if (pulse == null) {
+            return sizePulseCount != 0f ? computePulse(progress, sizePulseCount) : 0f;
+        }
+        float position = Math.max(0f, Math.min(1f, progress)) * samples;
+        int index = Math.min((int) position, samples - 1);
+        float low = pulse[index];
+        return low + (pulse[index + 1] - low) * (position - index);
+    }
+
+    //The exact formula the pulse table is built from, as MagicTrailObject.tick computes it.
+    //The pulse is "smoothly" transitioned using MagicAnim.smooth(), and repeats itself sizePulseCount times.
+    //Counts the first "half" of each pulse as rising, the other as falling
+    private static float computePulse(float progress, float sizePulseCount) {
+        float thisFramePulseWidth = progress * sizePulseCount;
+        while (thisFramePulseWidth > 1f) {
+            thisFramePulseWidth--;
+        }
+        if (thisFramePulseWidth > 0.5f) {
+            thisFramePulseWidth = 1f - thisFramePulseWidth;
+        }
+        return MagicAnim.smooth(thisFramePulseWidth * 2f);
+    }
+}
@@ -0,0 +1,191 @@
+package org.magiclib.util;
+
+import java.util.Arrays;
+
+/**
+ * This file isn't meant to be used directly; use the MagicTrailPlugin to actually do anything properly.
+ * <p>
+ * A small open-addressing hash map keyed by primitive longs, so trail lookups don't have to box their IDs. Uses linear
+ * probing, and marks removed entries with tombstones so that removal is safe while iterating over the slots. Values
+ * may not be null.
+ * <p>
+ * Iterating: loop from 0 to {@link #getSlotCount()} and skip any slot where {@link #getValueAt(int)} returns null.
+ * {@link #removeAt(int)} may be called during that loop, but {@link #put(long, Object)} may not, since it can rehash.
+ */
+public class MagicTrailIdMap<V> {
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+    private static final byte REMOVED = 2;
+
+    private long[] keys;
+    private Object[] values;
+    private byte[] states;
+    private int mask;
+
+    //How many slots hold a value, and how many hold either a value or a tombstone
+    private int size = 0;
+    private int usedSlots = 0;
+
+    public MagicTrailIdMap() {
+        this(8);
+    }
+
+    public MagicTrailIdMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public V get(long key) {
+        int slot = findSlot(key);
+        return slot < 0 ? null : getValueAt(slot);
+    }
+
+    public boolean containsKey(long key) {
+        return findSlot(key) >= 0;
+    }
+
+    /**
+     * Adds or replaces the value stored for a key.
+     *
+     * @return The value previously stored for the key, or null if there wasn't one
+     */
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("MagicTrailIdMap does not support null values");
+        }
+
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            V previous = getValueAt(slot);
+            values[slot] = value;
+            return previous;
+        }
+
+        //Keeps at least half the table empty, so probe sequences stay short. Rehashing also clears out tombstones
+        if ((usedSlots + 1) * 2 > keys.length) {
+            rehash(capacityFor(size + 1));
+        }
+
+        //Reuses the first tombstone along the probe sequence if there is one
+        int index = hash(key) & mask;
+        while (states[index] == FULL) {
+            index = (index + 1) & mask;
+        }
+        if (states[index] == EMPTY) {
+            usedSlots++;
+        }
+        keys[index] = key;
+        values[index] = value;
+        states[index] = FULL;
+        size++;
+        return null;
+    }
+
+    /**
+     * @return The value that was stored for the key, or null if there wasn't one
+     */
+    public V remove(long key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = getValueAt(slot);
+        removeAt(slot);
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        Arrays.fill(states, EMPTY);
+        size = 0;
+        usedSlots = 0;
+    }
+
+    //Slot access, for iterating without an iterator object
+
+    public int getSlotCount() {
+        return keys.length;
+    }
+
+    public long getKeyAt(int slot) {
+        return keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getValueAt(int slot) {
+        return states[slot] == FULL ? (V) values[slot] : null;
+    }
+
+    public void removeAt(int slot) {
+        if (states[slot] != FULL) {
+            return;
+        }
+        values[slot] = null;
+        states[slot] = REMOVED;
+        size--;
+    }
+
+    private int findSlot(long key) {
+        int index = hash(key) & mask;
+        while (states[index] != EMPTY) {
+            if (states[index] == FULL && keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        byte[] oldStates = states;
+
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStates[i] != FULL) {
+                continue;
+            }
+            int index = hash(oldKeys[i]) & mask;
+            while (states[index] != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+            states[index] = FULL;
+            size++;
+            usedSlots++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        states = new byte[capacity];
+        mask = capacity - 1;
+        size = 0;
+        usedSlots = 0;
+    }
+
+    //Smallest power of two that keeps the given number of entries at or below a quarter of the table
+    private static int capacityFor(int entries) {
+        int capacity = 8;
+        while (capacity < entries * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    //Trail IDs are handed out sequentially, so the bits are mixed before masking
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,225 @@
+package org.magiclib.util;
+
+import com.fs.starfarer.api.Global;
+import org.apache.log4j.Logger;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GLContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.GL_FALSE;
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * This file isn't meant to be used directly; use the MagicTrailPlugin to actually do anything properly.
+ * <p>
+ * Shader-driven trail aging. Normally every segment's position, size, color and opacity is recomputed on the CPU and
+ * sent to the graphics card again each frame. With this, a segment's spawn-time values are uploaded once into a
+ * {@link MagicTrailShaderBuffer}, and the vertex shader works out where the segment is and how it looks from the time
+ * since it spawned, with the same lifetime curves as MagicTrailObject. The CPU only ages the trail to know when its
+ * oldest segments expire.
+ * <p>
+ * The shaders only ask for OpenGL 2.0 and GLSL 1.10. If they can't be compiled, or OpenGL 2.0 isn't there at all,
+ * trails silently keep using the normal path. They have not been run under Mesa's llvmpipe software renderer yet, so
+ * whether shader-aged trails can be tested without a graphics card is still an open question.
+ * <p>
+ * Only trails the shader can reproduce are aged this way, which is decided by their first segment: trails without
+ * angular velocity, animation, spline interpolation or forward propagation, and whose texture loops over a set length.
+ * The others, and every trail while this is off, use the normal path. Compared to it, shader-aged trails don't fade
+ * their two first and last segments, and their texture is laid out by the distance between segments at spawn rather
+ * than their current distance. Only active if "magicTrail_shaderAging" is enabled in modSettings.json.
+ */
+public final class MagicTrailShader {
+    private static final Logger LOG = Global.getLogger(MagicTrailShader.class);
+
+    private static boolean enabled = MagicSettings.getBoolean(MagicVariables.MAGICLIB_ID, "magicTrail_shaderAging");
+
+    //Whether the program was built yet, and whether that worked; it is only ever attempted once
+    private static boolean initialized = false;
+    private static boolean available = false;
+
+    private static int program = 0;
+    private static int timeUniform = -1;
+
+    //Buffers created since the last combat started; they are all freed when the next one starts
+    private static final List<MagicTrailShaderBuffer> liveBuffers = new ArrayList<>();
+
+    //Vertex attributes, in the order they are stored in a MagicTrailShaderBuffer
+    static final String[] ATTRIBUTES = {"a_spawn", "a_motion", "a_size", "a_time", "a_startColor", "a_endColor", "a_tex"};
+
+    //Every value the normal path ticks is derived from the time since spawn, the way MagicTrailTracker.tickSegment
+    //integrates it frame by frame. Segments past their lifetime, or linked to one that is, are collapsed to a point
+    private static final String VERTEX_SHADER = ""
+            + "#version 110\n"
+            + "uniform float u_time;\n"
+            + "attribute vec4 a_spawn;\n"       //spawn x, spawn y, direction x, direction y
+            + "attribute vec4 a_motion;\n"      //start speed, end speed, offset velocity x, offset velocity y
+            + "attribute vec4 a_size;\n"        //start size, end size, pulse width, pulse count
+            + "attribute vec4 a_time;\n"        //spawn time, in duration, main duration, out duration
+            + "attribute vec4 a_startColor;\n"  //start color, main opacity
+            + "attribute vec4 a_endColor;\n"    //end color, time the quad disappears
+            + "attribute vec4 a_tex;\n"         //side, u, v, scroll speed
+            + "varying vec4 v_color;\n"
+            + "varying vec2 v_texCoord;\n"
+            + "void main() {\n"
+            + "    float age = u_time - a_time.x;\n"
+            + "    float total = a_time.y + a_time.z + a_time.w;\n"
+            + "    if (u_time >= a_endColor.w || age >= total) {\n"
+            + "        gl_Position = vec4(2.0, 2.0, 2.0, 1.0);\n"
+            + "        v_color = vec4(0.0);\n"
+            + "        v_texCoord = vec2(0.0);\n"
+            + "        return;\n"
+            + "    }\n"
+            + "    age = max(age, 0.0);\n"
+            + "    float progress = age / total;\n"
+            + "    float pulse = progress * a_size.w;\n"
+            + "    pulse = pulse > 0.0 ? pulse - ceil(pulse) + 1.0 : 0.0;\n"
+            + "    pulse = pulse > 0.5 ? 1.0 - pulse : pulse;\n"
+            + "    pulse = 0.5 - cos(pulse * 6.2831853) * 0.5;\n"
+            + "    float radius = (mix(a_size.x, a_size.y, progress) + pulse * a_size.z) * 0.5;\n"
+            + "    float distance = a_motion.x * age + (a_motion.y - a_motion.x) * age * age / (2.0 * total);\n"
+            + "    vec2 center = a_spawn.xy + a_spawn.zw * distance + a_motion.zw * age;\n"
+            + "    vec2 position = center + vec2(a_spawn.w, -a_spawn.z) * radius * a_tex.x;\n"
+            + "    float opacity = 1.0;\n"
+            + "    if (age < a_time.y) {\n"
+            + "        opacity = age / a_time.y;\n"
+            + "    } else if (age > a_time.y + a_time.z) {\n"
+            + "        opacity = 1.0 - (age - a_time.y - a_time.z) / max(a_time.w, 0.0001);\n"
+            + "    }\n"
+            + "    v_color = vec4(mix(a_startColor.rgb, a_endColor.rgb, progress), clamp(a_startColor.a * opacity, 0.0, 1.0));\n"
+            + "    v_texCoord = vec2(a_tex.y, a_tex.z - u_time * a_tex.w / 1000.0);\n"
+            + "    gl_Position = gl_ModelViewProjectionMatrix * vec4(position, 0.0, 1.0);\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER = ""
+            + "#version 110\n"
+            + "uniform sampler2D u_texture;\n"
+            + "varying vec4 v_color;\n"
+            + "varying vec2 v_texCoord;\n"
+            + "void main() {\n"
+            + "    gl_FragColor = texture2D(u_texture, v_texCoord) * v_color;\n"
+            + "}\n";
+
+    private MagicTrailShader() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns shader aging on or off for trails started from now on; trails already being aged by the shader finish
+     * that way. Defaults to "magicTrail_shaderAging" in modSettings.json.
+     */
+    public static void setEnabled(boolean enabled) {
+        MagicTrailShader.enabled = enabled;
+    }
+
+    /**
+     * @return Whether new trails should be aged by the shader: it is enabled, and the shader program could be built
+     */
+    public static boolean isActive() {
+        return enabled && available;
+    }
+
+    /**
+     * Frees the previous combat's buffers, and builds the shader program the first time it is needed. Has to be
+     * called from the main thread; the MagicTrailPlugin does so when a combat starts.
+     */
+    public static void init() {
+        for (MagicTrailShaderBuffer buffer : liveBuffers) {
+            buffer.delete();
+        }
+        liveBuffers.clear();
+
+        if (!enabled || initialized) {
+            return;
+        }
+        initialized = true;
+        try {
+            ContextCapabilities capabilities = GLContext.getCapabilities();
+            if (capabilities == null || !capabilities.OpenGL20) {
+                LOG.warn("OpenGL 2.0 is not supported, trails won't be aged by shader");
+                return;
+            }
+            program = createProgram();
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to set up the trail shader, trails won't be aged by shader", e);
+            program = 0;
+        }
+        available = program != 0;
+        if (available) {
+            timeUniform = glGetUniformLocation(program, "u_time");
+            glUseProgram(program);
+            glUniform1i(glGetUniformLocation(program, "u_texture"), 0);
+            glUseProgram(0);
+            if (MagicVariables.verbose) {
+                LOG.info("Trail shader ready");
+            }
+        }
+    }
+
+    //Compiles and links both shaders, binding each attribute to its index in the buffer. Returns 0 on failure
+    private static int createProgram() {
+        int vertexShader = compileShader(GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fragmentShader = compileShader(GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        if (vertexShader == 0 || fragmentShader == 0) {
+            glDeleteShader(vertexShader);
+            glDeleteShader(fragmentShader);
+            return 0;
+        }
+
+        int newProgram = glCreateProgram();
+        glAttachShader(newProgram, vertexShader);
+        glAttachShader(newProgram, fragmentShader);
+        for (int i = 0; i < ATTRIBUTES.length; i++) {
+            glBindAttribLocation(newProgram, i, ATTRIBUTES[i]);
+        }
+        glLinkProgram(newProgram);
+        glDetachShader(newProgram, vertexShader);
+        glDetachShader(newProgram, fragmentShader);
+        glDeleteShader(vertexShader);
+        glDeleteShader(fragmentShader);
+
+        if (glGetProgrami(newProgram, GL_LINK_STATUS) == GL_FALSE) {
+            LOG.warn("Failed to link the trail shader, trails won't be aged by shader: "
+                    + glGetProgramInfoLog(newProgram, glGetProgrami(newProgram, GL_INFO_LOG_LENGTH)));
+            glDeleteProgram(newProgram);
+            return 0;
+        }
+        return newProgram;
+    }
+
+    private static int compileShader(int type, String source) {
+        int shader = glCreateShader(type);
+        glShaderSource(shader, source);
+        glCompileShader(shader);
+        if (glGetShaderi(shader, GL_COMPILE_STATUS) == GL_FALSE) {
+            LOG.warn("Failed to compile the trail shader, trails won't be aged by shader: "
+                    + glGetShaderInfoLog(shader, glGetShaderi(shader, GL_INFO_LOG_LENGTH)));
+            glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+
+    /**
+     * Creates a new, empty buffer for one texture and blend mode. It is freed when the next combat starts.
+     */
+    public static MagicTrailShaderBuffer createBuffer(int textureID, int blendModeSRC, int blendModeDEST) {
+        MagicTrailShaderBuffer buffer = new MagicTrailShaderBuffer(textureID, blendModeSRC, blendModeDEST);
+        liveBuffers.add(buffer);
+        return buffer;
+    }
+
+    //Switches to the shader program, set to the given time in seconds
+    static void begin(float time) {
+        glUseProgram(program);
+        glUniform1f(timeUniform, time);
+    }
+
+    static void end() {
+        glUseProgram(0);
+    }
+}
@@ -0,0 +1,207 @@
+package org.magiclib.util;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * This file isn't meant to be used directly; use the MagicTrailPlugin to actually do anything properly.
+ * <p>
+ * Persistent vertex buffer for shader-aged trails sharing a texture and blend mode; see {@link MagicTrailShader}. Each
+ * quad between two segments is written once, when the newer segment appears, into a free quad slot, and stays there
+ * until it expires; the vertex shader hides expired quads, and their slots are reused later on. Drawing the buffer is a
+ * single call covering every slot in use, plus an upload of whatever slots changed since the last draw.
+ * <p>
+ * Each vertex holds {@link #FLOATS_PER_VERTEX} floats, as seven groups of four matching {@link MagicTrailShader}'s
+ * attributes: spawn x, spawn y, direction x, direction y; start speed, end speed, offset velocity x and y; start size,
+ * end size, pulse width, pulse count; spawn time, in, main and out duration; start red, green, blue, main opacity; end
+ * red, green, blue, time the quad disappears; side (1 or -1), u, v, scroll speed.
+ */
+public class MagicTrailShaderBuffer {
+    public static final int FLOATS_PER_VERTEX = 28;
+    public static final int FLOATS_PER_QUAD = FLOATS_PER_VERTEX * 4;
+    private static final int STRIDE = FLOATS_PER_VERTEX * 4;
+
+    //Where u is stored within a vertex, and how often expired slots are looked for, in seconds
+    private static final int U_OFFSET = 25;
+    private static final float COLLECT_INTERVAL = 1f;
+
+    private final int textureID;
+    private final int blendModeSRC;
+    private final int blendModeDEST;
+
+    //The part of the texture's width that U coordinates from 0 to 1 are mapped to; all of it, unless it's an atlas
+    private float uOffset = 0f;
+    private float uScale = 1f;
+
+    //Copy of the buffer's contents, kept so the buffer can grow without reading it back, and the time each slot's
+    //quad disappears. Slots below "usedSlots" are drawn; free ones among them are kept on a stack
+    private float[] data = new float[FLOATS_PER_QUAD * 64];
+    private float[] endTimes = new float[64];
+    private int[] freeSlots = new int[64];
+    private int freeCount = 0;
+    private int usedSlots = 0;
+    private float lastCollect = 0f;
+
+    //OpenGL side of the buffer, how many slots it has room for, and which slots changed since it was last uploaded
+    private int bufferID = 0;
+    private int bufferCapacity = 0;
+    private int dirtyStart = Integer.MAX_VALUE;
+    private int dirtyEnd = 0;
+
+    //Direct buffer for uploads. Buffers are only ever drawn one at a time on the render thread, so they all share it
+    private static FloatBuffer uploadBuffer = BufferUtils.createFloatBuffer(FLOATS_PER_QUAD * 64);
+
+    MagicTrailShaderBuffer(int textureID, int blendModeSRC, int blendModeDEST) {
+        this.textureID = textureID;
+        this.blendModeSRC = blendModeSRC;
+        this.blendModeDEST = blendModeDEST;
+    }
+
+    public boolean matches(int textureID, int blendModeSRC, int blendModeDEST) {
+        return this.textureID == textureID && this.blendModeSRC == blendModeSRC && this.blendModeDEST == blendModeDEST;
+    }
+
+    //Sets the part of the texture that quads added from now on use, from its U coordinate u0 to u1
+    public void setURange(float u0, float u1) {
+        this.uOffset = u0;
+        this.uScale = u1 - u0;
+    }
+
+    /**
+     * Stores a quad until it disappears.
+     *
+     * @param quad    The quad's four vertices, laid out as described in the class documentation, with u from 0 to 1
+     * @param endTime When the quad disappears, on the same clock as its spawn times
+     * @param time    The current time, on that same clock
+     */
+    public void addQuad(float[] quad, float endTime, float time) {
+        if (freeCount == 0 && time - lastCollect >= COLLECT_INTERVAL) {
+            collect(time);
+        }
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (usedSlots == endTimes.length) {
+                grow();
+            }
+            slot = usedSlots++;
+        }
+
+        int offset = slot * FLOATS_PER_QUAD;
+        System.arraycopy(quad, 0, data, offset, FLOATS_PER_QUAD);
+        for (int i = U_OFFSET; i < FLOATS_PER_QUAD; i += FLOATS_PER_VERTEX) {
+            data[offset + i] = uOffset + quad[i] * uScale;
+        }
+        endTimes[slot] = endTime;
+        dirtyStart = Math.min(dirtyStart, slot);
+        dirtyEnd = Math.max(dirtyEnd, slot + 1);
+    }
+
+    //Frees the slots of every quad that disappeared by now, and stops drawing free slots at the end
+    private void collect(float time) {
+        lastCollect = time;
+        freeCount = 0;
+        while (usedSlots > 0 && endTimes[usedSlots - 1] <= time) {
+            usedSlots--;
+        }
+        for (int slot = 0; slot < usedSlots; slot++) {
+            if (endTimes[slot] <= time) {
+                freeSlots[freeCount++] = slot;
+            }
+        }
+    }
+
+    private void grow() {
+        int newSlots = endTimes.length * 2;
+        float[] newData = new float[newSlots * FLOATS_PER_QUAD];
+        System.arraycopy(data, 0, newData, 0, data.length);
+        data = newData;
+        float[] newEndTimes = new float[newSlots];
+        System.arraycopy(endTimes, 0, newEndTimes, 0, endTimes.length);
+        endTimes = newEndTimes;
+        freeSlots = new int[newSlots];
+    }
+
+    public int getVertexCount() {
+        return usedSlots * 4;
+    }
+
+    public boolean isEmpty() {
+        return usedSlots == 0;
+    }
+
+    /**
+     * Uploads the quads added since the last draw, then draws every quad in use with the trail shader. Has to be
+     * called from the render thread.
+     *
+     * @param time The current time, on the same clock as the quads' spawn times
+     */
+    public void draw(float time) {
+        if (time - lastCollect >= COLLECT_INTERVAL) {
+            collect(time);
+        }
+        if (usedSlots == 0) {
+            return;
+        }
+
+        if (bufferID == 0) {
+            bufferID = glGenBuffers();
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, bufferID);
+        if (bufferCapacity < endTimes.length) {
+            //The buffer grew: everything is sent again
+            bufferCapacity = endTimes.length;
+            glBufferData(GL_ARRAY_BUFFER, (long) bufferCapacity * FLOATS_PER_QUAD * 4, GL_DYNAMIC_DRAW);
+            dirtyStart = 0;
+            dirtyEnd = usedSlots;
+        }
+        if (dirtyStart < dirtyEnd) {
+            int floatCount = (dirtyEnd - dirtyStart) * FLOATS_PER_QUAD;
+            if (uploadBuffer.capacity() < floatCount) {
+                uploadBuffer = BufferUtils.createFloatBuffer(Math.max(floatCount, uploadBuffer.capacity() * 2));
+            }
+            uploadBuffer.clear();
+            uploadBuffer.put(data, dirtyStart * FLOATS_PER_QUAD, floatCount);
+            uploadBuffer.flip();
+            glBufferSubData(GL_ARRAY_BUFFER, (long) dirtyStart * FLOATS_PER_QUAD * 4, uploadBuffer);
+            dirtyStart = Integer.MAX_VALUE;
+            dirtyEnd = 0;
+        }
+
+        glPushMatrix();
+        glEnable(GL_TEXTURE_2D);
+        glBindTexture(GL_TEXTURE_2D, textureID);
+        glEnable(GL_BLEND);
+        glBlendFunc(blendModeSRC, blendModeDEST);
+
+        MagicTrailShader.begin(time);
+        for (int i = 0; i < MagicTrailShader.ATTRIBUTES.length; i++) {
+            glEnableVertexAttribArray(i);
+            glVertexAttribPointer(i, 4, GL_FLOAT, false, STRIDE, i * 16L);
+        }
+
+        glDrawArrays(GL_QUADS, 0, getVertexCount());
+
+        for (int i = 0; i < MagicTrailShader.ATTRIBUTES.length; i++) {
+            glDisableVertexAttribArray(i);
+        }
+        MagicTrailShader.end();
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glPopMatrix();
+    }
+
+    //Frees the OpenGL buffer; the MagicTrailShader does this when a new combat starts
+    void delete() {
+        if (bufferID != 0) {
+            glDeleteBuffers(bufferID);
+            bufferID = 0;
+        }
+        bufferCapacity = 0;
+    }
+}
@@ -0,0 +1,228 @@
+package org.magiclib.util;
+
+import com.fs.starfarer.api.combat.CombatEngineLayers;
+import com.fs.starfarer.api.graphics.SpriteAPI;
+import org.magiclib.plugins.MagicTrailPlugin;
+
+import java.awt.*;
+
+/**
+ * Every setting of a trail except where and when its pieces spawn, bundled so it can be defined once and reused for
+ * every trail piece. Create one with {@link MagicTrailStyleBuilder}, then spawn pieces with
+ * {@link MagicTrailPlugin#addTrailMemberFromStyle}, which only needs a position, an angle and an ID.
+ * <p>
+ * Styles are immutable, so a single style can safely be shared by every projectile of a weapon.
+ * <p>
+ * Usage:
+ * <pre>
+ * private static final MagicTrailStyle STYLE = new MagicTrailStyleBuilder(Global.getSettings().getSprite("fx", "trails_trail_smooth"))
+ *             .setSize(12f, 4f)
+ *             .setColor(new Color(255, 150, 50), new Color(255, 50, 0))
+ *             .setDuration(0f, 0.1f, 0.4f)
+ *             .setAdditive(true)
+ *             .create();
+ *
+ * MagicTrailPlugin.addTrailMemberFromStyle(proj, trailID, STYLE, proj.getLocation(), proj.getFacing() + 180f);
+ * </pre>
+ *
+ * @since 1.4.6
+ */
+public final class MagicTrailStyle {
+    private final SpriteAPI sprite;
+    private final float startSpeed;
+    private final float endSpeed;
+    private final float startAngularVelocity;
+    private final float endAngularVelocity;
+    private final float startSize;
+    private final float endSize;
+    private final Color startColor;
+    private final Color endColor;
+    private final int startColorRGB;
+    private final int endColorRGB;
+    private final float opacity;
+    private final float inDuration;
+    private final float mainDuration;
+    private final float outDuration;
+    private final int blendModeSRC;
+    private final int blendModeDEST;
+    private final float textureLoopLength;
+    private final float textureScrollSpeed;
+    private final float textureOffset;
+    private final float offsetVelocityX;
+    private final float offsetVelocityY;
+    private final float sizePulseWidth;
+    private final int sizePulseCount;
+    private final boolean forwardPropagation;
+    private final boolean splineInterpolation;
+    private final CombatEngineLayers layer;
+    private final float frameOffsetMult;
+    private final float priority;
+    private final MagicTrailCurve curve;
+
+    MagicTrailStyle(MagicTrailStyleBuilder builder) {
+        this.sprite = builder.sprite;
+        this.startSpeed = builder.startSpeed;
+        this.endSpeed = builder.endSpeed;
+        this.startAngularVelocity = builder.startAngularVelocity;
+        this.endAngularVelocity = builder.endAngularVelocity;
+        this.startSize = builder.startSize;
+        this.endSize = builder.endSize;
+        this.startColor = builder.startColor;
+        this.endColor = builder.endColor;
+        this.startColorRGB = builder.startColor.getRGB();
+        this.endColorRGB = builder.endColor.getRGB();
+        this.opacity = builder.opacity;
+        this.inDuration = builder.inDuration;
+        this.mainDuration = builder.mainDuration;
+        this.outDuration = builder.outDuration;
+        this.blendModeSRC = builder.blendModeSRC;
+        this.blendModeDEST = builder.blendModeDEST;
+        this.textureLoopLength = builder.textureLoopLength;
+        this.textureScrollSpeed = builder.textureScrollSpeed;
+        this.textureOffset = builder.textureOffset;
+        this.offsetVelocityX = builder.offsetVelocityX;
+        this.offsetVelocityY = builder.offsetVelocityY;
+        this.sizePulseWidth = builder.sizePulseWidth;
+        this.sizePulseCount = builder.sizePulseCount;
+        this.forwardPropagation = builder.forwardPropagation;
+        this.splineInterpolation = builder.splineInterpolation;
+        this.layer = builder.layer;
+        this.frameOffsetMult = builder.frameOffsetMult;
+        this.priority = builder.priority;
+
+        //The pulse table is looked up once here, rather than for every spawned piece
+        this.curve = MagicTrailCurve.get(sizePulseCount);
+    }
+
+    public SpriteAPI getSprite() {
+        return sprite;
+    }
+
+    public float getStartSpeed() {
+        return startSpeed;
+    }
+
+    public float getEndSpeed() {
+        return endSpeed;
+    }
+
+    public float getStartAngularVelocity() {
+        return startAngularVelocity;
+    }
+
+    public float getEndAngularVelocity() {
+        return endAngularVelocity;
+    }
+
+    public float getStartSize() {
+        return startSize;
+    }
+
+    public float getEndSize() {
+        return endSize;
+    }
+
+    public Color getStartColor() {
+        return startColor;
+    }
+
+    public Color getEndColor() {
+        return endColor;
+    }
+
+    /**
+     * @return The start color packed as by {@link Color#getRGB()}.
+     */
+    public int getStartColorRGB() {
+        return startColorRGB;
+    }
+
+    /**
+     * @return The end color packed as by {@link Color#getRGB()}.
+     */
+    public int getEndColorRGB() {
+        return endColorRGB;
+    }
+
+    public float getOpacity() {
+        return opacity;
+    }
+
+    public float getInDuration() {
+        return inDuration;
+    }
+
+    public float getMainDuration() {
+        return mainDuration;
+    }
+
+    public float getOutDuration() {
+        return outDuration;
+    }
+
+    public int getBlendModeSRC() {
+        return blendModeSRC;
+    }
+
+    public int getBlendModeDEST() {
+        return blendModeDEST;
+    }
+
+    public float getTextureLoopLength() {
+        return textureLoopLength;
+    }
+
+    public float getTextureScrollSpeed() {
+        return textureScrollSpeed;
+    }
+
+    public float getTextureOffset() {
+        return textureOffset;
+    }
+
+    public float getOffsetVelocityX() {
+        return offsetVelocityX;
+    }
+
+    public float getOffsetVelocityY() {
+        return offsetVelocityY;
+    }
+
+    public float getSizePulseWidth() {
+        return sizePulseWidth;
+    }
+
+    public int getSizePulseCount() {
+        return sizePulseCount;
+    }
+
+    public boolean usesForwardPropagation() {
+        return forwardPropagation;
+    }
+
+    public boolean usesSplineInterpolation() {
+        return splineInterpolation;
+    }
+
+    public CombatEngineLayers getLayer() {
+        return layer;
+    }
+
+    public float getFrameOffsetMult() {
+        return frameOffsetMult;
+    }
+
+    /**
+     * @return How important this style's trails are to keep when the trail segment budget runs out.
+     */
+    public float getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return The precomputed pulse table for this style's pulse count.
+     */
+    public MagicTrailCurve getCurve() {
+        return curve;
+    }
+}
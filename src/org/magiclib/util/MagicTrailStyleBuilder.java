@@ -0,0 +1,216 @@
+package org.magiclib.util;
+
+import com.fs.starfarer.api.combat.CombatEngineLayers;
+import com.fs.starfarer.api.graphics.SpriteAPI;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.util.vector.Vector2f;
+
+import java.awt.*;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Creates a {@link MagicTrailStyle}. The settings mean the same as the parameters of
+ * {@link org.magiclib.plugins.MagicTrailPlugin#addTrailMemberAdvanced}; see there for the details.
+ * <p>
+ * Not all fields are required. Each `set` method has a comment showing the default value for if it is not used.
+ *
+ * @since 1.4.6
+ */
+public class MagicTrailStyleBuilder {
+    @NotNull SpriteAPI sprite;
+    float startSpeed = 0f;
+    float endSpeed = 0f;
+    float startAngularVelocity = 0f;
+    float endAngularVelocity = 0f;
+    float startSize = 10f;
+    float endSize = 10f;
+    @NotNull Color startColor = Color.WHITE;
+    @NotNull Color endColor = Color.WHITE;
+    float opacity = 1f;
+    float inDuration = 0f;
+    float mainDuration = 0f;
+    float outDuration = 1f;
+    int blendModeSRC = GL_SRC_ALPHA;
+    int blendModeDEST = GL_ONE_MINUS_SRC_ALPHA;
+    float textureLoopLength = -1f;
+    float textureScrollSpeed = 0f;
+    float textureOffset = 0f;
+    float offsetVelocityX = 0f;
+    float offsetVelocityY = 0f;
+    float sizePulseWidth = 0f;
+    int sizePulseCount = 0;
+    boolean forwardPropagation = false;
+    boolean splineInterpolation = false;
+    @NotNull CombatEngineLayers layer = CombatEngineLayers.CONTRAILS_LAYER;
+    float frameOffsetMult = 1f;
+    float priority = 1f;
+
+    public MagicTrailStyleBuilder(@NotNull SpriteAPI sprite) {
+        this.sprite = sprite;
+    }
+
+    public MagicTrailStyle create() {
+        return new MagicTrailStyle(this);
+    }
+
+    public MagicTrailStyleBuilder setSprite(@NotNull SpriteAPI sprite) {
+        this.sprite = sprite;
+        return this;
+    }
+
+    /**
+     * Default: 0, 0.
+     */
+    public MagicTrailStyleBuilder setSpeed(float startSpeed, float endSpeed) {
+        this.startSpeed = startSpeed;
+        this.endSpeed = endSpeed;
+        return this;
+    }
+
+    /**
+     * Default: 0, 0.
+     */
+    public MagicTrailStyleBuilder setAngularVelocity(float startAngularVelocity, float endAngularVelocity) {
+        this.startAngularVelocity = startAngularVelocity;
+        this.endAngularVelocity = endAngularVelocity;
+        return this;
+    }
+
+    /**
+     * Default: 10, 10.
+     */
+    public MagicTrailStyleBuilder setSize(float startSize, float endSize) {
+        this.startSize = startSize;
+        this.endSize = endSize;
+        return this;
+    }
+
+    /**
+     * Alpha is ignored; use {@link #setOpacity(float)} instead.
+     * <p>
+     * Default: white, white.
+     */
+    public MagicTrailStyleBuilder setColor(@NotNull Color startColor, @NotNull Color endColor) {
+        this.startColor = startColor;
+        this.endColor = endColor;
+        return this;
+    }
+
+    /**
+     * Default: 1.
+     */
+    public MagicTrailStyleBuilder setOpacity(float opacity) {
+        this.opacity = opacity;
+        return this;
+    }
+
+    /**
+     * Default: 0, 0, 1.
+     */
+    public MagicTrailStyleBuilder setDuration(float inDuration, float mainDuration, float outDuration) {
+        this.inDuration = inDuration;
+        this.mainDuration = mainDuration;
+        this.outDuration = outDuration;
+        return this;
+    }
+
+    /**
+     * Default: GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA.
+     */
+    public MagicTrailStyleBuilder setBlendMode(int blendModeSRC, int blendModeDEST) {
+        this.blendModeSRC = blendModeSRC;
+        this.blendModeDEST = blendModeDEST;
+        return this;
+    }
+
+    /**
+     * Shortcut for {@link #setBlendMode(int, int)} with additive or normal alpha blending.
+     * <p>
+     * Default: false.
+     */
+    public MagicTrailStyleBuilder setAdditive(boolean additive) {
+        this.blendModeSRC = GL_SRC_ALPHA;
+        this.blendModeDEST = additive ? GL_ONE : GL_ONE_MINUS_SRC_ALPHA;
+        return this;
+    }
+
+    /**
+     * Default: -1 (the texture is stretched to the trail's width instead of looping), 0, 0.
+     *
+     * @param textureOffset Use -1 for a fixed random offset per trail.
+     */
+    public MagicTrailStyleBuilder setTexture(float textureLoopLength, float textureScrollSpeed, float textureOffset) {
+        this.textureLoopLength = textureLoopLength;
+        this.textureScrollSpeed = textureScrollSpeed;
+        this.textureOffset = textureOffset;
+        return this;
+    }
+
+    /**
+     * The vector is copied, so changing it afterwards does not affect the style.
+     * <p>
+     * Default: no offset velocity.
+     */
+    public MagicTrailStyleBuilder setOffsetVelocity(@Nullable Vector2f offsetVelocity) {
+        this.offsetVelocityX = offsetVelocity == null ? 0f : offsetVelocity.x;
+        this.offsetVelocityY = offsetVelocity == null ? 0f : offsetVelocity.y;
+        return this;
+    }
+
+    /**
+     * Default: 0, 0.
+     */
+    public MagicTrailStyleBuilder setSizePulse(float sizePulseWidth, int sizePulseCount) {
+        this.sizePulseWidth = sizePulseWidth;
+        this.sizePulseCount = sizePulseCount;
+        return this;
+    }
+
+    /**
+     * Default: false.
+     */
+    public MagicTrailStyleBuilder setForwardPropagation(boolean forwardPropagation) {
+        this.forwardPropagation = forwardPropagation;
+        return this;
+    }
+
+    /**
+     * Draws the trail as a smooth curve through its pieces instead of straight lines between them. Curved trails then
+     * look just as smooth with pieces spawned a lot less often, e.g. every few frames instead of every frame.
+     * <p>
+     * Default: false.
+     */
+    public MagicTrailStyleBuilder setSplineInterpolation(boolean splineInterpolation) {
+        this.splineInterpolation = splineInterpolation;
+        return this;
+    }
+
+    /**
+     * Default: CONTRAILS_LAYER.
+     */
+    public MagicTrailStyleBuilder setLayer(@NotNull CombatEngineLayers layer) {
+        this.layer = layer;
+        return this;
+    }
+
+    /**
+     * Default: 1.
+     */
+    public MagicTrailStyleBuilder setFrameOffsetMult(float frameOffsetMult) {
+        this.frameOffsetMult = frameOffsetMult;
+        return this;
+    }
+
+    /**
+     * How important trails of this style are to keep when the trail segment budget runs out. Trails with a lower
+     * priority are thinned out first; 0 sheds them before anything else.
+     * <p>
+     * Default: 1.
+     */
+    public MagicTrailStyleBuilder setPriority(float priority) {
+        this.priority = priority;
+        return this;
+    }
+}
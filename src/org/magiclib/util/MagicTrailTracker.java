@@ -2,13 +2,8 @@
 package org.magiclib.util;
 
 import com.fs.starfarer.api.Global;
-import com.fs.starfarer.api.combat.CombatEngineAPI;
-import org.lazywizard.lazylib.MathUtils;
-import org.lwjgl.util.vector.Vector2f;
-
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import com.fs.starfarer.api.combat.ViewportAPI;
+import org.lazywizard.lazylib.FastTrig;
 
 import static org.lwjgl.opengl.GL11.*;
 
@@ -18,6 +13,9 @@ import static org.lwjgl.opengl.GL11.*;
  * <p>
  * This class handles each "segment" of a trail: each MagicTrailObject within the MagicTrailTracker is considered to be linked to the other objects.
  * To make a new "segment" of trail, unrelated to the others, you have to create a new Tracker. The trail is invisible until at least two objects are in it
+ * <p>
+ * Trail objects are not kept as-is: their values are copied into primitive arrays in a ring buffer, which keeps long
+ * trails cheap to tick and avoids holding one object per segment.
  *
  * @author Nicke535, Originem (optimization)
  */
@@ -29,12 +27,25 @@ public class MagicTrailTracker {
     //For legacy forward-propagating trail scrolling; causes some issues, but might remove stuttering when spawning trails slower than once-per-frame
     public boolean usesForwardPropagation = false;
 
+    //For spline trails: segments are treated as control points of a smooth curve rather than joined by straight quads,
+    //so trails can curve smoothly without a segment being spawned every frame
+    public boolean usesSplineInterpolation = false;
+
     public float textureOffset = -1;
 
     //For animated textures: the trail counts as animated only if isAnimated = true
     public boolean isAnimated = false;
     public int currentAnimRenderTexture = 0;
 
+    //For the segment budget: how many pieces in a row have been dropped to thin out this trail
+    public int thinnedSpawns = 0;
+
+    //For shader aging, chosen when the trail gets its first segment: whether the trail is aged by MagicTrailShader
+    //rather than ticked here, the serial of the latest segment whose quad was uploaded, and that segment's texture position
+    private boolean shaderAged = false;
+    private long uploadedSegments = 0;
+    private float shaderTexV = 0f;
+
     //If the tracker remain empty for 3 seconds, then expire
     private boolean isExpired = false;
     private float remainEmptyElapsed = 0f;
@@ -43,259 +54,818 @@ public class MagicTrailTracker {
         return isExpired;
     }
 
-    private List<MagicTrailObject> allTrailParts = new ArrayList<>();
-    private MagicTrailObject latestTrailObject;
+    //All segments of the trail, stored as parallel primitive arrays inside a ring buffer: the oldest segment lives at
+    //"head", and the most recent one "count - 1" slots after it. Capacity is always a power of two, so wrapping around
+    //is a simple mask. Expiring the oldest segments only moves the head forward
+    private int capacity = 0;
+    private int mask = 0;
+    private int head = 0;
+    private int count = 0;
+
+    //Non-varying segment values, set when the segment is added
+    private float[] inDuration;
+    private float[] mainDuration;
+    private float[] outDuration;
+    private float[] startSize;
+    private float[] endSize;
+    private float[] startAngleVelocity;
+    private float[] endAngleVelocity;
+    private float[] mainOpacity;
+    private float[] startSpeed;
+    private float[] endSpeed;
+    private int[] startColor;
+    private int[] endColor;
+    private float[] offsetVelocityX;
+    private float[] offsetVelocityY;
+    private float[] sizePulseWidth;
+    private int[] blendModeSRC;
+    private int[] blendModeDEST;
+    private float[] textureLoopLength;
+    private float[] segmentTextureOffset;
+    private MagicTrailCurve[] curve;
+
+    //Varying segment values, updated each tick
+    private float[] locationX;
+    private float[] locationY;
+    private float[] angle;
+    private float[] currentSize;
+    private float[] currentOpacity;
+    private int[] currentColor;
+    private float[] spentLifetime;
+
+    //Serial number of the most recently added segment, and of the one that was most recent the last time we rendered;
+    //used to scroll the texture back when a new segment appears, so the texture stays in place along the trail
+    private long addedSegments = 0;
+    private long latestRenderedSegment = -1;
+
+    //Culling: a box around the centers of every segment, refreshed each full tick and grown by new segments. While the
+    //renderer reports the trail as off-screen, ticks only age the trail ("pendingAge") without moving any segment; the
+    //box is then grown by how far a segment could have moved meanwhile, and the trail catches up once it is on-screen
+    //again. Segments added while the trail is behind skip the part of the catch-up from before they existed. Trails with
+    //a turning segment ("turning") are never only aged, since there is no cheap way to catch up on a curved path
+    private float boundsMinX = 0f;
+    private float boundsMinY = 0f;
+    private float boundsMaxX = 0f;
+    private float boundsMaxY = 0f;
+    private float maxHalfWidth = 0f;
+    private float maxSegmentSpeed = 0f;
+    private float boundsDrift = 0f;
+    private boolean culled = false;
+    private float pendingAge = 0f;
+    private float[] catchUpSkip;
+    private boolean turning = false;
+
+    //Segments ticked by more than this at once (catching up, or campaign trails aged in other locations) move in closed
+    //form if they don't turn, or in steps no longer than this if they do, instead of in one straight step
+    private static final float MAX_MOTION_STEP = 1f / 30f;
+
+    //Trackers being reset for reuse drop their arrays if they have grown past this many segments
+    private static final int MAX_RETAINED_CAPACITY = 256;
+
+    public MagicTrailTracker() {
+        allocate(16);
+    }
 
-    //Adds a new object to the trail, at the end (start visually) of our existing ones
+    //Adds a new object to the trail, at the end (start visually) of our existing ones. The object's values are copied
+    //into the tracker, so the object itself is not kept around
     public void addNewTrailObject(MagicTrailObject objectToAdd) {
-        allTrailParts.add(objectToAdd);
+        int slot = claimSlot();
+        inDuration[slot] = objectToAdd.inDuration;
+        mainDuration[slot] = objectToAdd.mainDuration;
+        outDuration[slot] = objectToAdd.outDuration;
+        startSize[slot] = objectToAdd.startSize;
+        endSize[slot] = objectToAdd.endSize;
+        startAngleVelocity[slot] = objectToAdd.startAngleVelocity;
+        endAngleVelocity[slot] = objectToAdd.endAngleVelocity;
+        mainOpacity[slot] = objectToAdd.mainOpacity;
+        startSpeed[slot] = objectToAdd.startSpeed;
+        endSpeed[slot] = objectToAdd.endSpeed;
+        startColor[slot] = objectToAdd.startColor.getRGB();
+        endColor[slot] = objectToAdd.endColor.getRGB();
+        offsetVelocityX[slot] = objectToAdd.offsetVelocity.x;
+        offsetVelocityY[slot] = objectToAdd.offsetVelocity.y;
+        sizePulseWidth[slot] = objectToAdd.sizePulseWidth;
+        blendModeSRC[slot] = objectToAdd.blendModeSRC;
+        blendModeDEST[slot] = objectToAdd.blendModeDEST;
+        textureLoopLength[slot] = objectToAdd.textureLoopLength;
+        segmentTextureOffset[slot] = objectToAdd.textureOffset;
+        curve[slot] = MagicTrailCurve.get(objectToAdd.sizePulseCount);
+
+        locationX[slot] = objectToAdd.currentLocation.x;
+        locationY[slot] = objectToAdd.currentLocation.y;
+        angle[slot] = objectToAdd.angle;
+        currentSize[slot] = objectToAdd.currentSize;
+        currentOpacity[slot] = objectToAdd.currentOpacity;
+        currentColor[slot] = objectToAdd.currentColor.getRGB();
+        spentLifetime[slot] = objectToAdd.spentLifetime;
+        catchUpSkip[slot] = pendingAge;
+        turning |= startAngleVelocity[slot] != 0f || endAngleVelocity[slot] != 0f;
+        includeInBounds(slot, count == 1);
+        if (count == 1) {
+            chooseAging(slot);
+        }
     }
 
-    //The heavy, main function: render the entire trail
-    public void renderTrail(int textureID) {
-        //First, clear all dead objects, as they can be a pain to calculate around
-//        clearAllDeadObjects();
+    //Adds a new segment at the end (start visually) of the trail, straight from its values. Does the same as
+    //addNewTrailObject, but without a MagicTrailObject in between: the segment simply reuses a free ring buffer slot,
+    //so spawning allocates nothing unless the ring has to grow. Colors are packed RGB, as given by Color.getRGB()
+    public void addNewTrailSegment(
+            float inDuration, float mainDuration, float outDuration,
+            float startSize, float endSize,
+            float startAngleVelocity, float endAngleVelocity,
+            float mainOpacity, int blendModeSRC, int blendModeDEST,
+            float startSpeed, float endSpeed,
+            int startColor, int endColor,
+            float angle, float spawnX, float spawnY,
+            float textureLoopLength, float textureOffset,
+            float offsetVelocityX, float offsetVelocityY,
+            float sizePulseWidth, float sizePulseCount) {
+        addNewTrailSegment(inDuration, mainDuration, outDuration, startSize, endSize, startAngleVelocity, endAngleVelocity,
+                mainOpacity, blendModeSRC, blendModeDEST, startSpeed, endSpeed, startColor, endColor, angle, spawnX, spawnY,
+                textureLoopLength, textureOffset, offsetVelocityX, offsetVelocityY, sizePulseWidth,
+                MagicTrailCurve.get(sizePulseCount));
+    }
 
-        //Then, if we have too few segments to render properly, cancel the function
-        int size = allTrailParts.size();
-        if (size <= 1) {
-            return;
+    //Same as above, with the segment's pulse curve already looked up; the curve's pulse count is used
+    public void addNewTrailSegment(
+            float inDuration, float mainDuration, float outDuration,
+            float startSize, float endSize,
+            float startAngleVelocity, float endAngleVelocity,
+            float mainOpacity, int blendModeSRC, int blendModeDEST,
+            float startSpeed, float endSpeed,
+            int startColor, int endColor,
+            float angle, float spawnX, float spawnY,
+            float textureLoopLength, float textureOffset,
+            float offsetVelocityX, float offsetVelocityY,
+            float sizePulseWidth, MagicTrailCurve curve) {
+        int slot = claimSlot();
+        this.inDuration[slot] = inDuration;
+        this.mainDuration[slot] = mainDuration;
+        this.outDuration[slot] = outDuration;
+        this.startSize[slot] = startSize;
+        this.endSize[slot] = endSize;
+        this.startAngleVelocity[slot] = startAngleVelocity;
+        this.endAngleVelocity[slot] = endAngleVelocity;
+        this.mainOpacity[slot] = mainOpacity;
+        this.startSpeed[slot] = startSpeed;
+        this.endSpeed[slot] = endSpeed;
+        this.startColor[slot] = startColor;
+        this.endColor[slot] = endColor;
+        this.offsetVelocityX[slot] = offsetVelocityX;
+        this.offsetVelocityY[slot] = offsetVelocityY;
+        this.sizePulseWidth[slot] = sizePulseWidth;
+        this.curve[slot] = curve;
+        this.blendModeSRC[slot] = blendModeSRC;
+        this.blendModeDEST[slot] = blendModeDEST;
+        this.textureLoopLength[slot] = textureLoopLength;
+        this.segmentTextureOffset[slot] = textureOffset;
+
+        //Same starting state MagicTrailObject's constructor gives a new object
+        this.locationX[slot] = spawnX;
+        this.locationY[slot] = spawnY;
+        this.angle[slot] = angle;
+        this.currentSize[slot] = startSize;
+        this.currentOpacity[slot] = inDuration > 0 ? 0f : mainOpacity;
+        this.currentColor[slot] = startColor;
+        this.spentLifetime[slot] = 0f;
+        this.catchUpSkip[slot] = pendingAge;
+        turning |= startAngleVelocity != 0f || endAngleVelocity != 0f;
+        includeInBounds(slot, count == 1);
+        if (count == 1) {
+            chooseAging(slot);
         }
+    }
 
-        //New trail object's movement
-        MagicTrailObject currentLatestTrailObject = allTrailParts.get(size - 1);
-        if (latestTrailObject == null) {
-            latestTrailObject = currentLatestTrailObject;
-        } else if (latestTrailObject != currentLatestTrailObject) {
-            float partDistance = MathUtils.getDistance(latestTrailObject.currentLocation, currentLatestTrailObject.currentLocation);
-            //scroll back
-            scrollingTextureOffset -= partDistance / currentLatestTrailObject.textureLoopLength;
-            latestTrailObject = currentLatestTrailObject;
+    //A trail is aged by the shader if it is active and the trail's first segment is something the shader can reproduce;
+    //the choice holds until the trail is empty again. See MagicTrailShader
+    private void chooseAging(int slot) {
+        shaderAged = MagicTrailShader.isActive() && allowsShaderAging() && !isAnimated && !usesSplineInterpolation && !usesForwardPropagation
+                && textureLoopLength[slot] > 0f && startAngleVelocity[slot] == 0f && endAngleVelocity[slot] == 0f;
+        uploadedSegments = addedSegments;
+        shaderTexV = segmentTextureOffset[slot];
+    }
+
+    public boolean isShaderAged() {
+        return shaderAged;
+    }
+
+    //Whether this kind of trail can be aged by the shader at all; only the combat trail renderers draw shader buffers
+    protected boolean allowsShaderAging() {
+        return true;
+    }
+
+    //Clears the tracker back to the state of a freshly constructed one, so it can be reused for a new trail. The
+    //segment arrays are kept (unless they grew very large), which is the whole point of reusing a tracker
+    public void reset() {
+        scrollingTextureOffset = 0f;
+        scrollSpeed = 0f;
+        usesForwardPropagation = false;
+        usesSplineInterpolation = false;
+        textureOffset = -1;
+        isAnimated = false;
+        currentAnimRenderTexture = 0;
+        thinnedSpawns = 0;
+        shaderAged = false;
+        uploadedSegments = 0;
+        shaderTexV = 0f;
+        isExpired = false;
+        remainEmptyElapsed = 0f;
+        addedSegments = 0;
+        latestRenderedSegment = -1;
+        maxHalfWidth = 0f;
+        maxSegmentSpeed = 0f;
+        boundsDrift = 0f;
+        culled = false;
+        pendingAge = 0f;
+        turning = false;
+
+        head = 0;
+        count = 0;
+        if (capacity > MAX_RETAINED_CAPACITY) {
+            allocate(16);
         }
+    }
 
-        //If we are animated, we use our "currentAnimRenderTexture" rather than the textureID we just got supplied
-        int trueTextureID = textureID;
-        if (isAnimated) {
-            trueTextureID = currentAnimRenderTexture;
+    //Number of segments currently alive in the trail
+    public int getSegmentCount() {
+        return count;
+    }
+
+    //Reserves the slot after the most recent segment, growing the ring buffer if it is full
+    private int claimSlot() {
+        if (count == capacity) {
+            allocate(capacity * 2);
         }
+        int slot = (head + count) & mask;
+        count++;
+        addedSegments++;
+        return slot;
+    }
 
-        //Otherwise, we actually render the thing
-        //This part instantiates OpenGL
-        glPushMatrix();
-        glEnable(GL_TEXTURE_2D);
-        glBindTexture(GL_TEXTURE_2D, trueTextureID);
-        glEnable(GL_BLEND);
-        glBlendFunc(allTrailParts.get(size - 1).blendModeSRC, allTrailParts.get(size - 1).blendModeDEST); //NOTE: uses the most recent blend mode added to the trail
-        glBegin(GL_QUADS);
-
-        //ADDITION 28/2-2019 Nicke535: chooses a render mode depending on if we use the old "forward-propagating-render" option
-        CombatEngineAPI engine = Global.getCombatEngine();
-        if (usesForwardPropagation) {
-            //Iterate through all trail parts except the most recent one: the idea is that each part renders in relation to the *next* part
-            float texDistTracker = currentLatestTrailObject.textureOffset;
-            float texLocator = 0f;
-            for (int i = 0; i < size - 1; i++) {
-                //First, get a handle for our parts so we can make the code shorter
-                MagicTrailObject part1 = allTrailParts.get(i);   //Current part
-                MagicTrailObject part2 = allTrailParts.get(i + 1); //Next part
-
-                //Then, determine the corner points of both this and the next trail part
-                float partRadius = part1.currentSize * 0.5f;
-                Vector2f point1Left = MathUtils.getPointOnCircumference(part1.currentLocation, partRadius, part1.angle - 90f);
-                Vector2f point1Right = MathUtils.getPointOnCircumference(part1.currentLocation, partRadius, part1.angle + 90f);
-                partRadius = part2.currentSize * 0.5f;
-                Vector2f point2Left = MathUtils.getPointOnCircumference(part2.currentLocation, partRadius, part2.angle - 90f);
-                Vector2f point2Right = MathUtils.getPointOnCircumference(part2.currentLocation, partRadius, part2.angle + 90f);
-
-                //Saves an easy value for the distance between the current two parts
-                float partDistance = MathUtils.getDistance(part1.currentLocation, part2.currentLocation);
-
-                //-------------------------------------------------------------------Actual rendering shenanigans------------------------------------------------------------------------------------------
-                //If we are outside the viewport, don't render at all! Just tick along our texture tracker, and do nothing else
-                if (!engine.getViewport().isNearViewport(part1.currentLocation, partDistance * 2f)) {
-                    //Change our texture distance tracker depending on looping mode
-                    //  -If we have -1 as loop length, we ensure that the entire texture is used over the entire trail
-                    //  -Otherwise, we adjust the texture distance upward to account for how much distance there is between our two points
-                    if (part1.textureLoopLength <= 0f) {
-                        texDistTracker = (float) (i + 1) / (float) size;
-                    } else {
-                        texDistTracker += partDistance / part1.textureLoopLength;
-                    }
+    //Gets the ring buffer slot of a segment, where 0 is the oldest segment and count - 1 the most recent
+    private int slotOf(int index) {
+        return (head + index) & mask;
+    }
 
-                    continue;
-                }
+    //(Re)allocates every segment array with a new capacity, unwrapping the ring so the oldest segment ends up at slot 0
+    private void allocate(int newCapacity) {
+        inDuration = copyRing(inDuration, newCapacity);
+        mainDuration = copyRing(mainDuration, newCapacity);
+        outDuration = copyRing(outDuration, newCapacity);
+        startSize = copyRing(startSize, newCapacity);
+        endSize = copyRing(endSize, newCapacity);
+        startAngleVelocity = copyRing(startAngleVelocity, newCapacity);
+        endAngleVelocity = copyRing(endAngleVelocity, newCapacity);
+        mainOpacity = copyRing(mainOpacity, newCapacity);
+        startSpeed = copyRing(startSpeed, newCapacity);
+        endSpeed = copyRing(endSpeed, newCapacity);
+        startColor = copyRing(startColor, newCapacity);
+        endColor = copyRing(endColor, newCapacity);
+        offsetVelocityX = copyRing(offsetVelocityX, newCapacity);
+        offsetVelocityY = copyRing(offsetVelocityY, newCapacity);
+        sizePulseWidth = copyRing(sizePulseWidth, newCapacity);
+        blendModeSRC = copyRing(blendModeSRC, newCapacity);
+        blendModeDEST = copyRing(blendModeDEST, newCapacity);
+        textureLoopLength = copyRing(textureLoopLength, newCapacity);
+        segmentTextureOffset = copyRing(segmentTextureOffset, newCapacity);
+        curve = copyRing(curve, newCapacity);
+        locationX = copyRing(locationX, newCapacity);
+        locationY = copyRing(locationY, newCapacity);
+        angle = copyRing(angle, newCapacity);
+        currentSize = copyRing(currentSize, newCapacity);
+        currentOpacity = copyRing(currentOpacity, newCapacity);
+        currentColor = copyRing(currentColor, newCapacity);
+        spentLifetime = copyRing(spentLifetime, newCapacity);
+        catchUpSkip = copyRing(catchUpSkip, newCapacity);
+
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        head = 0;
+    }
 
-                //Changes opacity slightly at beginning and end: the last and first 2 segments have lower opacity
-                float opacityMult = 1f;
-                if (i < 2) {
-                    opacityMult *= ((float) i / 2f);
-                } else if (i > size - 3) {
-                    opacityMult *= ((float) size - 1f - (float) i) / 2f;
-                }
+    private float[] copyRing(float[] old, int newCapacity) {
+        float[] result = new float[newCapacity];
+        for (int i = 0; i < count; i++) {
+            result[i] = old[slotOf(i)];
+        }
+        return result;
+    }
 
-                //Sets the current render color
-                glColor4ub((byte) part1.currentColor.getRed(), (byte) part1.currentColor.getGreen(), (byte) part1.currentColor.getBlue(), (byte) (part1.currentOpacity * opacityMult * 255));
+    private MagicTrailCurve[] copyRing(MagicTrailCurve[] old, int newCapacity) {
+        MagicTrailCurve[] result = new MagicTrailCurve[newCapacity];
+        for (int i = 0; i < count; i++) {
+            result[i] = old[slotOf(i)];
+        }
+        return result;
+    }
 
-                texLocator = texDistTracker + scrollingTextureOffset;
+    private int[] copyRing(int[] old, int newCapacity) {
+        int[] result = new int[newCapacity];
+        for (int i = 0; i < count; i++) {
+            result[i] = old[slotOf(i)];
+        }
+        return result;
+    }
 
-                //Sets corner 1, or the first left corner
-                glTexCoord2f(0f, texLocator);
-                glVertex2f(point1Left.getX(), point1Left.getY());
+    //Copies every value of a segment from one slot to another
+    private void moveSlot(int from, int to) {
+        inDuration[to] = inDuration[from];
+        mainDuration[to] = mainDuration[from];
+        outDuration[to] = outDuration[from];
+        startSize[to] = startSize[from];
+        endSize[to] = endSize[from];
+        startAngleVelocity[to] = startAngleVelocity[from];
+        endAngleVelocity[to] = endAngleVelocity[from];
+        mainOpacity[to] = mainOpacity[from];
+        startSpeed[to] = startSpeed[from];
+        endSpeed[to] = endSpeed[from];
+        startColor[to] = startColor[from];
+        endColor[to] = endColor[from];
+        offsetVelocityX[to] = offsetVelocityX[from];
+        offsetVelocityY[to] = offsetVelocityY[from];
+        sizePulseWidth[to] = sizePulseWidth[from];
+        curve[to] = curve[from];
+        blendModeSRC[to] = blendModeSRC[from];
+        blendModeDEST[to] = blendModeDEST[from];
+        textureLoopLength[to] = textureLoopLength[from];
+        segmentTextureOffset[to] = segmentTextureOffset[from];
+        locationX[to] = locationX[from];
+        locationY[to] = locationY[from];
+        angle[to] = angle[from];
+        currentSize[to] = currentSize[from];
+        currentOpacity[to] = currentOpacity[from];
+        currentColor[to] = currentColor[from];
+        spentLifetime[to] = spentLifetime[from];
+        catchUpSkip[to] = catchUpSkip[from];
+    }
 
-                //Sets corner 2, or the first right corner
-                glTexCoord2f(1f, texLocator);
-                glVertex2f(point1Right.getX(), point1Right.getY());
+    //Spline trails: each stretch between two segments is split into one quad per this many degrees the trail turns over
+    //it, up to a maximum, but never into quads shorter than this many pixels on screen
+    private static final float SPLINE_DEGREES_PER_QUAD = 5f;
+    private static final int MAX_SPLINE_QUADS = 16;
+    private static final float MIN_SPLINE_QUAD_PIXELS = 4f;
+
+    //Shared scratch batch and viewport copy for the methods taking a ViewportAPI, and scratch quad for shader uploads;
+    //only ever used from the render thread
+    private static final MagicTrailBatch IMMEDIATE_BATCH = new MagicTrailBatch();
+    private static final MagicTrailViewport RENDER_VIEWPORT = new MagicTrailViewport();
+    private static final float[] SHADER_QUAD = new float[MagicTrailShaderBuffer.FLOATS_PER_QUAD];
+
+    /**
+     * Tests the whole trail against the viewport at once, using its bounding box. Cheaper than testing every segment,
+     * but may let through trails that are only near the viewport.
+     *
+     * @return False if no part of the trail can be on-screen
+     */
+    public boolean isNearViewport(ViewportAPI viewport) {
+        return isNearViewport(RENDER_VIEWPORT.set(viewport, 0f));
+    }
 
-                //Change our texture distance tracker depending on looping mode
-                //  -If we have -1 as loop length, we ensure that the entire texture is used over the entire trail
-                //  -Otherwise, we adjust the texture distance upward to account for how much distance there is between our two points
-                if (part1.textureLoopLength <= 0f) {
-                    texDistTracker = (float) (i + 1) / (float) size;
-                } else {
-                    texDistTracker += partDistance / part1.textureLoopLength;
-                }
+    //Same as above, but against a copy of the viewport, so it can be called from any thread
+    public boolean isNearViewport(MagicTrailViewport viewport) {
+        if (count == 0) {
+            return false;
+        }
+        float halfWidth = (boundsMaxX - boundsMinX) * 0.5f;
+        float halfHeight = (boundsMaxY - boundsMinY) * 0.5f;
+        float radius = (float) Math.sqrt(halfWidth * halfWidth + halfHeight * halfHeight) + maxHalfWidth + boundsDrift;
+        return viewport.isNearViewport(boundsMinX + halfWidth, boundsMinY + halfHeight, radius);
+    }
 
-                //Changes opacity slightly at beginning and end: the last and first 2 segments have lower opacity
-                opacityMult = 1f;
-                if ((i + 1) < 2) {
-                    opacityMult *= ((float) (i + 1) / 2f);
-                } else if ((i + 1) > size - 3) {
-                    opacityMult *= ((float) size - 2f - (float) i) / 2f;
-                }
+    //Set by the renderer each frame: while culled, the trail is only aged by tickTimersInTrail
+    public void setCulled(boolean culled) {
+        this.culled = culled;
+    }
 
-                //Changes render color to our next segment's opacity
-                glColor4ub((byte) part2.currentColor.getRed(),
-                        (byte) part2.currentColor.getGreen(),
-                        (byte) part2.currentColor.getBlue(),
-                        (byte) (part2.currentOpacity * opacityMult * 255));
+    public boolean isCulled() {
+        return culled;
+    }
 
-                texLocator = texDistTracker + scrollingTextureOffset;
+    //Grows the bounding box to include a segment, or starts it over from that segment
+    private void includeInBounds(int slot, boolean first) {
+        float x = locationX[slot];
+        float y = locationY[slot];
+        float halfWidth = Math.max(Math.abs(startSize[slot]), Math.abs(endSize[slot])) * 0.5f + Math.abs(sizePulseWidth[slot]);
+        float speed = Math.max(Math.abs(startSpeed[slot]), Math.abs(endSpeed[slot]))
+                + Math.abs(offsetVelocityX[slot]) + Math.abs(offsetVelocityY[slot]);
+        if (first) {
+            boundsMinX = boundsMaxX = x;
+            boundsMinY = boundsMaxY = y;
+            maxHalfWidth = halfWidth;
+            maxSegmentSpeed = speed;
+            boundsDrift = 0f;
+            return;
+        }
+        boundsMinX = Math.min(boundsMinX, x);
+        boundsMinY = Math.min(boundsMinY, y);
+        boundsMaxX = Math.max(boundsMaxX, x);
+        boundsMaxY = Math.max(boundsMaxY, y);
+        maxHalfWidth = Math.max(maxHalfWidth, halfWidth);
+        maxSegmentSpeed = Math.max(maxSegmentSpeed, speed);
+    }
 
-                //Sets corner 3, or the second right corner
-                glTexCoord2f(1f, texLocator);
-                glVertex2f(point2Right.getX(), point2Right.getY());
+    //The heavy, main function: render the entire trail
+    public void renderTrail(int textureID) {
+        renderTrail(textureID, 0f);
+    }
 
-                //Sets corner 4, or the second left corner
-                glTexCoord2f(0f, texLocator);
-                glVertex2f(point2Left.getX(), point2Left.getY());
-            }
-        } else {
-            //Iterate through all trail parts except the oldest one: the idea is that each part renders in relation to the *previous* part
-            //Note that this behaviour is inverted compared to forward-propagating render (the old method)
-            float texDistTracker = currentLatestTrailObject.textureOffset;
-            float texLocator = 0f;
-            for (int i = size - 1; i > 0; i--) {
-                //First, get a handle for our parts so we can make the code shorter
-                MagicTrailObject part1 = allTrailParts.get(i);    //Current part
-                MagicTrailObject part2 = allTrailParts.get(i - 1);    //Next part
-
-                //Then, determine the corner points of both this and the next trail part
-                float partRadius = part1.currentSize * 0.5f;
-                Vector2f point1Left = MathUtils.getPointOnCircumference(part1.currentLocation, partRadius, part1.angle - 90f);
-                Vector2f point1Right = MathUtils.getPointOnCircumference(part1.currentLocation, partRadius, part1.angle + 90f);
-                partRadius = part2.currentSize * 0.5f;
-                Vector2f point2Left = MathUtils.getPointOnCircumference(part2.currentLocation, partRadius, part2.angle - 90f);
-                Vector2f point2Right = MathUtils.getPointOnCircumference(part2.currentLocation, partRadius, part2.angle + 90f);
-
-                //Saves an easy value for the distance between the current two parts
-                float partDistance = MathUtils.getDistance(part1.currentLocation, part2.currentLocation);
-
-                //-------------------------------------------------------------------Actual rendering shenanigans------------------------------------------------------------------------------------------
-                //If we are outside the viewport, don't render at all! Just tick along our texture tracker, and do nothing else
-                if (!engine.getViewport().isNearViewport(part1.currentLocation, partDistance * 2f)) {
-                    //Change our texture distance tracker depending on looping mode
-                    //  -If we have -1 as loop length, we ensure that the entire texture is used over the entire trail
-                    //  -Otherwise, we adjust the texture distance upward to account for how much distance there is between our two points
-                    if (part1.textureLoopLength <= 0f) {
-                        texDistTracker = (float) (i - 1) / (float) size;
-                    } else {
-                        texDistTracker += partDistance / part1.textureLoopLength;
-                    }
+    //Same as above, but merges segments into quads at least minQuadLength long; see buildTrailGeometry.
+    //Returns how many vertices were drawn
+    public int renderTrail(int textureID, float minQuadLength) {
+        //If we have too few segments to render properly, cancel the function
+        if (count <= 1) {
+            return 0;
+        }
 
-                    continue;
-                }
+        //Builds the quads of the trail, and then sends them to OpenGL one vertex at a time
+        IMMEDIATE_BATCH.clear();
+        IMMEDIATE_BATCH.setKey(getRenderTexture(textureID), getBlendModeSRC(), getBlendModeDEST());
+        buildTrailGeometry(IMMEDIATE_BATCH, Global.getCombatEngine().getViewport(), minQuadLength);
+        IMMEDIATE_BATCH.drawImmediate();
+        return IMMEDIATE_BATCH.getVertexCount();
+    }
 
-                //Changes opacity slightly at beginning and end: the last and first 2 segments have lower opacity
-                float opacityMult = 1f;
-                if (i < 2) {
-                    opacityMult *= ((float) i / 2f);
-                } else if (i > size - 3) {
-                    opacityMult *= ((float) size - 1f - (float) i) / 2f;
-                }
+    //If we are animated, we use our "currentAnimRenderTexture" rather than the textureID of the map we are stored in
+    public int getRenderTexture(int textureID) {
+        return isAnimated ? currentAnimRenderTexture : textureID;
+    }
 
-                //Sets the current render color
-                glColor4ub((byte) part1.currentColor.getRed(), (byte) part1.currentColor.getGreen(), (byte) part1.currentColor.getBlue(), (byte) (part1.currentOpacity * opacityMult * 255));
+    //NOTE: uses the most recent blend mode added to the trail
+    public int getBlendModeSRC() {
+        return count == 0 ? GL_SRC_ALPHA : blendModeSRC[slotOf(count - 1)];
+    }
 
-                texLocator = texDistTracker + scrollingTextureOffset;
+    public int getBlendModeDEST() {
+        return count == 0 ? GL_ONE_MINUS_SRC_ALPHA : blendModeDEST[slotOf(count - 1)];
+    }
 
-                //Sets corner 1, or the first left corner
-                glTexCoord2f(0f, texLocator);
-                glVertex2f(point1Left.getX(), point1Left.getY());
+    /**
+     * Writes the quads of this trail into a batch, without issuing any OpenGL calls. The batch is expected to have
+     * been keyed with {@link #getRenderTexture(int)}, {@link #getBlendModeSRC()} and {@link #getBlendModeDEST()}.
+     *
+     * @param batch    The batch to add the quads to
+     * @param viewport The viewport used to skip trail segments that are off-screen
+     */
+    public void buildTrailGeometry(MagicTrailBatch batch, ViewportAPI viewport) {
+        buildTrailGeometry(batch, viewport, 0f);
+    }
 
-                //Sets corner 2, or the first right corner
-                glTexCoord2f(1f, texLocator);
-                glVertex2f(point1Right.getX(), point1Right.getY());
+    /**
+     * Same as {@link #buildTrailGeometry(MagicTrailBatch, ViewportAPI)}, with level-of-detail decimation: consecutive
+     * segments are merged into a single quad until it is at least minQuadLength long. Texture coordinates, colors and
+     * opacity at the ends of each merged quad are the same as without merging; only the points in between are dropped.
+     *
+     * @param batch         The batch to add the quads to
+     * @param viewport      The viewport used to skip trail segments that are off-screen
+     * @param minQuadLength Shortest quad to emit, in world units. 0 or less to never merge segments
+     */
+    public void buildTrailGeometry(MagicTrailBatch batch, ViewportAPI viewport, float minQuadLength) {
+        buildTrailGeometry(batch, RENDER_VIEWPORT.set(viewport, 0f), minQuadLength);
+    }
 
-                //Change our texture distance tracker depending on looping mode
-                //  -If we have -1 as loop length, we ensure that the entire texture is used over the entire trail
-                //  -Otherwise, we adjust the texture distance upward to account for how much distance there is between our two points
-                if (part1.textureLoopLength <= 0f) {
-                    texDistTracker = (float) (i - 1) / (float) size;
-                } else {
-                    texDistTracker += partDistance / part1.textureLoopLength;
-                }
+    /**
+     * Same as {@link #buildTrailGeometry(MagicTrailBatch, ViewportAPI, float)}, but culls against a copy of the
+     * viewport. Touches nothing but this trail and the batch, so different trails can be built on different threads.
+     */
+    public void buildTrailGeometry(MagicTrailBatch batch, MagicTrailViewport viewport, float minQuadLength) {
+        //Shader-aged trails are drawn from their MagicTrailShaderBuffer instead
+        if (shaderAged) {
+            return;
+        }
 
-                //Changes opacity slightly at beginning and end: the last and first 2 segments have lower opacity
-                opacityMult = 1f;
-                if ((i - 1) < 2) {
-                    opacityMult *= ((float) (i - 1) / 2f);
-                } else if ((i - 1) > size - 3) {
-                    opacityMult *= ((float) size - 1f - ((float) i - 1f)) / 2f;
-                }
+        //If we were only aged while off-screen, move everything to where it should be first
+        if (pendingAge > 0f) {
+            tickSegments(0f);
+        }
 
-                //Changes render color to our next segment's opacity
-                glColor4ub((byte) part2.currentColor.getRed(),
-                        (byte) part2.currentColor.getGreen(),
-                        (byte) part2.currentColor.getBlue(),
-                        (byte) (part2.currentOpacity * opacityMult * 255));
+        //If we have too few segments to render properly, cancel the function
+        int size = count;
+        if (size <= 1) {
+            return;
+        }
 
-                texLocator = texDistTracker + scrollingTextureOffset;
+        //New trail object's movement
+        int latestSlot = slotOf(size - 1);
+        if (latestRenderedSegment != addedSegments) {
+            //The previously-latest segment is still alive if it is among our "count" most recent ones
+            int previousIndex = size - 1 - (int) (addedSegments - latestRenderedSegment);
+            if (latestRenderedSegment >= 0 && previousIndex >= 0) {
+                int previousSlot = slotOf(previousIndex);
+                float partDistance = distance(previousSlot, latestSlot);
+                //scroll back
+                scrollingTextureOffset -= partDistance / textureLoopLength[latestSlot];
+            }
+            latestRenderedSegment = addedSegments;
+        }
 
-                //Sets corner 3, or the second right corner
-                glTexCoord2f(1f, texLocator);
-                glVertex2f(point2Right.getX(), point2Right.getY());
+        //Iterate through every pair of neighbouring trail parts.
+        //With forward propagation (the old method), each part renders in relation to the *next* part, starting at the oldest one.
+        //Otherwise each part renders in relation to the *previous* part, starting at the most recent one
+        int step = usesForwardPropagation ? 1 : -1;
+        int first = usesForwardPropagation ? 0 : size - 1;
+        int last = usesForwardPropagation ? size - 1 : 0;
+        int i = first;
+        float minSplineQuadLength = MIN_SPLINE_QUAD_PIXELS * viewport.getViewMult();
+        float texDistTracker = segmentTextureOffset[latestSlot];
+        while (i != last) {
+            int j = i + step;
+
+            //First, get a handle for our parts so we can make the code shorter
+            int part1 = slotOf(i);    //Current part
+            int part2 = slotOf(j);    //Next part
+
+            //Saves an easy value for the distance between the current two parts
+            float partDistance = distance(part1, part2);
+            float texLocator = texDistTracker + scrollingTextureOffset;
+            texDistTracker = advanceTextureDistance(texDistTracker, textureLoopLength[part1], partDistance, j, size);
+
+            //Level of detail: while the quad is too short to matter, stretch it over the next part as well. The texture
+            //tracker still steps through every part, so the texture lines up exactly as if nothing was merged
+            while (partDistance < minQuadLength && j != last) {
+                int next = j + step;
+                float nextDistance = distance(part2, slotOf(next));
+                texDistTracker = advanceTextureDistance(texDistTracker, textureLoopLength[part2], nextDistance, next, size);
+                partDistance += nextDistance;
+                j = next;
+                part2 = slotOf(j);
+            }
 
-                //Sets corner 4, or the second left corner
-                glTexCoord2f(0f, texLocator);
-                glVertex2f(point2Left.getX(), point2Left.getY());
+            //If we are outside the viewport, don't render at all! The texture tracker has already moved along
+            if (!viewport.isNearViewport(locationX[part1], locationY[part1], partDistance * 2f)) {
+                i = j;
+                continue;
             }
+
+            float nextTexLocator = texDistTracker + scrollingTextureOffset;
+
+            //Changes opacity slightly at beginning and end: the last and first 2 segments have lower opacity
+            float alpha1 = Math.max(0f, Math.min(1f, currentOpacity[part1] * getEdgeOpacityMult(i, size)));
+            float alpha2 = Math.max(0f, Math.min(1f, currentOpacity[part2] * getEdgeOpacityMult(j, size)));
+
+            //Spline trails bend the stretch to follow the parts just outside it, if it turns enough to be worth it
+            if (usesSplineInterpolation) {
+                int part0 = i == first ? part1 : slotOf(i - step);
+                int part3 = j == last ? part2 : slotOf(j + step);
+                int quads = getSplineQuadCount(part0, part1, part2, part3, partDistance, minSplineQuadLength);
+                if (quads > 1) {
+                    addSplineQuads(batch, part0, part1, part2, part3, quads, texLocator, nextTexLocator, alpha1, alpha2);
+                    i = j;
+                    continue;
+                }
+            }
+
+            //Then, determine the corner points of both this and the next trail part: left is at angle - 90, right at angle + 90
+            float radius1 = currentSize[part1] * 0.5f;
+            float cos1 = (float) FastTrig.cos(Math.toRadians(angle[part1]));
+            float sin1 = (float) FastTrig.sin(Math.toRadians(angle[part1]));
+            float radius2 = currentSize[part2] * 0.5f;
+            float cos2 = (float) FastTrig.cos(Math.toRadians(angle[part2]));
+            float sin2 = (float) FastTrig.sin(Math.toRadians(angle[part2]));
+
+            int color1 = currentColor[part1];
+            int color2 = currentColor[part2];
+            float red1 = ((color1 >> 16) & 0xFF) / 255f;
+            float green1 = ((color1 >> 8) & 0xFF) / 255f;
+            float blue1 = (color1 & 0xFF) / 255f;
+            float red2 = ((color2 >> 16) & 0xFF) / 255f;
+            float green2 = ((color2 >> 8) & 0xFF) / 255f;
+            float blue2 = (color2 & 0xFF) / 255f;
+
+            //Corner 1 and 2, or the first left and right corners
+            batch.addVertex(locationX[part1] + radius1 * sin1, locationY[part1] - radius1 * cos1, 0f, texLocator, red1, green1, blue1, alpha1);
+            batch.addVertex(locationX[part1] - radius1 * sin1, locationY[part1] + radius1 * cos1, 1f, texLocator, red1, green1, blue1, alpha1);
+
+            //Corner 3 and 4, or the second right and left corners
+            batch.addVertex(locationX[part2] - radius2 * sin2, locationY[part2] + radius2 * cos2, 1f, nextTexLocator, red2, green2, blue2, alpha2);
+            batch.addVertex(locationX[part2] + radius2 * sin2, locationY[part2] - radius2 * cos2, 0f, nextTexLocator, red2, green2, blue2, alpha2);
+
+            i = j;
+        }
+    }
+
+    //How many quads a spline stretch from part1 to part2 should be split into, based on how much the trail turns between
+    //the direction it has at part1 and at part2, and how long the stretch is on screen
+    private int getSplineQuadCount(int part0, int part1, int part2, int part3, float partDistance, float minQuadLength) {
+        float inX = locationX[part2] - locationX[part0];
+        float inY = locationY[part2] - locationY[part0];
+        float outX = locationX[part3] - locationX[part1];
+        float outY = locationY[part3] - locationY[part1];
+        float cross = inX * outY - inY * outX;
+        float dot = inX * outX + inY * outY;
+        if (cross == 0f && dot >= 0f) {
+            return 1;
+        }
+
+        float turn = Math.abs((float) Math.toDegrees(Math.atan2(cross, dot)));
+        int quads = (int) Math.ceil(turn / SPLINE_DEGREES_PER_QUAD);
+        if (minQuadLength > 0f) {
+            quads = Math.min(quads, (int) (partDistance / minQuadLength));
+        }
+        return Math.max(1, Math.min(quads, MAX_SPLINE_QUADS));
+    }
+
+    //Draws the stretch from part1 to part2 as several quads along a Hermite curve through both, with tangents taken from
+    //the parts on either side (Catmull-Rom, scaled by distance so unevenly spaced parts don't overshoot). Size, angle,
+    //color, opacity and texture position are interpolated linearly along the stretch
+    private void addSplineQuads(MagicTrailBatch batch, int part0, int part1, int part2, int part3, int quads,
+                                float texLocator, float nextTexLocator, float alpha1, float alpha2) {
+        float x1 = locationX[part1];
+        float y1 = locationY[part1];
+        float x2 = locationX[part2];
+        float y2 = locationY[part2];
+        float d01 = distance(part0, part1);
+        float d12 = distance(part1, part2);
+        float d23 = distance(part2, part3);
+        float scale1 = d01 + d12 > 0f ? d12 / (d01 + d12) : 0f;
+        float scale2 = d12 + d23 > 0f ? d12 / (d12 + d23) : 0f;
+        float tangent1X = (x2 - locationX[part0]) * scale1;
+        float tangent1Y = (y2 - locationY[part0]) * scale1;
+        float tangent2X = (locationX[part3] - x1) * scale2;
+        float tangent2Y = (locationY[part3] - y1) * scale2;
+
+        //Turns the shortest way between the two angles
+        float angle1 = angle[part1];
+        float angleDelta = angle[part2] - angle1;
+        angleDelta -= 360f * (float) Math.floor((angleDelta + 180f) / 360f);
+
+        float radius1 = currentSize[part1] * 0.5f;
+        float radiusDelta = currentSize[part2] * 0.5f - radius1;
+        int color1 = currentColor[part1];
+        int color2 = currentColor[part2];
+        float red1 = ((color1 >> 16) & 0xFF) / 255f;
+        float green1 = ((color1 >> 8) & 0xFF) / 255f;
+        float blue1 = (color1 & 0xFF) / 255f;
+        float redDelta = ((color2 >> 16) & 0xFF) / 255f - red1;
+        float greenDelta = ((color2 >> 8) & 0xFF) / 255f - green1;
+        float blueDelta = (color2 & 0xFF) / 255f - blue1;
+
+        //Each quad starts where the previous one ended
+        float previousX = x1;
+        float previousY = y1;
+        float previousRadius = radius1;
+        float previousCos = (float) FastTrig.cos(Math.toRadians(angle1));
+        float previousSin = (float) FastTrig.sin(Math.toRadians(angle1));
+        float previousRed = red1;
+        float previousGreen = green1;
+        float previousBlue = blue1;
+        float previousAlpha = alpha1;
+        float previousTex = texLocator;
+        for (int k = 1; k <= quads; k++) {
+            float t = (float) k / quads;
+            float t2 = t * t;
+            float t3 = t2 * t;
+            float h00 = 2f * t3 - 3f * t2 + 1f;
+            float h10 = t3 - 2f * t2 + t;
+            float h01 = 3f * t2 - 2f * t3;
+            float h11 = t3 - t2;
+            float x = h00 * x1 + h10 * tangent1X + h01 * x2 + h11 * tangent2X;
+            float y = h00 * y1 + h10 * tangent1Y + h01 * y2 + h11 * tangent2Y;
+            float radius = radius1 + radiusDelta * t;
+            double angleRadians = Math.toRadians(angle1 + angleDelta * t);
+            float cos = (float) FastTrig.cos(angleRadians);
+            float sin = (float) FastTrig.sin(angleRadians);
+            float red = red1 + redDelta * t;
+            float green = green1 + greenDelta * t;
+            float blue = blue1 + blueDelta * t;
+            float alpha = alpha1 + (alpha2 - alpha1) * t;
+            float tex = texLocator + (nextTexLocator - texLocator) * t;
+
+            batch.addVertex(previousX + previousRadius * previousSin, previousY - previousRadius * previousCos, 0f, previousTex, previousRed, previousGreen, previousBlue, previousAlpha);
+            batch.addVertex(previousX - previousRadius * previousSin, previousY + previousRadius * previousCos, 1f, previousTex, previousRed, previousGreen, previousBlue, previousAlpha);
+            batch.addVertex(x - radius * sin, y + radius * cos, 1f, tex, red, green, blue, alpha);
+            batch.addVertex(x + radius * sin, y - radius * cos, 0f, tex, red, green, blue, alpha);
+
+            previousX = x;
+            previousY = y;
+            previousRadius = radius;
+            previousCos = cos;
+            previousSin = sin;
+            previousRed = red;
+            previousGreen = green;
+            previousBlue = blue;
+            previousAlpha = alpha;
+            previousTex = tex;
+        }
+    }
+
+    /**
+     * For shader-aged trails: writes the quad linking each segment added since the last call to the one before it into
+     * a buffer, with the segments' spawn-time values. Nothing is written again for these segments afterwards.
+     *
+     * @param buffer The buffer to add the quads to, matching {@link #getRenderTexture(int)} and the blend mode
+     * @param time   The current time on the shader's clock, which the segments' spawn times are derived from
+     */
+    public void uploadShaderQuads(MagicTrailShaderBuffer buffer, float time) {
+        if (!shaderAged || uploadedSegments == addedSegments) {
+            return;
+        }
+
+        //Only segments still alive can be linked, and the oldest of them has nothing to link to
+        long firstSerial = Math.max(uploadedSegments + 1, addedSegments - count + 2);
+        for (long serial = firstSerial; serial <= addedSegments; serial++) {
+            int index = count - 1 - (int) (addedSegments - serial);
+            int part1 = slotOf(index - 1);    //Previous part
+            int part2 = slotOf(index);        //New part
+
+            //The texture is laid out along the trail as it was spawned; only the fraction matters, since it repeats
+            float texLocator = shaderTexV - (float) Math.floor(shaderTexV);
+            float nextTexLocator = texLocator - distance(part1, part2) / textureLoopLength[part2];
+            shaderTexV = nextTexLocator;
+
+            //Shader-aged segments never move on the CPU, so they are still where they spawned
+            float spawnTime1 = time - (spentLifetime[part1] + pendingAge - catchUpSkip[part1]);
+            float spawnTime2 = time - (spentLifetime[part2] + pendingAge - catchUpSkip[part2]);
+            float endTime = Math.min(spawnTime1 + getTotalLifetime(part1), spawnTime2 + getTotalLifetime(part2));
+
+            putShaderVertex(0, part1, spawnTime1, 1f, 0f, texLocator, endTime);
+            putShaderVertex(1, part1, spawnTime1, -1f, 1f, texLocator, endTime);
+            putShaderVertex(2, part2, spawnTime2, -1f, 1f, nextTexLocator, endTime);
+            putShaderVertex(3, part2, spawnTime2, 1f, 0f, nextTexLocator, endTime);
+            buffer.addQuad(SHADER_QUAD, endTime, time);
+        }
+        uploadedSegments = addedSegments;
+    }
+
+    //Writes one corner of a segment into the scratch quad, laid out as MagicTrailShaderBuffer describes
+    private void putShaderVertex(int corner, int slot, float spawnTime, float side, float u, float v, float endTime) {
+        float[] quad = SHADER_QUAD;
+        int i = corner * MagicTrailShaderBuffer.FLOATS_PER_VERTEX;
+        double radians = Math.toRadians(angle[slot]);
+        int start = startColor[slot];
+        int end = endColor[slot];
+        quad[i++] = locationX[slot];
+        quad[i++] = locationY[slot];
+        quad[i++] = (float) FastTrig.cos(radians);
+        quad[i++] = (float) FastTrig.sin(radians);
+        quad[i++] = startSpeed[slot];
+        quad[i++] = endSpeed[slot];
+        quad[i++] = offsetVelocityX[slot];
+        quad[i++] = offsetVelocityY[slot];
+        quad[i++] = startSize[slot];
+        quad[i++] = endSize[slot];
+        quad[i++] = sizePulseWidth[slot];
+        quad[i++] = curve[slot].getSizePulseCount();
+        quad[i++] = spawnTime;
+        quad[i++] = inDuration[slot];
+        quad[i++] = mainDuration[slot];
+        quad[i++] = outDuration[slot];
+        quad[i++] = ((start >> 16) & 0xFF) / 255f;
+        quad[i++] = ((start >> 8) & 0xFF) / 255f;
+        quad[i++] = (start & 0xFF) / 255f;
+        quad[i++] = mainOpacity[slot];
+        quad[i++] = ((end >> 16) & 0xFF) / 255f;
+        quad[i++] = ((end >> 8) & 0xFF) / 255f;
+        quad[i++] = (end & 0xFF) / 255f;
+        quad[i++] = endTime;
+        quad[i++] = side;
+        quad[i++] = u;
+        quad[i++] = v;
+        quad[i] = scrollSpeed;
+    }
+
+    private float distance(int slot1, int slot2) {
+        float dx = locationX[slot1] - locationX[slot2];
+        float dy = locationY[slot1] - locationY[slot2];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    //Change our texture distance tracker depending on looping mode
+    //  -If we have -1 as loop length, we ensure that the entire texture is used over the entire trail
+    //  -Otherwise, we adjust the texture distance upward to account for how much distance there is between our two points
+    private static float advanceTextureDistance(float texDistTracker, float textureLoopLength, float partDistance, int nextIndex, int size) {
+        if (textureLoopLength <= 0f) {
+            return (float) nextIndex / (float) size;
         }
+        return texDistTracker + partDistance / textureLoopLength;
+    }
 
-        //And finally stops OpenGL
-        glEnd();
-        glPopMatrix();
+    //The first and last 2 segments of a trail fade out slightly
+    private static float getEdgeOpacityMult(int index, int size) {
+        if (index < 2) {
+            return (float) index / 2f;
+        } else if (index > size - 3) {
+            return ((float) size - 1f - (float) index) / 2f;
+        }
+        return 1f;
     }
 
     //Quickhand function to tick down all trail objects at once, by an equal amount of time. Also ticks texture scrolling, if we have it
     public void tickTimersInTrail(float amount) {
         if (isExpired) return;
-        // Tick the objects or remove it while its time
-        Iterator<MagicTrailObject> allTrailPartsIter = allTrailParts.iterator();
-        while (allTrailPartsIter.hasNext()) {
-            MagicTrailObject part = allTrailPartsIter.next();
-            if (part.getSpentLifetime() >= part.getTotalLifetime()) {
-                allTrailPartsIter.remove();
-            } else {
-                part.tick(amount);
-            }
+
+        //Shader-aged trails are only ever aged: the shader works out everything else
+        if (((culled && !turning) || shaderAged) && count > 0) {
+            ageSegments(amount);
+        } else {
+            tickSegments(amount);
         }
 
         //If there is a new trail object, the texture will scroll back to make sure they keep in the same place
-        if (!allTrailParts.isEmpty()) {
+        if (count > 0) {
             remainEmptyElapsed = 0f;
         } else {
-            //if the allTrailParts is empty, just make it expire after 3 seconds
-            latestTrailObject = null;
+            //if the trail is empty, just make it expire after 3 seconds
+            latestRenderedSegment = -1;
             remainEmptyElapsed += amount;
             if (remainEmptyElapsed >= 3f) {
                 isExpired = true;
@@ -306,4 +876,130 @@ public class MagicTrailTracker {
         scrollingTextureOffset -= (amount * scrollSpeed) / 1000f;
     }
 
-}
\ No newline at end of file
+    //Ticks every segment by the given time plus whatever they were aged by while culled, and rebuilds the bounding box
+    private void tickSegments(float amount) {
+        //Tick the segments, or drop them once their time is up. Segments normally expire oldest-first, in which case
+        //dropping them only moves the head forward; if one expires out of order, the ring is compacted afterwards
+        boolean expiredOutOfOrder = false;
+        boolean stillAtHead = true;
+        boolean firstInBounds = true;
+        turning = false;
+        for (int i = 0; i < count; i++) {
+            int slot = slotOf(i);
+            if (spentLifetime[slot] >= getTotalLifetime(slot)) {
+                if (!stillAtHead) {
+                    expiredOutOfOrder = true;
+                }
+            } else {
+                stillAtHead = false;
+                tickSegment(slot, amount + pendingAge - catchUpSkip[slot]);
+                catchUpSkip[slot] = 0f;
+                turning |= startAngleVelocity[slot] != 0f || endAngleVelocity[slot] != 0f;
+                includeInBounds(slot, firstInBounds);
+                firstInBounds = false;
+            }
+        }
+        pendingAge = 0f;
+        while (count > 0 && spentLifetime[head] >= getTotalLifetime(head)) {
+            head = (head + 1) & mask;
+            count--;
+        }
+        if (expiredOutOfOrder) {
+            removeExpiredSegments();
+        }
+    }
+
+    //Cheap tick for off-screen trails: only ages the trail, dropping the oldest segments once their time is up. Nothing
+    //moves until the trail is ticked normally again; the bounding box grows instead, to cover where segments may be by now
+    private void ageSegments(float amount) {
+        pendingAge += amount;
+        boundsDrift += maxSegmentSpeed * amount;
+        while (count > 0 && spentLifetime[head] + pendingAge - catchUpSkip[head] >= getTotalLifetime(head)) {
+            head = (head + 1) & mask;
+            count--;
+        }
+    }
+
+    //Slides every segment left of an expired one down to close the gap; only needed for out-of-order expiry
+    private void removeExpiredSegments() {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = slotOf(i);
+            if (spentLifetime[slot] < getTotalLifetime(slot)) {
+                if (kept != i) {
+                    moveSlot(slot, slotOf(kept));
+                }
+                kept++;
+            }
+        }
+        count = kept;
+    }
+
+    private float getTotalLifetime(int slot) {
+        return inDuration[slot] + mainDuration[slot] + outDuration[slot];
+    }
+
+    //Modifies lifetime, position and all other things time-related for a single segment; see MagicTrailObject.tick
+    private void tickSegment(int slot, float amount) {
+        float totalLifetime = getTotalLifetime(slot);
+
+        //Increases lifetime, but never beyond our total lifetime
+        float spentBefore = spentLifetime[slot];
+        float spent = Math.min(spentBefore + amount, totalLifetime);
+        spentLifetime[slot] = spent;
+        float progress = spent / totalLifetime;
+
+        //Calculates our "pulse" size from our pulse curve, depending on pulse count, width and lifetime
+        float thisFramePulseWidth = curve[slot].getPulse(progress) * sizePulseWidth[slot];
+
+        //Slides all values along depending on lifetime
+        currentSize[slot] = startSize[slot] * (1 - progress) + endSize[slot] * progress + thisFramePulseWidth;
+        float currentSpeed = startSpeed[slot] * (1 - progress) + endSpeed[slot] * progress;
+        float currentAngularVelocity = startAngleVelocity[slot] * (1 - progress) + endAngleVelocity[slot] * progress;
+        int start = startColor[slot];
+        int end = endColor[slot];
+        int red = (int) (((start >> 16) & 0xFF) * (1 - progress) + ((end >> 16) & 0xFF) * progress);
+        int green = (int) (((start >> 8) & 0xFF) * (1 - progress) + ((end >> 8) & 0xFF) * progress);
+        int blue = (int) ((start & 0xFF) * (1 - progress) + (end & 0xFF) * progress);
+        currentColor[slot] = (red << 16) | (green << 8) | blue;
+
+        //Adjusts opacity: fades in, stays at full opacity, then fades out
+        currentOpacity[slot] = computeOpacity(mainOpacity[slot], spent, inDuration[slot], mainDuration[slot], outDuration[slot]);
+
+        //Calculates new position and angle from respective velocities
+        if (amount <= MAX_MOTION_STEP) {
+            angle[slot] += currentAngularVelocity * amount;
+            locationX[slot] += (FastTrig.cos(Math.toRadians(angle[slot])) * currentSpeed + offsetVelocityX[slot]) * amount;
+            locationY[slot] += (FastTrig.sin(Math.toRadians(angle[slot])) * currentSpeed + offsetVelocityY[slot]) * amount;
+        } else if (startAngleVelocity[slot] == 0f && endAngleVelocity[slot] == 0f) {
+            //Long step in a straight line: the exact distance covered while the speed ramps linearly over the lifetime,
+            //same as MagicTrailShader works it out
+            float distance = startSpeed[slot] * (spent - spentBefore)
+                    + (endSpeed[slot] - startSpeed[slot]) * (spent * spent - spentBefore * spentBefore) / (2f * totalLifetime);
+            locationX[slot] += FastTrig.cos(Math.toRadians(angle[slot])) * distance + offsetVelocityX[slot] * amount;
+            locationY[slot] += FastTrig.sin(Math.toRadians(angle[slot])) * distance + offsetVelocityY[slot] * amount;
+        } else {
+            //Long step on a curve: walk it in frame-sized steps, each at the speed and turn rate from its end
+            int steps = (int) Math.ceil(amount / MAX_MOTION_STEP);
+            float step = amount / steps;
+            for (int i = 1; i <= steps; i++) {
+                float stepProgress = Math.min(spentBefore + step * i, totalLifetime) / totalLifetime;
+                float stepSpeed = startSpeed[slot] * (1 - stepProgress) + endSpeed[slot] * stepProgress;
+                angle[slot] += (startAngleVelocity[slot] * (1 - stepProgress) + endAngleVelocity[slot] * stepProgress) * step;
+                locationX[slot] += (FastTrig.cos(Math.toRadians(angle[slot])) * stepSpeed + offsetVelocityX[slot]) * step;
+                locationY[slot] += (FastTrig.sin(Math.toRadians(angle[slot])) * stepSpeed + offsetVelocityY[slot]) * step;
+            }
+        }
+    }
+
+    //Opacity after spending a given number of seconds alive, exactly as MagicTrailObject.tick works it out: slightly
+    //differently handled than the otherwise pure linear value sliding
+    static float computeOpacity(float mainOpacity, float spentLifetime, float inDuration, float mainDuration, float outDuration) {
+        if (spentLifetime < inDuration) {
+            return mainOpacity * spentLifetime / inDuration;
+        } else if (spentLifetime > (inDuration + mainDuration)) {
+            return mainOpacity * (1f - ((spentLifetime - (inDuration + mainDuration)) / outDuration));
+        }
+        return mainOpacity;
+    }
+}
@@ -0,0 +1,48 @@
+package org.magiclib.util;
+
+import com.fs.starfarer.api.combat.ViewportAPI;
+
+/**
+ * This file isn't meant to be used directly; use the MagicTrailPlugin to actually do anything properly.
+ * <p>
+ * A copy of the parts of the combat viewport that trails need for culling. Testing against a copy avoids calling into
+ * the viewport for every trail segment, and lets trails be culled from threads other than the main one.
+ */
+public final class MagicTrailViewport {
+    private float minX = 0f;
+    private float minY = 0f;
+    private float maxX = 0f;
+    private float maxY = 0f;
+    private float viewMult = 1f;
+
+    /**
+     * Copies the visible area of a viewport, grown by a margin on every side.
+     *
+     * @param margin How many world units to grow the visible area by; 0 for the exact visible area
+     * @return This snapshot, for chaining
+     */
+    public MagicTrailViewport set(ViewportAPI viewport, float margin) {
+        float llx = viewport.getLLX();
+        float lly = viewport.getLLY();
+        minX = llx - margin;
+        minY = lly - margin;
+        maxX = llx + viewport.getVisibleWidth() + margin;
+        maxY = lly + viewport.getVisibleHeight() + margin;
+        viewMult = viewport.getViewMult();
+        return this;
+    }
+
+    //Same test as ViewportAPI.isNearViewport: whether a circle around the point overlaps the visible area
+    public boolean isNearViewport(float x, float y, float radius) {
+        return x + radius >= minX && x - radius <= maxX && y + radius >= minY && y - radius <= maxY;
+    }
+
+    //Whether a box around the point, reaching halfWidth and halfHeight from it on each side, overlaps the visible area
+    public boolean isNearViewport(float x, float y, float halfWidth, float halfHeight) {
+        return x + halfWidth >= minX && x - halfWidth <= maxX && y + halfHeight >= minY && y - halfHeight <= maxY;
+    }
+
+    public float getViewMult() {
+        return viewMult;
+    }
+}
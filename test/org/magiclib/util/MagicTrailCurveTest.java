@@ -0,0 +1,85 @@
+package org.magiclib.util;
+
+import org.junit.Test;
+import org.lwjgl.util.vector.Vector2f;
+
+import java.awt.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Compares MagicTrailCurve's pulse and MagicTrailTracker's opacity against MagicTrailObject.tick, the formulas they
+ * replace, over a spread of segment durations and pulse counts.
+ */
+public class MagicTrailCurveTest {
+
+    //Largest differences from MagicTrailObject.tick allowed, as fractions of pulse width and of main opacity
+    private static final float PULSE_TOLERANCE = 1e-3f;
+    private static final float OPACITY_TOLERANCE = 1e-4f;
+
+    //In, main and out durations: plain, instant fade-in, very short fade-in, very short fade-out, long
+    private static final float[][] DURATIONS = {{0f, 0.5f, 1f}, {0.01f, 0f, 1.99f}, {0.3f, 1.2f, 0.5f}, {1f, 0f, 0.05f}, {0.1f, 3f, 6f}};
+    //Includes fractional counts, and counts past MagicTrailCurve.MAX_SAMPLES where the pulse is computed exactly
+    private static final float[] PULSE_COUNTS = {0f, 1f, 2.5f, 3f, 10f, 25f, 64f, 100f};
+    private static final int STEPS = 2000;
+
+    @Test
+    public void pulseMatchesTrailObject() {
+        for (float[] duration : DURATIONS) {
+            for (float pulseCount : PULSE_COUNTS) {
+                MagicTrailCurve curve = MagicTrailCurve.get(pulseCount);
+                float total = duration[0] + duration[1] + duration[2];
+                for (int i = 0; i <= STEPS; i++) {
+                    MagicTrailObject reference = tickedReference(duration, pulseCount, total * i / STEPS);
+                    float progress = reference.getSpentLifetime() / total;
+                    assertEquals("pulse at " + i + "/" + STEPS + " with " + pulseCount + " pulses",
+                            reference.currentSize, curve.getPulse(progress), PULSE_TOLERANCE);
+                }
+            }
+        }
+    }
+
+    //These four pulse counts land in the same cache set, and must still not build a new table on every lookup
+    @Test
+    public void collidingPulseCountsStayCached() {
+        float[] counts = {1f, 12f, 35f, 45f};
+        MagicTrailCurve[] first = new MagicTrailCurve[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            first[i] = MagicTrailCurve.get(counts[i]);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < counts.length; i++) {
+                assertSame("curve for " + counts[i] + " pulses", first[i], MagicTrailCurve.get(counts[i]));
+            }
+        }
+        assertSame(MagicTrailCurve.get(0f), MagicTrailCurve.get(0f));
+        assertNull(MagicTrailCurve.get(0f).pulse);
+    }
+
+    @Test
+    public void opacityMatchesTrailObject() {
+        for (float[] duration : DURATIONS) {
+            float total = duration[0] + duration[1] + duration[2];
+            for (int i = 0; i <= STEPS; i++) {
+                MagicTrailObject reference = tickedReference(duration, 0f, total * i / STEPS);
+                assertEquals("opacity at " + i + "/" + STEPS + " of " + total + " s",
+                        reference.currentOpacity, MagicTrailTracker.computeOpacity(1f, reference.getSpentLifetime(),
+                                duration[0], duration[1], duration[2]), OPACITY_TOLERANCE);
+            }
+        }
+    }
+
+    //A segment with a size of 0, a pulse width and main opacity of 1 and no movement, aged by the given time: its
+    //current size is then its pulse, and its current opacity its opacity multiplier
+    private static MagicTrailObject tickedReference(float[] duration, float pulseCount, float spent) {
+        MagicTrailObject reference = new MagicTrailObject(
+                duration[0], duration[1], duration[2],
+                0f, 0f, 0f, 0f, 1f, 0, 0, 0f, 0f,
+                Color.WHITE, Color.WHITE, 0f, new Vector2f(),
+                -1f, 0f, new Vector2f(), 1f, pulseCount);
+        reference.tick(spent);
+        return reference;
+    }
+}